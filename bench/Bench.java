@@ -0,0 +1,136 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+/**
+ * Small JMH-style harness: warmup iterations, then timed measurement iterations of a
+ * fixed duration, reporting throughput and average time per operation with the spread
+ * across iterations. Results go to a blackhole so the JIT cannot drop the work.
+ *
+ * Options (all optional):
+ *   -wi N       warmup iterations (default 5)
+ *   -i N        measurement iterations (default 10)
+ *   -r MS       iteration time in ms (default 1000)
+ *   -t N        threads running the operation concurrently (default 1)
+ *   REGEX       only run benchmarks whose name matches
+ *
+ * Run each group in a fresh JVM (one regex per invocation) when comparing numbers,
+ * so JIT profiles from one benchmark don't leak into the next.
+ */
+public class Bench {
+
+    interface Op {
+        Object run(int i) throws Exception;
+    }
+
+    private final Map<String, Op> benchmarks = new LinkedHashMap<>();
+    private int warmups = 5;
+    private int iterations = 10;
+    private long iterationMs = 1000;
+    private int threads = 1;
+    private Pattern filter = Pattern.compile(".*");
+
+    /** Consumed results, so benchmarked work always has an observable effect. */
+    static volatile int blackhole;
+
+    Bench(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-wi" -> warmups = Integer.parseInt(args[++i]);
+                case "-i" -> iterations = Integer.parseInt(args[++i]);
+                case "-r" -> iterationMs = Long.parseLong(args[++i]);
+                case "-t" -> threads = Integer.parseInt(args[++i]);
+                default -> filter = Pattern.compile(args[i]);
+            }
+        }
+    }
+
+    void add(String name, Op op) {
+        benchmarks.put(name, op);
+    }
+
+    /** The registered operation, or null. */
+    Op op(String name) {
+        return benchmarks.get(name);
+    }
+
+    boolean selected(String name) {
+        return filter.matcher(name).find();
+    }
+
+    void runAll() throws Exception {
+        PrintStream out = System.out;
+        out.printf("# JVM %s, %d cpus, %d threads, %d warmup x %d measurement iterations of %d ms%n",
+                Runtime.version(), Runtime.getRuntime().availableProcessors(), threads, warmups, iterations, iterationMs);
+        out.printf("%-28s %14s %12s %14s%n", "Benchmark", "ops/s", "+- ops/s", "us/op");
+
+        for (Map.Entry<String, Op> e : benchmarks.entrySet()) {
+            if (!selected(e.getKey())) continue;
+            // services print progress lines; keep them out of the report
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            double[] opsPerSec;
+            try {
+                for (int w = 0; w < warmups; w++) iteration(e.getValue());
+                opsPerSec = new double[iterations];
+                for (int m = 0; m < iterations; m++) opsPerSec[m] = iteration(e.getValue());
+            } finally {
+                System.setOut(out);
+            }
+            double mean = Arrays.stream(opsPerSec).average().orElse(0);
+            double sd = Math.sqrt(Arrays.stream(opsPerSec).map(x -> (x - mean) * (x - mean)).sum() / Math.max(1, opsPerSec.length - 1));
+            out.printf(Locale.ROOT, "%-28s %14.1f %12.1f %14.2f%n", e.getKey(), mean, sd, threads * 1e6 / mean);
+        }
+    }
+
+    /** One timed iteration across all threads, returns total ops/s. */
+    private double iteration(Op op) throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+        long[] counts = new long[threads];
+        Exception[] failure = new Exception[1];
+        List<Thread> workers = new ArrayList<>(threads);
+
+        for (int t = 0; t < threads; t++) {
+            int slot = t;
+            Thread w = new Thread(() -> {
+                try {
+                    start.await();
+                    long n = 0;
+                    int i = slot;
+                    while (running.get()) {
+                        Object r = op.run(i);
+                        blackhole ^= r == null ? 0 : System.identityHashCode(r);
+                        i += threads;
+                        n++;
+                    }
+                    counts[slot] = n;
+                } catch (Exception ex) {
+                    failure[0] = ex;
+                    running.set(false);
+                }
+            }, "bench-" + t);
+            workers.add(w);
+            w.start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        Thread.sleep(iterationMs);
+        running.set(false);
+        for (Thread w : workers) w.join();
+        long elapsed = System.nanoTime() - begin;
+        if (failure[0] != null) throw failure[0];
+
+        long total = 0;
+        for (long c : counts) total += c;
+        return total / (elapsed / 1e9);
+    }
+}
@@ -0,0 +1,387 @@
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * In-memory stand-in for the MySQL schema, registered for {@code jdbc:bench:} URLs.
+ *
+ * It answers the statements the services actually issue (ticket select, cruise_route,
+ * port/ship names, cabin_inventory, booking/payment inserts) from data seeded with a fixed
+ * random seed, so runs are reproducible and need no database server. Every statement
+ * execution can be given a simulated round trip with {@code -Dbench.dbLatencyMicros}.
+ *
+ * This is not a SQL engine: statements are recognised by the table they touch.
+ */
+public class BenchDriver implements Driver {
+
+    static final String URL = "jdbc:bench:cruise";
+
+    static final int PASSENGERS = Integer.getInteger("bench.passengers", 10_000);
+    static final int CRUISES = Integer.getInteger("bench.cruises", 200);
+    static final int PORTS = 60;
+    static final int SHIPS = 25;
+    static final int BOOKINGS = Integer.getInteger("bench.bookings", 20_000);
+    private static final long LATENCY_NANOS = Long.getLong("bench.dbLatencyMicros", 0) * 1_000;
+
+    private static final String[] FIRST = {"Aarav", "Priya", "John", "Maria", "Chen", "Fatima", "Lukas", "Sofia",
+            "Kenji", "Amara", "Diego", "Elena", "Omar", "Hannah", "Ravi", "Isabella"};
+    private static final String[] LAST = {"Sharma", "Smith", "Garcia", "Wang", "Khan", "Müller", "Rossi", "Tanaka",
+            "Okafor", "Fernandez", "Ivanova", "Haddad", "Schmidt", "Iyer", "Silva", "Brown"};
+    private static final String[] NATIONALITIES = {"Indian", "American", "Spanish", "Chinese", "Pakistani", "German",
+            "Italian", "Japanese", "Nigerian", "Mexican", "Russian", "Lebanese"};
+    private static final String[] GENDERS = {"M", "F", "O"};
+
+    // seeded tables
+    static final Map<Integer, Object[]> passengers = new HashMap<>();   // name, age, gender, nationality
+    static final Map<Integer, Integer> cruiseShip = new HashMap<>();
+    static final Map<Integer, List<Object[]>> routes = new HashMap<>(); // port_id, departure, arrival, hours
+    static final Map<Integer, Object[]> bookings = new ConcurrentHashMap<>(); // passenger, cruise, class, price, date
+    static final Map<String, Integer> bookingKeys = new ConcurrentHashMap<>(); // idempotency key -> booking
+
+    /** Set to make every statement fail, as during a database outage. */
+    static volatile boolean down;
+
+    /** Journaled bookings whose idempotency key starts with this fail as bad data would. */
+    static final String BAD_KEY_PREFIX = "bad-";
+
+    /** Reported by SHOW REPLICA STATUS, for pointing db.replica.url at this driver too; null: not replicating. */
+    static volatile Long replicaLagSeconds = 0L;
+
+    private static final AtomicInteger nextBookingId = new AtomicInteger();
+    private static final AtomicInteger nextPaymentId = new AtomicInteger();
+
+    static {
+        seed(new Random(42));
+        try {
+            DriverManager.registerDriver(new BenchDriver());
+        } catch (SQLException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static void seed(Random rnd) {
+        for (int id = 1; id <= PASSENGERS; id++) {
+            String name = FIRST[rnd.nextInt(FIRST.length)] + " " + LAST[rnd.nextInt(LAST.length)];
+            passengers.put(id, new Object[]{name, 1 + rnd.nextInt(90), GENDERS[rnd.nextInt(3)],
+                    NATIONALITIES[rnd.nextInt(NATIONALITIES.length)]});
+        }
+        LocalDateTime base = LocalDateTime.of(2026, 1, 1, 8, 0);
+        for (int id = 1; id <= CRUISES; id++) {
+            cruiseShip.put(id, 1 + rnd.nextInt(SHIPS));
+            int stops = 3 + rnd.nextInt(6);
+            LocalDateTime t = base.plusDays(rnd.nextInt(365));
+            List<Object[]> route = new ArrayList<>(stops);
+            for (int s = 0; s < stops; s++) {
+                int hours = 12 + rnd.nextInt(48);
+                route.add(new Object[]{1 + rnd.nextInt(PORTS), Timestamp.valueOf(t), Timestamp.valueOf(t.plusHours(hours)), hours});
+                t = t.plusHours(hours + 6);
+            }
+            routes.put(id, route);
+        }
+        String[] classes = CabinInventory.CABIN_CLASSES;
+        double[] prices = {15000, 25000, 45000};
+        for (int i = 0; i < BOOKINGS; i++) {
+            int c = rnd.nextInt(classes.length);
+            insertBooking(1 + rnd.nextInt(PASSENGERS), 1 + rnd.nextInt(CRUISES), classes[c], prices[c]);
+        }
+    }
+
+    static int insertBooking(int passengerId, int cruiseId, String cabinClass, double price) {
+        int id = nextBookingId.incrementAndGet();
+        bookings.put(id, new Object[]{passengerId, cruiseId, cabinClass, price, new Timestamp(System.currentTimeMillis())});
+        return id;
+    }
+
+    /** Load the class so the driver registers itself. */
+    static void register() {
+    }
+
+    // ---- java.sql.Driver ----
+
+    @Override
+    public Connection connect(String url, Properties info) {
+        return acceptsURL(url) ? newConnection() : null;
+    }
+
+    @Override
+    public boolean acceptsURL(String url) {
+        return url != null && url.startsWith("jdbc:bench:");
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+        return new DriverPropertyInfo[0];
+    }
+
+    @Override public int getMajorVersion() { return 1; }
+    @Override public int getMinorVersion() { return 0; }
+    @Override public boolean jdbcCompliant() { return false; }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    // ---- JDBC objects as dynamic proxies ----
+
+    private static Connection newConnection() {
+        boolean[] closed = {false};
+        boolean[] autoCommit = {true};
+        return proxy(Connection.class, (m, args) -> switch (m.getName()) {
+            case "prepareStatement" -> newStatement((String) args[0]);
+            case "createStatement" -> newStatement(null);
+            case "isValid" -> !closed[0];
+            case "isClosed" -> closed[0];
+            case "close" -> closed[0] = true;
+            case "getAutoCommit" -> autoCommit[0];
+            case "setAutoCommit" -> autoCommit[0] = (Boolean) args[0];
+            default -> null;
+        });
+    }
+
+    private static PreparedStatement newStatement(String preparedSql) {
+        Map<Integer, Object> params = new HashMap<>();
+        List<Map<Integer, Object>> batch = new ArrayList<>();
+        List<Integer> keys = new ArrayList<>();
+
+        return proxy(PreparedStatement.class, (m, args) -> {
+            String name = m.getName();
+            if (name.startsWith("set") && args != null && args.length == 2 && args[0] instanceof Integer i) {
+                params.put(i, args[1]);
+                return null;
+            }
+            switch (name) {
+                case "executeQuery": {
+                    roundTrip();
+                    return query(args != null ? (String) args[0] : preparedSql, params);
+                }
+                case "executeUpdate": {
+                    roundTrip();
+                    keys.clear();
+                    return update(preparedSql, params, keys);
+                }
+                case "addBatch":
+                    batch.add(new HashMap<>(params));
+                    return null;
+                case "clearBatch":
+                    batch.clear();
+                    return null;
+                case "executeBatch": {
+                    roundTrip();
+                    keys.clear();
+                    int[] counts = new int[batch.size()];
+                    for (int i = 0; i < counts.length; i++) counts[i] = update(preparedSql, batch.get(i), keys);
+                    batch.clear();
+                    return counts;
+                }
+                case "getGeneratedKeys": {
+                    List<Object[]> rows = new ArrayList<>(keys.size());
+                    for (Integer k : keys) rows.add(new Object[]{k});
+                    return resultSet(new String[]{"GENERATED_KEY"}, rows);
+                }
+                default:
+                    return null;
+            }
+        });
+    }
+
+    private static void roundTrip() throws SQLException {
+        if (down) throw new SQLException("Communications link failure (bench database is down)", "08S01");
+        if (LATENCY_NANOS > 0) LockSupport.parkNanos(LATENCY_NANOS);
+    }
+
+    private static int update(String sql, Map<Integer, Object> p, List<Integer> keys) throws SQLException {
+        if (sql.contains("INSERT INTO booking") && sql.contains("idempotency_key")) { // BookingJournal
+            String key = (String) p.get(3);
+            if (key != null && key.startsWith(BAD_KEY_PREFIX)) throw new SQLException("Data too long for column", "22001");
+            int passengerId = (Integer) p.get(5);
+            int cruiseId = (Integer) p.get(4);
+            if (!passengers.containsKey(passengerId) || !cruiseShip.containsKey(cruiseId)) return 0;
+            int id = insertBooking(passengerId, cruiseId, (String) p.get(1), (Double) p.get(2));
+            bookingKeys.put((String) p.get(3), id);
+            keys.add(id);
+            return 1;
+        }
+        if (sql.contains("INSERT INTO booking")) {
+            int passengerId = (Integer) p.get(4);
+            int cruiseId = (Integer) p.get(3);
+            if (!passengers.containsKey(passengerId) || !cruiseShip.containsKey(cruiseId)) return 0;
+            keys.add(insertBooking(passengerId, cruiseId, (String) p.get(1), (Double) p.get(2)));
+            return 1;
+        }
+        if (sql.contains("INSERT INTO payment")) {
+            keys.add(nextPaymentId.incrementAndGet());
+            return 1;
+        }
+        return 1; // cabin_inventory and anything else: always applies
+    }
+
+    private static ResultSet query(String sql, Map<Integer, Object> p) {
+        List<Object[]> rows = new ArrayList<>();
+        if (sql.equals("SHOW REPLICA STATUS")) {
+            rows.add(new Object[]{replicaLagSeconds});
+            return resultSet(new String[]{"Seconds_Behind_Source"}, rows);
+        }
+        if (sql.contains("WHERE idempotency_key")) {
+            for (int i = 1; p.containsKey(i); i++) {
+                Integer id = bookingKeys.get((String) p.get(i));
+                if (id != null) rows.add(new Object[]{p.get(i), id});
+            }
+            return resultSet(new String[]{"idempotency_key", "booking_id"}, rows);
+        }
+        if (sql.contains("AS payment_mode")) { // manifest
+            int cruiseId = (Integer) p.get(1);
+            bookings.forEach((bid, b) -> {
+                if ((Integer) b[1] != cruiseId) return;
+                Object[] pass = passengers.get((Integer) b[0]);
+                rows.add(new Object[]{bid, b[2], "PAID", b[0], pass[0], pass[1], pass[2], pass[3], "CASH"});
+            });
+            rows.sort((x, y) -> ((String) x[4]).compareTo((String) y[4]));
+            return resultSet(new String[]{"booking_id", "cabin_class", "payment_status", "passenger_id", "name", "age",
+                    "gender", "nationality", "payment_mode"}, rows);
+        }
+        if (sql.contains("FROM booking b")) {
+            for (int i = 1; p.containsKey(i); i++) {
+                int id = (Integer) p.get(i);
+                if (sql.contains("b.cruise_id = ?")) {
+                    bookings.forEach((bid, b) -> { if ((Integer) b[1] == id) rows.add(ticketRow(bid, b)); });
+                } else {
+                    Object[] b = bookings.get(id);
+                    if (b != null) rows.add(ticketRow(id, b));
+                }
+            }
+            return resultSet(new String[]{"booking_id", "cruise_id", "booking_date", "cabin_class", "price",
+                    "passenger_name", "age", "gender", "nationality", "ship_id", "txn_id"}, rows);
+        }
+        if (sql.contains("FROM passenger ORDER BY")) {
+            for (int id = 1; id <= PASSENGERS; id++) {
+                Object[] pass = passengers.get(id);
+                rows.add(new Object[]{id, pass[0], pass[1], pass[2], pass[3]});
+            }
+            return resultSet(new String[]{"passenger_id", "name", "age", "gender", "nationality"}, rows);
+        }
+        if (sql.contains("FROM cruise_route")) {
+            routes.forEach((cruiseId, stops) -> {
+                if (p.containsKey(1) && !p.get(1).equals(cruiseId)) return;
+                for (Object[] s : stops) rows.add(new Object[]{cruiseId, s[0], s[1], s[2], s[3]});
+            });
+            rows.sort((a, b) -> Integer.compare((Integer) a[0], (Integer) b[0]));
+            return resultSet(new String[]{"cruise_id", "port_id", "departure", "estimated_arrival", "duration_hours"}, rows);
+        }
+        if (sql.contains("FROM port")) {
+            for (int id = 1; id <= PORTS; id++) {
+                if (!p.containsKey(1) || p.get(1).equals(id)) rows.add(new Object[]{id, "Port " + id});
+            }
+            return resultSet(new String[]{"port_id", "name"}, rows);
+        }
+        if (sql.contains("FROM ship")) {
+            for (int id = 1; id <= SHIPS; id++) {
+                if (!p.containsKey(1) || p.get(1).equals(id)) rows.add(new Object[]{id, "MV Bench " + id});
+            }
+            return resultSet(new String[]{"ship_id", "name"}, rows);
+        }
+        if (sql.contains("FROM cabin_inventory")) {
+            for (int id = 1; id <= CRUISES; id++) {
+                if (p.containsKey(1) && !p.get(1).equals(id)) continue;
+                for (String c : CabinInventory.CABIN_CLASSES) rows.add(new Object[]{id, c, Integer.MAX_VALUE / 2, 0, 0L});
+            }
+            return resultSet(new String[]{"cruise_id", "cabin_class", "capacity", "booked", "version"}, rows);
+        }
+        if (sql.contains("FROM cruise c")) {
+            for (int id = 1; id <= CRUISES; id++) {
+                List<Object[]> stops = routes.get(id);
+                Timestamp dep = (Timestamp) stops.get(0)[1];
+                Timestamp arr = (Timestamp) stops.get(stops.size() - 1)[2];
+                rows.add(new Object[]{id, cruiseShip.get(id), new java.sql.Date(dep.getTime()), new java.sql.Date(arr.getTime()),
+                        id % 10 == 0 ? "CANCELLED" : "SCHEDULED"});
+            }
+            return resultSet(new String[]{"cruise_id", "ship_id", "start_date", "end_date", "status"}, rows);
+        }
+        return resultSet(new String[]{"x"}, rows);
+    }
+
+    private static Object[] ticketRow(int bookingId, Object[] b) {
+        Object[] pass = passengers.get((Integer) b[0]);
+        return new Object[]{bookingId, b[1], b[4], b[2], b[3], pass[0], pass[1], pass[2], pass[3],
+                cruiseShip.get((Integer) b[1]), bookingId};
+    }
+
+    private static ResultSet resultSet(String[] columns, List<Object[]> rows) {
+        Map<String, Integer> index = new LinkedHashMap<>();
+        for (int i = 0; i < columns.length; i++) index.put(columns[i].toLowerCase(), i);
+        int[] pos = {-1};
+        boolean[] wasNull = {false};
+
+        return proxy(ResultSet.class, (m, args) -> {
+            switch (m.getName()) {
+                case "next":
+                    return ++pos[0] < rows.size();
+                case "wasNull":
+                    return wasNull[0];
+                case "close":
+                    return null;
+                default:
+                    if (!m.getName().startsWith("get") || args == null || args.length != 1) return null;
+            }
+            int col = args[0] instanceof Integer i ? i - 1 : index.getOrDefault(((String) args[0]).toLowerCase(), -1);
+            if (col < 0) throw new SQLException("Unknown column " + args[0]);
+            Object v = rows.get(pos[0])[col];
+            wasNull[0] = v == null;
+            return convert(v, m.getReturnType());
+        });
+    }
+
+    private static Object convert(Object v, Class<?> type) {
+        if (type == int.class) return v == null ? 0 : ((Number) v).intValue();
+        if (type == long.class) return v == null ? 0L : ((Number) v).longValue();
+        if (type == double.class) return v == null ? 0.0 : ((Number) v).doubleValue();
+        if (type == String.class) return v == null ? null : v.toString();
+        return v;
+    }
+
+    interface Handler {
+        Object invoke(Method m, Object[] args) throws Throwable;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Handler h) {
+        return (T) Proxy.newProxyInstance(BenchDriver.class.getClassLoader(), new Class<?>[]{type}, (p, m, args) -> {
+            if (m.getDeclaringClass() == Object.class) {
+                return switch (m.getName()) {
+                    case "hashCode" -> System.identityHashCode(p);
+                    case "equals" -> p == args[0];
+                    default -> type.getSimpleName() + "@bench";
+                };
+            }
+            Object r = h.invoke(m, args);
+            if (r == null && m.getReturnType().isPrimitive()) {
+                Class<?> t = m.getReturnType();
+                if (t == boolean.class) return false;
+                if (t == void.class) return null;
+                return convert(0, t);
+            }
+            return r;
+        });
+    }
+}
@@ -0,0 +1,234 @@
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.regex.Pattern;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import com.google.zxing.common.BitMatrix;
+
+/**
+ * Benchmarks, run against {@link BenchDriver}:
+ *   ticket.*     rendering by phase (query, QR, layout, save), end to end, group vs single
+ *   passenger.*  passenger search
+ *   schedule.*   the cruise schedule
+ *   price.*      pricing
+ *   manifest.*   manifest export
+ *   booking.*    the booking insert path
+ * The QR, layout and save phases run once per QR mode (vector and raster) for comparison;
+ * ticket.generatePDF uses the mode selected with -Dtickets.qrMode.
+ *
+ * Build and run from the repository root (see README):
+ *   java -cp "out:bench-out:lib/*" CruiseBenchmarks [-wi 5 -i 10 -r 1000 -t 1] [regex]
+ * With Maven, the jmh profile runs the same operations under JMH (bench/jmh/CruiseJmh).
+ */
+public class CruiseBenchmarks {
+
+    private static final int SAMPLE = 256;
+
+    private static final List<PDDocument> laidOut = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        Bench bench = setUp(args);
+        try {
+            bench.runAll();
+        } finally {
+            tearDown();
+        }
+    }
+
+    /**
+     * One benchmark, set up alone, for an outside harness (JMH). The operation is called
+     * with an increasing index; checked exceptions come back wrapped.
+     */
+    public static IntFunction<Object> operation(String name) throws Exception {
+        Bench.Op op = setUp(new String[]{"^" + Pattern.quote(name) + "$"}).op(name);
+        if (op == null) throw new IllegalArgumentException("No benchmark named " + name);
+        return i -> {
+            try {
+                return op.run(i);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        };
+    }
+
+    /** Set up the fixtures and register every benchmark; {@code args} as for {@link Bench}. */
+    static Bench setUp(String[] args) throws Exception {
+        System.setProperty("db.url", BenchDriver.URL);
+        // a throwaway ticket store, so ticket.generatePDF measures real renders and appends
+        if (System.getProperty("tickets.store.dir") == null) {
+            System.setProperty("tickets.store.dir", Files.createTempDirectory("bench-tickets").toString());
+        }
+        if (System.getProperty("journal.dir") == null) {
+            System.setProperty("journal.dir", Files.createTempDirectory("bench-journal").toString());
+        }
+        BenchDriver.register();
+
+        try (Connection conn = DBConnection.borrow()) {
+            ReferenceData.preload(conn);
+            ItineraryIndex.load(conn);
+            PassengerIndex.load(conn);
+            ScheduleService.refresh(conn);
+        }
+        TicketTemplate.get();
+
+        // a fixed sample of real tickets and their QR payloads for the per-phase benchmarks
+        List<TicketData> tickets = new ArrayList<>(SAMPLE);
+        try (Connection conn = DBConnection.borrow()) {
+            for (int id = 1; id <= SAMPLE; id++) {
+                tickets.addAll(TicketGenerator.fetchTickets(conn, "b.booking_id = ?", List.of(id)));
+            }
+        }
+        String[] payloads = new String[SAMPLE];
+        for (int i = 0; i < SAMPLE; i++) payloads[i] = TicketGenerator.qrPayload(tickets.get(i));
+
+        Bench bench = new Bench(args);
+
+        for (TicketGenerator.QrMode mode : TicketGenerator.QrMode.values()) {
+            String suffix = "." + mode.name().toLowerCase();
+            BitMatrix[] qrs = new BitMatrix[SAMPLE];
+            for (int i = 0; i < SAMPLE; i++) qrs[i] = TicketGenerator.encodeQR(payloads[i], mode);
+            PDDocument[] docs = new PDDocument[16];
+            for (int i = 0; i < docs.length; i++) {
+                docs[i] = TicketGenerator.layoutTicket(tickets.get(i), qrs[i], mode);
+                laidOut.add(docs[i]);
+            }
+            if (bench.selected("ticket.save" + suffix)) {
+                CountingStream size = new CountingStream();
+                docs[0].save(size);
+                System.out.printf("# ticket size with %s QR: %d bytes%n", mode, size.count);
+            }
+
+            bench.add("ticket.qr" + suffix, i -> TicketGenerator.encodeQR(payloads[i % SAMPLE], mode));
+            bench.add("ticket.layout" + suffix, i -> {
+                try (PDDocument doc = TicketGenerator.layoutTicket(tickets.get(i % SAMPLE), qrs[i % SAMPLE], mode)) {
+                    return doc.getNumberOfPages();
+                }
+            });
+            bench.add("ticket.save" + suffix, i -> {
+                CountingStream out = new CountingStream();
+                docs[i % docs.length].save(out);
+                return out.count;
+            });
+        }
+
+        BookingService bookingService = new BookingService();
+        String[] classes = CabinInventory.CABIN_CLASSES;
+
+        // a group of ten: one document with shared resources against ten separate tickets
+        List<TicketData> group = tickets.subList(0, 10);
+        if (bench.selected("ticket.group10")) {
+            CountingStream one = new CountingStream();
+            TicketGenerator.renderGroupTicket(group, one);
+            CountingStream ten = new CountingStream();
+            for (TicketData t : group) TicketGenerator.renderTicket(t, ten);
+            System.out.printf("# ten passengers: %d bytes as one group ticket, %d bytes as single tickets%n", one.count, ten.count);
+        }
+        bench.add("ticket.group10", i -> {
+            CountingStream out = new CountingStream();
+            TicketGenerator.renderGroupTicket(group, out);
+            return out.count;
+        });
+        bench.add("ticket.single10", i -> {
+            CountingStream out = new CountingStream();
+            for (TicketData t : group) TicketGenerator.renderTicket(t, out);
+            return out.count;
+        });
+
+        String[] codes = payloads;
+        bench.add("ticket.sign", i -> TicketToken.sign(tickets.get(i % SAMPLE)));
+        bench.add("ticket.verify", i -> TicketVerifier.verify(codes[i % SAMPLE]).getStatus());
+
+        bench.add("ticket.query", i -> {
+            try (Connection conn = DBConnection.borrow()) {
+                return TicketGenerator.fetchTickets(conn, "b.booking_id = ?", List.of(1 + i % BenchDriver.BOOKINGS));
+            }
+        });
+        bench.add("ticket.generatePDF", i -> {
+            try (Connection conn = DBConnection.borrow()) {
+                return TicketGenerator.generateTicketPDF(1 + i % SAMPLE, conn);
+            }
+        });
+        // repeat downloads of unchanged bookings: served from TicketCache after the first render
+        bench.add("ticket.download", i -> {
+            try (Connection conn = DBConnection.borrow()) {
+                return TicketGenerator.ticketBytes(1 + i % 64, conn).getPdf().length;
+            }
+        });
+        String[] names = {"smi", "maria", "chen wang", "an", "rossi"};
+        bench.add("passenger.search", i -> PassengerIndex.search(names[i % names.length], null, null, 0, 20).getTotal());
+        bench.add("passenger.searchByNationality", i -> PassengerIndex.search("ma", "Indian", null, 0, 20).getTotal());
+        ScheduleService.Filter summer = new ScheduleService.Filter()
+                .from(LocalDate.of(2026, 6, 1)).to(LocalDate.of(2026, 8, 31)).status("SCHEDULED").availableIn("LUXURY");
+        bench.add("schedule.all", i -> ScheduleService.query(null, ScheduleService.Sort.START_DATE, false).size());
+        bench.add("schedule.filtered", i -> ScheduleService.query(summer, ScheduleService.Sort.AVAILABILITY, false).size());
+        bench.add("price.quote", i -> PricingEngine.quote(1 + i % BenchDriver.CRUISES, classes[i % classes.length]));
+        // one cruise's manifest (about BOOKINGS / CRUISES passengers) to CSV and PDF
+        Path manifests = Files.createTempDirectory("bench-manifests");
+        bench.add("manifest.export", i -> ManifestExporter.export(1 + i % BenchDriver.CRUISES,
+                manifests.resolve("m.csv"), manifests.resolve("m.pdf")).rows());
+        bench.add("booking.insert", i -> {
+            String cls = classes[i % classes.length];
+            int cruiseId = 1 + i % BenchDriver.CRUISES;
+            Booking b = new Booking(1 + i % BenchDriver.PASSENGERS, cruiseId, cls, bookingService.quotePrice(cruiseId, cls));
+            return bookingService.book(b, "CARD");
+        });
+        // acknowledged once journaled and fsynced; compare with booking.insert under -Dbench.dbLatencyMicros
+        bench.add("booking.writeBehind", i -> {
+            String cls = classes[i % classes.length];
+            int cruiseId = 1 + i % BenchDriver.CRUISES;
+            Booking b = new Booking(1 + i % BenchDriver.PASSENGERS, cruiseId, cls, bookingService.quotePrice(cruiseId, cls));
+            return bookingService.bookWriteBehind(b, "CARD", null).getStatus().ordinal();
+        });
+        bench.add("booking.group10", i -> {
+            String cls = classes[i % classes.length];
+            int cruiseId = 1 + i % BenchDriver.CRUISES;
+            double price = bookingService.quotePrice(cruiseId, cls);
+            List<Booking> party = new ArrayList<>(10);
+            for (int k = 0; k < 10; k++) party.add(new Booking(1 + (i * 10 + k) % BenchDriver.PASSENGERS, cruiseId, cls, price));
+            return bookingService.bookGroup(party, "CARD");
+        });
+        bench.add("booking.insertBatch100", i -> {
+            List<Booking> batch = new ArrayList<>(100);
+            for (int k = 0; k < 100; k++) {
+                int n = i * 100 + k;
+                String cls = classes[n % classes.length];
+                int cruiseId = 1 + n % BenchDriver.CRUISES;
+                batch.add(new Booking(1 + n % BenchDriver.PASSENGERS, cruiseId, cls, bookingService.quotePrice(cruiseId, cls)));
+            }
+            return bookingService.bookAll(batch, "CARD");
+        });
+        return bench;
+    }
+
+    public static void tearDown() throws Exception {
+        for (PDDocument d : laidOut) d.close();
+        laidOut.clear();
+        BookingJournal.closeShared();
+        TicketStore.closeShared();
+        DBConnection.shutdown();
+    }
+
+    /** Discards the bytes, keeps the size. */
+    private static final class CountingStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package jmh;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The CruiseBenchmarks operations under JMH, one fork per benchmark name. Build and run
+ * with the jmh Maven profile:
+ *   mvn -Pjmh package
+ *   java -jar target/benchmarks.jar -p name=ticket.generatePDF,booking.insert
+ *
+ * JMH does not accept benchmarks in the unnamed package, and a named package cannot
+ * refer to it, so the fixtures are looked up reflectively once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CruiseJmh {
+
+    @Param({
+            "ticket.qr.vector", "ticket.layout.vector", "ticket.save.vector",
+            "ticket.qr.raster", "ticket.layout.raster", "ticket.save.raster",
+            "ticket.group10", "ticket.single10", "ticket.sign", "ticket.verify",
+            "ticket.query", "ticket.generatePDF", "ticket.download",
+            "passenger.search", "passenger.searchByNationality",
+            "schedule.all", "schedule.filtered", "price.quote", "manifest.export",
+            "booking.insert", "booking.writeBehind", "booking.group10", "booking.insertBatch100"})
+    public String name;
+
+    private IntFunction<Object> op;
+
+    /** Per-thread operation index, as the fallback harness passes it. */
+    @State(Scope.Thread)
+    public static class Counter {
+        int i;
+    }
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        op = (IntFunction<Object>) Class.forName("CruiseBenchmarks").getMethod("operation", String.class).invoke(null, name);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Class.forName("CruiseBenchmarks").getMethod("tearDown").invoke(null);
+    }
+
+    @Benchmark
+    public Object run(Counter c) {
+        return op.apply(c.i++);
+    }
+}
@@ -0,0 +1,7 @@
+-- Idempotency key of bookings written through the booking journal (BookingJournal,
+-- enabled with -Dbookings.writeBehind=true). Unique, so a journaled booking that reached
+-- the database before a crash is recognised on replay instead of written twice.
+-- NULL for bookings made directly; MySQL allows any number of NULLs in a unique index.
+ALTER TABLE booking
+    ADD COLUMN idempotency_key VARCHAR(64) NULL,
+    ADD UNIQUE KEY uk_booking_idempotency_key (idempotency_key);
@@ -0,0 +1,21 @@
+-- Cabin capacity per cruise and cabin class, used by CabinInventory.
+-- Cruises without rows here are not capacity-limited.
+CREATE TABLE IF NOT EXISTS cabin_inventory (
+    cruise_id   INT         NOT NULL,
+    cabin_class VARCHAR(20) NOT NULL,
+    capacity    INT         NOT NULL,
+    booked      INT         NOT NULL DEFAULT 0,
+    version     BIGINT      NOT NULL DEFAULT 0,
+    PRIMARY KEY (cruise_id, cabin_class),
+    FOREIGN KEY (cruise_id) REFERENCES cruise (cruise_id),
+    CHECK (booked >= 0 AND booked <= capacity)
+);
+
+-- Seed from existing bookings, e.g.:
+-- INSERT INTO cabin_inventory (cruise_id, cabin_class, capacity, booked)
+-- SELECT c.cruise_id, k.cabin_class, k.capacity,
+--        (SELECT COUNT(*) FROM booking b WHERE b.cruise_id = c.cruise_id AND b.cabin_class = k.cabin_class)
+-- FROM cruise c
+-- CROSS JOIN (SELECT 'ECONOMY' AS cabin_class, 300 AS capacity
+--             UNION ALL SELECT 'STANDARD', 150
+--             UNION ALL SELECT 'LUXURY', 50) k;
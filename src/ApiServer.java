@@ -0,0 +1,582 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Embedded HTTP/JSON front end for the booking desks and the web channel.
+ *
+ * Each request runs on its own virtual thread when the JVM has them (Java 21+), otherwise
+ * on a cached platform thread pool. A semaphore caps requests in flight (503 when full)
+ * and each GET gets a deadline (504 when it is exceeded). Requests that change data run
+ * to completion instead: a cancelled thread does not stop a transaction that is about to
+ * commit, and a client retrying after a 504 would book twice.
+ *
+ * Routes:
+ *   GET    /health
+ *   GET    /metrics                     latency histograms and counters as text
+ *   GET    /cruises?from=&to=&status=&shipId=&port=&available=&sort=&desc=   schedule with availability
+ *   GET    /cruises/{id}/prices         current price per cabin class
+ *   GET    /passengers?after=0&limit=20
+ *   GET    /passengers/search?q=&nationality=&gender=&offset=0&limit=20   ranked name search
+ *   POST   /passengers                  {"name","age","gender","nationality"}
+ *   GET    /passengers/{id}
+ *   PUT    /passengers/{id}             {"name","age"}
+ *   DELETE /passengers/{id}
+ *   GET    /passengers/{id}/bookings
+ *   POST   /bookings                    {"passengerId","cruiseId","cabinClass","paymentMode"}
+ *                                        with bookings.writeBehind: 202 once journaled, Idempotency-Key header honoured
+ *   POST   /bookings/group              {"cruiseId","cabinClass","passengerIds":[...],"paymentMode"} all or nothing
+ *   GET    /bookings/{reference}        status of a journaled booking
+ *   GET    /tickets/group?ids=1,2,3     one PDF with a page per booking
+ *   GET    /tickets/{bookingId}         ticket job status
+ *   GET    /tickets/{bookingId}/pdf     the ticket PDF (ETag / If-None-Match supported)
+ *   POST   /verify                      {"code", "cruiseId"} gate check of a scanned QR code
+ */
+public class ApiServer {
+
+    private static final int MAX_IN_FLIGHT = Integer.getInteger("api.maxInFlight", 200);
+    private static final long REQUEST_TIMEOUT_MS = Long.getLong("api.requestTimeoutMs", 10_000);
+    private static final int MAX_PAGE_SIZE = 500;
+
+    private final HttpServer server;
+    private final ExecutorService acceptors;
+    private final ExecutorService workers;
+    private final Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+
+    private static final Metrics.Timer REQUEST = Metrics.timer("api.request");
+    private static final Metrics.Counter BUSY = Metrics.counter("api.rejectedBusy");
+    private static final Metrics.Counter TIMED_OUT = Metrics.counter("api.timedOut");
+    private static final Metrics.Counter SERVER_ERRORS = Metrics.counter("api.serverErrors");
+
+    private final PassengerService passengers = new PassengerService();
+    private final BookingService bookings = new BookingService();
+
+    private record Response(int status, String contentType, byte[] body, String etag) {
+        Response(int status, String contentType, byte[] body) {
+            this(status, contentType, body, null);
+        }
+
+        static Response json(int status, Object value) {
+            return new Response(status, "application/json; charset=utf-8", Json.write(value).getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Response error(int status, String message) {
+            return json(status, Map.of("error", message == null ? "error" : message));
+        }
+    }
+
+    /** Thrown by handlers for client errors that map straight to a status code. */
+    private static final class HttpError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        final int status;
+
+        HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    public ApiServer(int port) throws IOException {
+        // socket-level limits for slow clients, in seconds (JDK HttpServer settings)
+        System.setProperty("sun.net.httpserver.maxReqTime", System.getProperty("sun.net.httpserver.maxReqTime", "30"));
+        System.setProperty("sun.net.httpserver.maxRspTime", System.getProperty("sun.net.httpserver.maxRspTime", "60"));
+
+        this.acceptors = newRequestExecutor("api-request-");
+        this.workers = newRequestExecutor("api-worker-");
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(acceptors);
+    }
+
+    public void start() {
+        server.start();
+        System.out.println("API server listening on port " + server.getAddress().getPort()
+                + " (max in flight " + MAX_IN_FLIGHT + ", GET timeout " + REQUEST_TIMEOUT_MS + " ms)");
+    }
+
+    public void stop() {
+        server.stop(2);
+        acceptors.shutdown();
+        workers.shutdownNow();
+    }
+
+    private static ExecutorService newRequestExecutor(String namePrefix) {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // before Java 21: platform threads, bounded in practice by the in-flight limit
+            int[] n = {0};
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, namePrefix + (++n[0]));
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    private void handle(HttpExchange ex) {
+        try (ex) {
+            if (!inFlight.tryAcquire()) {
+                BUSY.increment();
+                send(ex, Response.error(503, "Server busy, try again"));
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                Future<Response> f = workers.submit(() -> route(ex));
+                Response r;
+                try {
+                    r = ex.getRequestMethod().equals("GET") ? f.get(REQUEST_TIMEOUT_MS, TimeUnit.MILLISECONDS) : f.get();
+                } catch (TimeoutException e) {
+                    f.cancel(true);
+                    TIMED_OUT.increment();
+                    r = Response.error(504, "Request timed out");
+                } catch (ExecutionException e) {
+                    r = errorFor(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    r = Response.error(503, "Server shutting down");
+                }
+                if (r.status() >= 500) SERVER_ERRORS.increment();
+                send(ex, r);
+            } finally {
+                inFlight.release();
+                REQUEST.record(start);
+            }
+        } catch (IOException e) {
+            // client went away, nothing to answer
+        }
+    }
+
+    private static Response errorFor(Throwable t) {
+        if (t instanceof HttpError he) return Response.error(he.status, he.getMessage());
+        if (t instanceof IllegalArgumentException) return Response.error(400, t.getMessage());
+        // details go to the server log only, they can name tables, hosts or internal classes
+        System.out.println("API request failed: " + t);
+        if (t instanceof SQLException) return Response.error(500, "Database error");
+        t.printStackTrace(System.out);
+        return Response.error(500, "Internal server error");
+    }
+
+    private static void send(HttpExchange ex, Response r) throws IOException {
+        ex.getResponseHeaders().set("Content-Type", r.contentType());
+        if (r.etag() != null) ex.getResponseHeaders().set("ETag", r.etag());
+        ex.sendResponseHeaders(r.status(), r.body().length == 0 ? -1 : r.body().length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(r.body());
+        }
+    }
+
+    private Response route(HttpExchange ex) throws Exception {
+        String method = ex.getRequestMethod();
+        String[] parts = ex.getRequestURI().getPath().replaceAll("^/+|/+$", "").split("/");
+        String root = parts[0];
+
+        switch (root) {
+            case "health" -> {
+                return Response.json(200, Map.of("status", "UP", "pool", DBConnection.getPoolStats()));
+            }
+            case "metrics" -> {
+                return new Response(200, "text/plain; charset=utf-8", Metrics.report().getBytes(StandardCharsets.UTF_8));
+            }
+            case "cruises" -> {
+                if (parts.length == 1 && method.equals("GET")) return listCruises(query(ex));
+                if (parts.length == 3 && parts[2].equals("prices") && method.equals("GET")) return cruisePrices(parseId(parts[1]));
+            }
+            case "passengers" -> {
+                if (parts.length == 1 && method.equals("GET")) return listPassengers(query(ex));
+                if (parts.length == 1 && method.equals("POST")) return createPassenger(body(ex));
+                if (parts.length == 2 && parts[1].equals("search") && method.equals("GET")) return searchPassengers(query(ex));
+                if (parts.length == 2) {
+                    int id = parseId(parts[1]);
+                    switch (method) {
+                        case "GET" -> { return getPassenger(id); }
+                        case "PUT" -> { return updatePassenger(id, body(ex)); }
+                        case "DELETE" -> { return deletePassenger(id); }
+                        default -> { }
+                    }
+                }
+                if (parts.length == 3 && parts[2].equals("bookings") && method.equals("GET")) {
+                    return passengerBookings(parseId(parts[1]));
+                }
+            }
+            case "bookings" -> {
+                if (parts.length == 1 && method.equals("POST")) {
+                    return createBooking(body(ex), ex.getRequestHeaders().getFirst("Idempotency-Key"));
+                }
+                if (parts.length == 2 && parts[1].equals("group") && method.equals("POST")) return createGroupBooking(body(ex));
+                if (parts.length == 2 && method.equals("GET")) return journaledBooking(parts[1]);
+            }
+            case "verify" -> {
+                if (parts.length == 1 && method.equals("POST")) return verifyTicket(body(ex));
+            }
+            case "tickets" -> {
+                if (parts.length == 2 && parts[1].equals("group") && method.equals("GET")) return groupTicketPdf(query(ex));
+                if (parts.length == 2 && method.equals("GET")) return ticketStatus(parseId(parts[1]));
+                if (parts.length == 3 && parts[2].equals("pdf") && method.equals("GET")) {
+                    return ticketPdf(parseId(parts[1]), ex.getRequestHeaders().getFirst("If-None-Match"));
+                }
+            }
+            default -> { }
+        }
+        throw new HttpError(404, "No route for " + method + " " + ex.getRequestURI().getPath());
+    }
+
+    // ---- handlers ----
+
+    private Response journaledBooking(String reference) throws SQLException {
+        BookingJournal.Pending p = BookingJournal.ENABLED ? BookingJournal.shared().lookup(reference) : null;
+        if (p != null) return toResponse(p, false);
+        int bookingId = bookings.findBookingIdByKey(reference);
+        if (bookingId == -1) throw new HttpError(404, "No booking with reference " + reference);
+        return Response.json(200, Map.of("reference", reference, "status", "CONFIRMED", "bookingId", bookingId));
+    }
+
+    /**
+     * A journaled booking as JSON. When it was just created: 202 while it waits for the
+     * database, 201 once written, 409/404 if it was turned down. Otherwise 200.
+     */
+    private static Response toResponse(BookingJournal.Pending p, boolean created) {
+        if (created) {
+            switch (p.getStatus()) {
+                case SOLD_OUT -> throw new HttpError(409, "No " + p.getBooking().getCabinClass() + " cabins left on this cruise");
+                case NOT_FOUND -> throw new HttpError(404, "Passenger or cruise not found");
+                default -> { }
+            }
+        }
+        Map<String, Object> out = toJson(p.getBooking());
+        out.put("reference", p.getKey());
+        out.put("status", p.getStatus().name());
+        if (p.getStatus() == BookingJournal.Status.CONFIRMED) {
+            TicketJobQueue.Job job = TicketJobQueue.lookup(p.getBookingId());
+            if (job != null) out.put("ticketStatus", job.getStatus().name());
+        } else {
+            out.remove("bookingId");
+        }
+        if (!created) return Response.json(200, out);
+        return Response.json(p.getStatus() == BookingJournal.Status.PENDING ? 202 : 201, out);
+    }
+
+    private Response cruisePrices(int cruiseId) throws SQLException {
+        if (ScheduleService.get(cruiseId) == null) throw new HttpError(404, "Cruise not found: " + cruiseId);
+        double[] prices = PricingEngine.quoteAll(cruiseId);
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("cruiseId", cruiseId);
+        for (int i = 0; i < prices.length; i++) out.put(CabinInventory.CABIN_CLASSES[i], prices[i]);
+        return Response.json(200, out);
+    }
+
+    private Response listCruises(Map<String, String> q) throws SQLException {
+        ScheduleService.Filter filter = new ScheduleService.Filter()
+                .status(q.get("status"))
+                .departurePort(q.get("port"))
+                .availableIn(q.get("available"));
+        ScheduleService.Sort sort;
+        try {
+            if (q.containsKey("from")) filter.from(LocalDate.parse(q.get("from")));
+            if (q.containsKey("to")) filter.to(LocalDate.parse(q.get("to")));
+            sort = ScheduleService.Sort.valueOf(q.getOrDefault("sort", "START_DATE").toUpperCase());
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            throw new HttpError(400, "Bad schedule query: " + e.getMessage());
+        }
+        if (q.containsKey("shipId")) filter.shipId(parseId(q.get("shipId")));
+
+        List<Map<String, Object>> out = new ArrayList<>();
+        for (ScheduleService.Entry e : ScheduleService.query(filter, sort, Boolean.parseBoolean(q.get("desc")))) {
+            Map<String, Object> m = toJson(e.getCruise());
+            Map<String, Object> left = new LinkedHashMap<>();
+            for (String cls : CabinInventory.CABIN_CLASSES) {
+                int n = e.getRemaining(cls);
+                left.put(cls, n < 0 ? null : n);
+            }
+            m.put("cabinsLeft", left);
+            out.add(m);
+        }
+        return Response.json(200, out);
+    }
+
+    private Response listPassengers(Map<String, String> q) throws SQLException {
+        int after = Integer.parseInt(q.getOrDefault("after", "0"));
+        int limit = Integer.parseInt(q.getOrDefault("limit", "20"));
+        if (limit < 1) throw new HttpError(400, "limit must be at least 1");
+        limit = Math.min(MAX_PAGE_SIZE, limit);
+        List<Passenger> page = passengers.listPassengers(after, limit);
+
+        List<Map<String, Object>> items = new ArrayList<>(page.size());
+        for (Passenger p : page) items.add(toJson(p));
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("items", items);
+        out.put("nextAfter", page.size() == limit ? page.get(page.size() - 1).getPassengerId() : null);
+        return Response.json(200, out);
+    }
+
+    private Response searchPassengers(Map<String, String> q) throws SQLException {
+        int offset = Math.max(0, Integer.parseInt(q.getOrDefault("offset", "0")));
+        int limit = Integer.parseInt(q.getOrDefault("limit", "20"));
+        if (limit < 0) throw new HttpError(400, "limit must not be negative");
+        limit = Math.min(MAX_PAGE_SIZE, limit);
+        PassengerIndex.Page page = passengers.searchPassengers(q.get("q"), q.get("nationality"), q.get("gender"), offset, limit);
+
+        List<Map<String, Object>> items = new ArrayList<>(page.getItems().size());
+        for (Passenger p : page.getItems()) items.add(toJson(p));
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("total", page.getTotal());
+        out.put("items", items);
+        out.put("nextOffset", offset + items.size() < page.getTotal() ? offset + items.size() : null);
+        return Response.json(200, out);
+    }
+
+    private Response createPassenger(Map<String, Object> b) throws SQLException {
+        int id = passengers.createPassenger(requireString(b, "name"), requireInt(b, "age"),
+                requireString(b, "gender"), requireString(b, "nationality"));
+        if (id <= 0) throw new HttpError(500, "Passenger not added");
+        return Response.json(201, toJson(passengers.findPassenger(id)));
+    }
+
+    private Response getPassenger(int id) throws SQLException {
+        Passenger p = passengers.findPassenger(id);
+        if (p == null) throw new HttpError(404, "Passenger not found: " + id);
+        return Response.json(200, toJson(p));
+    }
+
+    private Response updatePassenger(int id, Map<String, Object> b) throws SQLException {
+        if (!passengers.updatePassenger(id, requireString(b, "name"), requireInt(b, "age"))) {
+            throw new HttpError(404, "Passenger not found: " + id);
+        }
+        return Response.json(200, toJson(passengers.findPassenger(id)));
+    }
+
+    private Response deletePassenger(int id) throws SQLException {
+        if (!passengers.deletePassenger(id)) throw new HttpError(404, "Passenger not found: " + id);
+        return new Response(204, "application/json", new byte[0]);
+    }
+
+    private Response passengerBookings(int passengerId) throws SQLException {
+        List<Map<String, Object>> out = new ArrayList<>();
+        for (Booking b : bookings.findBookingsByPassenger(passengerId)) out.add(toJson(b));
+        return Response.json(200, out);
+    }
+
+    private Response createBooking(Map<String, Object> b, String idempotencyKey) throws SQLException, IOException {
+        String cabinClass = requireString(b, "cabinClass").toUpperCase();
+        int cruiseId = requireInt(b, "cruiseId");
+        if (ScheduleService.get(cruiseId) == null) throw new HttpError(404, "Cruise not found: " + cruiseId);
+        double price = bookings.quotePrice(cruiseId, cabinClass);
+        if (price <= 0) throw new HttpError(400, "Invalid cabin class: " + cabinClass);
+        String mode = paymentMode(b);
+
+        Booking booking = new Booking(requireInt(b, "passengerId"), cruiseId, cabinClass, price);
+        if (BookingJournal.ENABLED) return toResponse(bookings.bookWriteBehind(booking, mode, idempotencyKey), true);
+        int bookingId = bookings.book(booking, mode);
+        if (bookingId == BookingService.SOLD_OUT) throw new HttpError(409, "No " + cabinClass + " cabins left on this cruise");
+        if (bookingId == -1) throw new HttpError(404, "Passenger or cruise not found");
+
+        TicketJobQueue.Job job = TicketJobQueue.submit(bookingId);
+        Map<String, Object> out = toJson(booking);
+        out.put("ticketStatus", job.getStatus().name());
+        return Response.json(201, out);
+    }
+
+    private Response createGroupBooking(Map<String, Object> b) throws SQLException {
+        String cabinClass = requireString(b, "cabinClass").toUpperCase();
+        int cruiseId = requireInt(b, "cruiseId");
+        if (ScheduleService.get(cruiseId) == null) throw new HttpError(404, "Cruise not found: " + cruiseId);
+        double price = bookings.quotePrice(cruiseId, cabinClass);
+        if (price <= 0) throw new HttpError(400, "Invalid cabin class: " + cabinClass);
+        String mode = paymentMode(b);
+        if (!(b.get("passengerIds") instanceof List<?> ids) || ids.isEmpty() || ids.size() > BookingService.MAX_GROUP_SIZE) {
+            throw new HttpError(400, "passengerIds must list 1 to " + BookingService.MAX_GROUP_SIZE + " passenger IDs");
+        }
+
+        List<Booking> group = new ArrayList<>(ids.size());
+        Set<Integer> seen = new HashSet<>();
+        for (Object id : ids) {
+            if (!(id instanceof Double d) || d != Math.rint(d) || d < 1 || d > Integer.MAX_VALUE) {
+                throw new HttpError(400, "Invalid passenger ID: " + id);
+            }
+            if (!seen.add(d.intValue())) throw new HttpError(400, "Passenger " + d.intValue() + " is listed twice");
+            group.add(new Booking(d.intValue(), cruiseId, cabinClass, price));
+        }
+        int booked = bookings.bookGroup(group, mode);
+        if (booked == BookingService.SOLD_OUT) throw new HttpError(409, "Not enough " + cabinClass + " cabins left for " + group.size() + " passengers");
+        if (booked == -1) throw new HttpError(404, "A passenger or the cruise was not found");
+
+        List<Integer> bookingIds = new ArrayList<>(group.size());
+        for (Booking g : group) bookingIds.add(g.getBookingId());
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("cruiseId", cruiseId);
+        out.put("cabinClass", cabinClass);
+        out.put("pricePerPassenger", price);
+        out.put("bookingIds", bookingIds);
+        out.put("tickets", "/tickets/group?ids=" + String.join(",", bookingIds.stream().map(String::valueOf).toList()));
+        return Response.json(201, out);
+    }
+
+    /** Rendered on every request, group tickets are not cached. */
+    private Response groupTicketPdf(Map<String, String> q) throws Exception {
+        String raw = q.get("ids");
+        if (raw == null || raw.isBlank()) throw new HttpError(400, "Missing query parameter: ids");
+        List<Integer> ids = new ArrayList<>();
+        for (String id : raw.split(",")) ids.add(parseId(id.trim()));
+        if (ids.size() > BookingService.MAX_GROUP_SIZE) throw new HttpError(400, "At most " + BookingService.MAX_GROUP_SIZE + " bookings per group ticket");
+        byte[] pdf = TicketGenerator.groupTicketBytes(ids);
+        if (pdf == null) throw new HttpError(404, "Some of the bookings were not found");
+        return new Response(200, "application/pdf", pdf);
+    }
+
+    private Response ticketStatus(int bookingId) {
+        TicketJobQueue.Job job = TicketJobQueue.lookup(bookingId);
+        if (job == null) throw new HttpError(404, "No ticket job for booking " + bookingId);
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("bookingId", bookingId);
+        out.put("status", job.getStatus().name());
+        out.put("attempts", job.getAttempts());
+        out.put("error", job.getError());
+        return Response.json(200, out);
+    }
+
+    /** Rendered in memory, or served from the ticket cache if the booking is unchanged. */
+    private Response ticketPdf(int bookingId, String ifNoneMatch) throws Exception {
+        TicketCache.CachedTicket ticket = TicketGenerator.ticketBytes(bookingId);
+        if (ticket == null) throw new HttpError(404, "Booking not found: " + bookingId);
+        String etag = '"' + ticket.getHash() + '"';
+        if (etag.equals(ifNoneMatch)) return new Response(304, "application/pdf", new byte[0], etag);
+        return new Response(200, "application/pdf", ticket.getPdf(), etag);
+    }
+
+    private Response verifyTicket(Map<String, Object> b) {
+        int cruiseId = b.get("cruiseId") == null ? 0 : requireInt(b, "cruiseId");
+        TicketVerifier.Result r = TicketVerifier.verify(requireString(b, "code"), cruiseId);
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("status", r.getStatus().name());
+        out.put("valid", r.isValid());
+        TicketToken.Claims c = r.getClaims();
+        if (c != null) {
+            out.put("bookingId", c.getBookingId());
+            out.put("cruiseId", c.getCruiseId());
+            out.put("cabinClass", c.getCabinClass());
+            out.put("passengerName", c.getPassengerName());
+            out.put("issuedAt", c.getIssuedAt());
+        }
+        return Response.json(200, out);
+    }
+
+    // ---- JSON mapping and request parsing ----
+
+    private static Map<String, Object> toJson(Passenger p) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("passengerId", p.getPassengerId());
+        m.put("name", p.getName());
+        m.put("age", p.getAge());
+        m.put("gender", p.getGender());
+        m.put("nationality", p.getNationality());
+        return m;
+    }
+
+    private static Map<String, Object> toJson(Booking b) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("bookingId", b.getBookingId());
+        m.put("passengerId", b.getPassengerId());
+        m.put("cruiseId", b.getCruiseId());
+        m.put("cabinClass", b.getCabinClass());
+        m.put("price", b.getPrice());
+        if (b.getPaymentId() > 0) m.put("paymentId", b.getPaymentId());
+        if (b.getBookingDate() != null) m.put("bookingDate", b.getBookingDate().toString());
+        if (b.getPaymentStatus() != null) m.put("paymentStatus", b.getPaymentStatus());
+        return m;
+    }
+
+    private static Map<String, Object> toJson(Cruise c) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("cruiseId", c.getCruiseId());
+        m.put("shipId", c.getShipId());
+        m.put("shipName", c.getShipName());
+        m.put("startPort", c.getStartPort());
+        m.put("destPort", c.getDestPort());
+        m.put("stops", c.getStops());
+        m.put("startDate", c.getStartDate() == null ? null : c.getStartDate().toString());
+        m.put("endDate", c.getEndDate() == null ? null : c.getEndDate().toString());
+        m.put("status", c.getStatus());
+        return m;
+    }
+
+    private static int parseId(String s) {
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException e) {
+            throw new HttpError(400, "Not a valid ID: " + s);
+        }
+    }
+
+    private static String paymentMode(Map<String, Object> b) {
+        String mode = String.valueOf(b.getOrDefault("paymentMode", "CASH")).trim().toUpperCase();
+        if (!BookingService.PAYMENT_MODES.contains(mode)) {
+            throw new HttpError(400, "paymentMode must be one of " + String.join(", ", BookingService.PAYMENT_MODES));
+        }
+        return mode;
+    }
+
+    private static String requireString(Map<String, Object> b, String key) {
+        Object v = b.get(key);
+        if (v == null || v.toString().isBlank()) throw new HttpError(400, "Missing field: " + key);
+        return v.toString().trim();
+    }
+
+    private static int requireInt(Map<String, Object> b, String key) {
+        Object v = b.get(key);
+        if (v instanceof Double d) {
+            // intValue() would quietly turn 1.5 into 1 and 1e12 into Integer.MAX_VALUE
+            if (d != Math.rint(d) || d < Integer.MIN_VALUE || d > Integer.MAX_VALUE) {
+                throw new HttpError(400, "Not a whole number: " + key);
+            }
+            return d.intValue();
+        }
+        if (v instanceof String s) return parseId(s.trim());
+        throw new HttpError(400, "Missing or non-numeric field: " + key);
+    }
+
+    private static Map<String, Object> body(HttpExchange ex) throws IOException {
+        try (InputStream in = ex.getRequestBody()) {
+            return Json.parseObject(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static Map<String, String> query(HttpExchange ex) {
+        Map<String, String> q = new HashMap<>();
+        String raw = ex.getRequestURI().getRawQuery();
+        if (raw == null) return q;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                q.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return q;
+    }
+}
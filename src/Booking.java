@@ -1,9 +1,14 @@
+import java.sql.Timestamp;
+
 public class Booking {
     private int bookingId;
     private int passengerId;
     private int cruiseId;
     private String cabinClass;
     private double price;
+    private int paymentId;
+    private Timestamp bookingDate;
+    private String paymentStatus;
 
     public Booking(int passengerId, int cruiseId, String cabinClass, double price) {
         this.passengerId = passengerId;
@@ -12,6 +17,14 @@ public class Booking {
         this.price = price;
     }
 
+    public int getBookingId() { return bookingId; }
+    public void setBookingId(int bookingId) { this.bookingId = bookingId; }
+    public int getPaymentId() { return paymentId; }
+    public void setPaymentId(int paymentId) { this.paymentId = paymentId; }
+    public Timestamp getBookingDate() { return bookingDate; }
+    public void setBookingDate(Timestamp bookingDate) { this.bookingDate = bookingDate; }
+    public String getPaymentStatus() { return paymentStatus; }
+    public void setPaymentStatus(String paymentStatus) { this.paymentStatus = paymentStatus; }
     public int getPassengerId() { return passengerId; }
     public int getCruiseId() { return cruiseId; }
     public String getCabinClass() { return cabinClass; }
@@ -0,0 +1,681 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/**
+ * Write-behind journal for bookings. A booking is acknowledged once it is durable in a
+ * local memory-mapped file; a background drainer then writes journaled bookings to the
+ * booking and payment tables in batches, one transaction per batch. A slow or failing
+ * database shows up as a growing backlog instead of slow or failed bookings.
+ *
+ * Appends are group-committed: a single flusher thread forces everything written since
+ * its last force, so bookings arriving together share one fsync. Every booking carries an
+ * idempotency key, stored in booking.idempotency_key (sql/booking_idempotency.sql): a
+ * client retrying with the same key gets the same booking, and a batch that reached the
+ * database just before a crash is recognised on replay instead of written twice.
+ *
+ * Layout of journal.dir/bookings.journal (journal.bytes, mapped whole):
+ *   header   magic, version, epoch, drained offset, CRC32     32 bytes
+ *   records  length, CRC32, epoch, booking                     one per booking
+ * On open, every record after the drained offset with a valid CRC and the header's epoch
+ * is replayed. Whenever everything is drained the epoch is bumped and writing starts
+ * over at the top, so older records stop matching.
+ *
+ * Cabins are reserved in CabinInventory when a booking is journaled (replayed bookings
+ * when they are drained) and written to cabin_inventory with the booking. A journaled
+ * booking can still be rejected when it is drained, if its passenger was deleted or
+ * another instance sold the last cabins in the meantime; its status then says so.
+ *
+ * Settings: bookings.writeBehind (false), journal.dir (journal), journal.bytes (64 MB),
+ * journal.batchSize (200), journal.retryMs (1 s).
+ */
+public class BookingJournal {
+
+    private static final int MAGIC = 0x424B4A31; // "BKJ1"
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_BYTES = 32;
+    private static final int RECORD_HEADER_BYTES = 4 + 4 + 8;
+    static final int MAX_KEY_LENGTH = 64;
+
+    /** Whether the console and the API book through the journal. */
+    static final boolean ENABLED = Boolean.getBoolean("bookings.writeBehind");
+    private static final Path DIR = Paths.get(System.getProperty("journal.dir", "journal"));
+    private static final int CAPACITY = (int) Math.min(Long.getLong("journal.bytes", 64L << 20), Integer.MAX_VALUE);
+    private static final int BATCH_SIZE = Integer.getInteger("journal.batchSize", 200);
+    private static final long RETRY_MS = Long.getLong("journal.retryMs", 1_000);
+    private static final int RESOLVED_KEPT = 100_000;
+
+    private static final Metrics.Timer APPEND = Metrics.timer("journal.append");
+    private static final Metrics.Timer FSYNC = Metrics.timer("journal.fsync");
+    private static final Metrics.Timer DRAIN = Metrics.timer("journal.drain");
+    private static final Metrics.Counter DRAINED = Metrics.counter("journal.drained");
+    private static final Metrics.Counter REJECTED = Metrics.counter("journal.rejected");
+    private static final Metrics.Counter DRAIN_ERRORS = Metrics.counter("journal.drainErrors");
+
+    private static final String INSERT_BOOKING = """
+            INSERT INTO booking (passenger_id, cruise_id, cabin_class, price, status, payment_status, idempotency_key)
+            SELECT p.passenger_id, c.cruise_id, ?, ?, 'CONFIRMED', 'PAID', ?
+            FROM passenger p JOIN cruise c ON c.cruise_id = ?
+            WHERE p.passenger_id = ?
+            """;
+
+    /** REJECTED: the database refused the booking for a reason retrying will not fix. */
+    public enum Status { PENDING, CONFIRMED, SOLD_OUT, NOT_FOUND, REJECTED }
+
+    /** A journaled booking and what became of it. */
+    public static final class Pending {
+        private final String key;
+        private final Booking booking;
+        private final String paymentMode;
+        private final int end; // journal offset just past its record
+        private final boolean replayed;
+        private final CompletableFuture<Pending> done = new CompletableFuture<>();
+        private volatile Status status = Status.PENDING;
+        private boolean reserved; // drainer only: cabin reserved in CabinInventory
+
+        private Pending(String key, Booking booking, String paymentMode, int end, boolean replayed) {
+            this.key = key;
+            this.booking = booking;
+            this.paymentMode = paymentMode;
+            this.end = end;
+            this.replayed = replayed;
+            this.reserved = !replayed;
+        }
+
+        public String getKey() { return key; }
+        public Booking getBooking() { return booking; }
+        public String getPaymentMode() { return paymentMode; }
+        public Status getStatus() { return status; }
+        /** The booking ID once CONFIRMED, else 0. */
+        public int getBookingId() { return booking.getBookingId(); }
+
+        /** Completes when the booking has been written to the database or rejected. */
+        public CompletableFuture<Pending> whenDone() { return done; }
+
+        private void resolve(Status s) {
+            status = s;
+            done.complete(this);
+        }
+    }
+
+    /** A booking turned down before it was journaled. */
+    static Pending rejected(String key, Booking booking, String paymentMode, Status status) {
+        Pending p = new Pending(key, booking, paymentMode, 0, false);
+        p.resolve(status);
+        return p;
+    }
+
+    private static BookingJournal shared;
+
+    private final Path path;
+    private final int capacity;
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final Object lock = new Object();
+    // journaled but not yet drained, in journal order
+    private final ArrayDeque<Pending> queue = new ArrayDeque<>();
+    // by idempotency key: everything pending plus the most recently resolved
+    private final Map<String, Pending> byKey = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Pending> eldest) {
+            return size() > RESOLVED_KEPT && eldest.getValue().status != Status.PENDING;
+        }
+    };
+    private final Thread flusher;
+    private final Thread drainer;
+    // tickets are queued off the drain thread, TicketJobQueue.submit blocks while its queue is full
+    private final ExecutorService ticketSubmitter = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "booking-journal-tickets");
+        t.setDaemon(true);
+        return t;
+    });
+    private long epoch;
+    private int writePos;
+    private int durablePos;
+    private int drainedPos;
+    private IOException failure;
+    private boolean closed;
+
+    /** The journal under journal.dir, opened (and replayed) on first use. */
+    public static synchronized BookingJournal shared() {
+        if (shared == null) {
+            try {
+                shared = new BookingJournal(DIR, CAPACITY);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not open booking journal in " + DIR.toAbsolutePath(), e);
+            }
+        }
+        return shared;
+    }
+
+    /** Close the shared journal if it was opened. Undrained bookings are replayed on next open. */
+    public static synchronized void closeShared() {
+        if (shared != null) {
+            shared.close();
+            shared = null;
+        }
+    }
+
+    public static synchronized String stats() {
+        if (shared == null) return "journal[not open]";
+        synchronized (shared.lock) {
+            return String.format("journal[pending=%d bytes=%d/%d epoch=%d]",
+                    shared.queue.size(), shared.writePos, shared.capacity, shared.epoch);
+        }
+    }
+
+    BookingJournal(Path dir, int capacity) throws IOException {
+        Files.createDirectories(dir);
+        this.path = dir.resolve("bookings.journal");
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // never map less than an existing file holds
+        this.capacity = (int) Math.max(capacity, Math.min(channel.size(), Integer.MAX_VALUE));
+        this.map = channel.map(FileChannel.MapMode.READ_WRITE, 0, this.capacity);
+
+        if (map.getInt(0) == 0) {
+            epoch = 1;
+            drainedPos = FILE_HEADER_BYTES;
+            writeHeader();
+        } else {
+            readHeader();
+        }
+        replay();
+
+        flusher = new Thread(this::flushLoop, "booking-journal-flush");
+        flusher.setDaemon(true);
+        flusher.start();
+        drainer = new Thread(this::drainLoop, "booking-journal-drain");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /** The booking journaled under this idempotency key, if it is still remembered. */
+    public Pending lookup(String key) {
+        synchronized (lock) {
+            return byKey.get(key);
+        }
+    }
+
+    /**
+     * Journal a booking whose cabin the caller has already reserved, and return once the
+     * record is durable. If {@code key} is already journaled, that booking is returned
+     * instead and nothing is written (the caller still holds its own reservation).
+     */
+    public Pending append(Booking booking, String paymentMode, String key) throws IOException {
+        long t0 = System.nanoTime();
+        byte[] payload = encode(key, booking, paymentMode);
+        Pending p;
+        synchronized (lock) {
+            if (closed) throw new IOException("Booking journal is closed");
+            if (failure != null) throw new IOException("Booking journal cannot be written: " + failure.getMessage(), failure);
+            Pending known = byKey.get(key);
+            if (known != null) return known;
+
+            int need = RECORD_HEADER_BYTES + payload.length;
+            if (writePos + need > capacity) {
+                if (drainedPos != writePos) {
+                    throw new IOException("Booking journal is full: " + queue.size() + " bookings are waiting for the database");
+                }
+                restart();
+            }
+            int pos = writePos;
+            map.putLong(pos + 8, epoch);
+            map.put(pos + RECORD_HEADER_BYTES, payload);
+            map.putInt(pos + 4, crc(pos + 8, 8 + payload.length));
+            map.putInt(pos, payload.length);
+            writePos = pos + need;
+
+            p = new Pending(key, booking, paymentMode, writePos, false);
+            queue.add(p);
+            byKey.put(key, p);
+            lock.notifyAll();
+
+            // a new epoch means the record was drained, durablePos was reset with the file
+            long written = epoch;
+            while (epoch == written && durablePos < p.end && failure == null) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted waiting for the booking journal; booking " + key + " may still be written");
+                }
+            }
+            if (epoch == written && durablePos < p.end) throw new IOException("Booking journal cannot be written: " + failure.getMessage(), failure);
+        }
+        APPEND.record(t0);
+        return p;
+    }
+
+    public void close() {
+        synchronized (lock) {
+            if (closed) return;
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            flusher.join(10_000);
+            drainer.join(10_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ticketSubmitter.shutdownNow(); // a ticket not queued yet is rendered on first download
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.out.println("Could not close booking journal: " + e.getMessage());
+        }
+    }
+
+    // ---- flushing ----
+
+    /** Force everything written since the last force; appenders waiting on it wake up together. */
+    private void flushLoop() {
+        while (true) {
+            int from;
+            int to;
+            synchronized (lock) {
+                while (!closed && writePos == durablePos && failure == null) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (writePos == durablePos || failure != null) return;
+                from = durablePos;
+                to = writePos;
+            }
+            long t0 = System.nanoTime();
+            try {
+                map.force(from, to - from);
+            } catch (UncheckedIOException e) {
+                synchronized (lock) {
+                    failure = e.getCause();
+                    lock.notifyAll();
+                }
+                System.out.println("Booking journal fsync failed, no more bookings are accepted: " + e.getMessage());
+                return;
+            }
+            FSYNC.record(t0);
+            synchronized (lock) {
+                durablePos = to;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    // ---- draining ----
+
+    private void drainLoop() {
+        boolean failing = false;
+        while (true) {
+            List<Pending> batch = new ArrayList<>();
+            synchronized (lock) {
+                while (!closed && (queue.isEmpty() || queue.peekFirst().end > durablePos)) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed) return;
+                for (Pending p : queue) {
+                    if (p.end > durablePos || batch.size() == BATCH_SIZE) break;
+                    batch.add(p);
+                }
+            }
+
+            try {
+                try {
+                    write(batch);
+                } catch (SQLException e) {
+                    if (isTransient(e)) throw e;
+                    // something in the batch is bad: find it, so it cannot hold up the rest
+                    DRAIN_ERRORS.increment();
+                    writeOneByOne(batch, e);
+                }
+                if (failing) System.out.println("Booking journal: database reachable again, draining");
+                failing = false;
+            } catch (SQLException e) {
+                DRAIN_ERRORS.increment();
+                if (!failing) {
+                    System.out.println("Booking journal: could not write bookings to the database, retrying every "
+                            + RETRY_MS + " ms: " + e.getMessage());
+                }
+                failing = true;
+                if (!pause(RETRY_MS)) return;
+                continue;
+            }
+
+            synchronized (lock) {
+                for (int i = 0; i < batch.size(); i++) queue.pollFirst();
+                drainedPos = batch.get(batch.size() - 1).end;
+                if (drainedPos == writePos) {
+                    restart();
+                } else {
+                    writeHeader();
+                }
+            }
+            for (Pending p : batch) {
+                if (p.status == Status.CONFIRMED) {
+                    int bookingId = p.getBookingId();
+                    ticketSubmitter.execute(() -> TicketJobQueue.submit(bookingId));
+                } else {
+                    REJECTED.increment();
+                    System.out.println("Journaled booking " + p.key + " could not be completed: " + p.status);
+                }
+                p.done.complete(p);
+            }
+            DRAINED.add(batch.size());
+        }
+    }
+
+    /**
+     * Write the batch one booking at a time after it failed as a whole. A booking that
+     * fails on its own for a non-transient reason is REJECTED and gives its cabin back;
+     * a transient error is rethrown and the batch retried (bookings already written here
+     * are no longer PENDING and are skipped).
+     */
+    private static void writeOneByOne(List<Pending> batch, SQLException batchError) throws SQLException {
+        for (Pending p : batch) {
+            if (p.status != Status.PENDING) continue;
+            try {
+                write(List.of(p));
+            } catch (SQLException e) {
+                if (isTransient(e)) throw e;
+                System.out.println("Booking journal: rejecting booking " + p.key + ": " + e.getMessage());
+                if (p.reserved) CabinInventory.release(p.booking.getCruiseId(), p.booking.getCabinClass(), 1);
+                p.reserved = false;
+                p.status = Status.REJECTED;
+            }
+        }
+        if (batch.stream().noneMatch(p -> p.status == Status.REJECTED)) {
+            // not reproducible one by one; the batch is written now, note what happened
+            System.out.println("Booking journal: batch failed but every booking was written singly: " + batchError.getMessage());
+        }
+    }
+
+    /** Worth retrying: a lost or refused connection, a deadlock or lock wait timeout. */
+    static boolean isTransient(SQLException e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLTransientException || t instanceof SQLRecoverableException) return true;
+            if (t instanceof SQLException s && s.getSQLState() != null && s.getSQLState().startsWith("08")) return true;
+        }
+        return false;
+    }
+
+    /** Wait {@code ms} unless the journal is closed first; false if it was. */
+    private boolean pause(long ms) {
+        long until = System.currentTimeMillis() + ms;
+        synchronized (lock) {
+            for (long left = ms; !closed && left > 0; left = until - System.currentTimeMillis()) {
+                try {
+                    lock.wait(left);
+                } catch (InterruptedException e) {
+                    return false;
+                }
+            }
+            return !closed;
+        }
+    }
+
+    /**
+     * Write one batch to the database and set each booking's outcome (the futures are
+     * completed by the caller once the journal checkpoint has moved past the batch).
+     * If the database is out of cabins for one (cruise, class), those bookings are
+     * marked SOLD_OUT and the rest of the batch is written without them.
+     */
+    private static void write(List<Pending> batch) throws SQLException {
+        long t0 = System.nanoTime();
+        try (Connection conn = DBConnection.borrow()) {
+            // replayed bookings lost their in-memory reservation with the previous process
+            for (Pending p : batch) {
+                if (!p.reserved) {
+                    Booking b = p.booking;
+                    p.reserved = CabinInventory.tryReserve(conn, b.getCruiseId(), b.getCabinClass(), 1);
+                    if (!p.reserved) p.status = Status.SOLD_OUT;
+                }
+            }
+            conn.setAutoCommit(false);
+            while (true) {
+                List<Pending> todo = new ArrayList<>(batch.size());
+                for (Pending p : batch) {
+                    if (p.status == Status.PENDING) todo.add(p);
+                }
+                if (todo.isEmpty()) break;
+                List<Pending> soldOut = writeOnce(conn, todo);
+                if (soldOut == null) break;
+                for (Pending p : soldOut) p.status = Status.SOLD_OUT; // commitReservation released them
+            }
+
+            Set<Integer> repriced = new HashSet<>();
+            for (Pending p : batch) {
+                if (p.status == Status.CONFIRMED && repriced.add(p.booking.getCruiseId())) {
+                    PricingEngine.occupancyChanged(conn, p.booking.getCruiseId());
+                }
+            }
+        } finally {
+            DRAIN.record(t0);
+        }
+    }
+
+    /**
+     * One transaction for {@code todo}. Returns the bookings of a (cruise, class) that the
+     * database has no cabins left for, with nothing committed, or null once committed
+     * (each booking then CONFIRMED or NOT_FOUND).
+     */
+    private static List<Pending> writeOnce(Connection conn, List<Pending> todo) throws SQLException {
+        try {
+            Map<String, Integer> existing = existingBookings(conn, todo);
+            List<Pending> fresh = new ArrayList<>(todo.size());
+            for (Pending p : todo) {
+                if (!existing.containsKey(p.key)) fresh.add(p);
+            }
+
+            int[] ids = new int[fresh.size()];
+            if (!fresh.isEmpty()) {
+                try (PreparedStatement ps = conn.prepareStatement(INSERT_BOOKING, Statement.RETURN_GENERATED_KEYS)) {
+                    for (Pending p : fresh) {
+                        Booking b = p.booking;
+                        ps.setString(1, b.getCabinClass());
+                        ps.setDouble(2, b.getPrice());
+                        ps.setString(3, p.key);
+                        ps.setInt(4, b.getCruiseId());
+                        ps.setInt(5, b.getPassengerId());
+                        ps.addBatch();
+                    }
+                    int[] counts = ps.executeBatch();
+                    try (ResultSet gk = ps.getGeneratedKeys()) {
+                        for (int i = 0; i < counts.length; i++) {
+                            if (counts[i] == 0 || counts[i] == Statement.EXECUTE_FAILED) continue;
+                            if (!gk.next()) break;
+                            ids[i] = gk.getInt(1);
+                        }
+                    }
+                }
+                try (PreparedStatement ps = conn.prepareStatement(BookingService.INSERT_PAYMENT)) {
+                    for (int i = 0; i < ids.length; i++) {
+                        if (ids[i] == 0) continue;
+                        ps.setInt(1, ids[i]);
+                        ps.setDouble(2, fresh.get(i).booking.getPrice());
+                        ps.setString(3, fresh.get(i).paymentMode);
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+            }
+
+            Map<String, List<Pending>> byClass = new LinkedHashMap<>();
+            for (int i = 0; i < ids.length; i++) {
+                Booking b = fresh.get(i).booking;
+                if (ids[i] != 0) byClass.computeIfAbsent(b.getCruiseId() + "/" + b.getCabinClass(), k -> new ArrayList<>()).add(fresh.get(i));
+            }
+            for (List<Pending> group : byClass.values()) {
+                Booking first = group.get(0).booking;
+                if (!CabinInventory.commitReservation(conn, first.getCruiseId(), first.getCabinClass(), group.size())) {
+                    conn.rollback();
+                    return group;
+                }
+            }
+            conn.commit();
+            for (List<Pending> group : byClass.values()) {
+                Booking first = group.get(0).booking;
+                CabinInventory.confirmReservation(first.getCruiseId(), first.getCabinClass(), group.size());
+            }
+
+            for (int i = 0; i < ids.length; i++) {
+                Pending p = fresh.get(i);
+                if (ids[i] != 0) {
+                    p.booking.setBookingId(ids[i]);
+                    p.status = Status.CONFIRMED;
+                } else {
+                    CabinInventory.release(p.booking.getCruiseId(), p.booking.getCabinClass(), 1);
+                    p.status = Status.NOT_FOUND;
+                }
+            }
+            for (Pending p : todo) {
+                Integer id = existing.get(p.key);
+                if (id == null) continue;
+                // written before a crash: cabin_inventory already counts it
+                CabinInventory.release(p.booking.getCruiseId(), p.booking.getCabinClass(), 1);
+                p.booking.setBookingId(id);
+                p.status = Status.CONFIRMED;
+            }
+            return null;
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        }
+    }
+
+    private static Map<String, Integer> existingBookings(Connection conn, List<Pending> todo) throws SQLException {
+        String sql = "SELECT idempotency_key, booking_id FROM booking WHERE idempotency_key IN ("
+                + String.join(",", Collections.nCopies(todo.size(), "?")) + ")";
+        Map<String, Integer> out = new HashMap<>();
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int i = 0; i < todo.size(); i++) ps.setString(i + 1, todo.get(i).key);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) out.put(rs.getString("idempotency_key"), rs.getInt("booking_id"));
+            }
+        }
+        return out;
+    }
+
+    // ---- file format ----
+
+    private void readHeader() throws IOException {
+        if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION || map.getInt(24) != crc(0, 24)) {
+            throw new IOException("Unreadable booking journal header in " + path
+                    + "; it may hold unwritten bookings, move it aside only after checking");
+        }
+        epoch = map.getLong(8);
+        drainedPos = (int) map.getLong(16);
+    }
+
+    private void writeHeader() {
+        map.putInt(0, MAGIC);
+        map.putInt(4, VERSION);
+        map.putLong(8, epoch);
+        map.putLong(16, drainedPos);
+        map.putInt(24, crc(0, 24));
+        map.force(0, FILE_HEADER_BYTES);
+    }
+
+    /** Everything is drained: start over at the top under a new epoch. */
+    private void restart() {
+        epoch++;
+        drainedPos = writePos = durablePos = FILE_HEADER_BYTES;
+        writeHeader();
+    }
+
+    private void replay() throws IOException {
+        int pos = drainedPos;
+        while (pos + RECORD_HEADER_BYTES <= capacity) {
+            int length = map.getInt(pos);
+            if (length <= 0 || length > capacity - pos - RECORD_HEADER_BYTES) break;
+            if (map.getLong(pos + 8) != epoch || map.getInt(pos + 4) != crc(pos + 8, 8 + length)) break;
+            byte[] payload = new byte[length];
+            map.get(pos + RECORD_HEADER_BYTES, payload);
+            pos += RECORD_HEADER_BYTES + length;
+            Pending p = decode(payload, pos);
+            queue.add(p);
+            byKey.put(p.key, p);
+        }
+        writePos = durablePos = pos;
+
+        // A crash can leave records of this epoch after a torn one; they were never
+        // acknowledged, and must not line up behind new records and replay later.
+        int dirtyEnd = capacity;
+        while (dirtyEnd - 8 >= pos && map.getLong(dirtyEnd - 8) == 0) dirtyEnd -= 8;
+        while (dirtyEnd > pos && map.get(dirtyEnd - 1) == 0) dirtyEnd--;
+        if (dirtyEnd > pos) {
+            int i = pos;
+            for (; i + 8 <= dirtyEnd; i += 8) map.putLong(i, 0);
+            for (; i < dirtyEnd; i++) map.put(i, (byte) 0);
+            map.force(pos, dirtyEnd - pos);
+        }
+        if (!queue.isEmpty()) {
+            System.out.println("Booking journal: " + queue.size() + " bookings not yet in the database, writing them now");
+        }
+    }
+
+    private static byte[] encode(String key, Booking b, String paymentMode) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(96);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(key);
+            out.writeInt(b.getPassengerId());
+            out.writeInt(b.getCruiseId());
+            out.writeUTF(b.getCabinClass());
+            out.writeDouble(b.getPrice());
+            out.writeUTF(paymentMode);
+            out.writeLong(System.currentTimeMillis());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // in-memory stream
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Pending decode(byte[] payload, int end) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            String key = in.readUTF();
+            Booking b = new Booking(in.readInt(), in.readInt(), in.readUTF(), in.readDouble());
+            String mode = in.readUTF();
+            return new Pending(key, b, mode, end, true);
+        }
+    }
+
+    private int crc(int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(map.duplicate().position(offset).limit(offset + length));
+        return (int) crc.getValue();
+    }
+}
@@ -1,26 +1,36 @@
 // BookingService.java
+import java.io.IOException;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class BookingService {
-    private final Connection conn;
     private final Scanner sc;
 
-    public BookingService(Connection conn, Scanner sc) {
-        this.conn = conn;
+    /** For callers without a console (the API server); the menu methods need a Scanner. */
+    public BookingService() {
+        this(null);
+    }
+
+    public BookingService(Scanner sc) {
         this.sc = sc;
     }
 
-    private double calculatePrice(String cabinClass) {
-        return switch (cabinClass.toUpperCase()) {
-            case "ECONOMY" -> 15000.00;
-            case "STANDARD" -> 25000.00;
-            case "LUXURY" -> 45000.00;
-            default -> 0.00;
-        };
+    /** Current price of a cabin class on a cruise (see {@link PricingEngine}), 0 for an unknown class. */
+    double quotePrice(int cruiseId, String cabinClass) throws SQLException {
+        return PricingEngine.quote(cruiseId, cabinClass);
     }
 
-    private boolean passengerExists(int pid) throws SQLException {
+    private boolean passengerExists(Connection conn, int pid) throws SQLException {
         try (PreparedStatement ps = conn.prepareStatement("SELECT 1 FROM passenger WHERE passenger_id = ?")) {
             ps.setInt(1, pid);
             try (ResultSet rs = ps.executeQuery()) {
@@ -29,7 +39,7 @@ public class BookingService {
         }
     }
 
-    private boolean cruiseExists(int cid) throws SQLException {
+    private boolean cruiseExists(Connection conn, int cid) throws SQLException {
         try (PreparedStatement ps = conn.prepareStatement("SELECT 1 FROM cruise WHERE cruise_id = ?")) {
             ps.setInt(1, cid);
             try (ResultSet rs = ps.executeQuery()) {
@@ -38,6 +48,419 @@ public class BookingService {
         }
     }
 
+    /**
+     * Booking row is only inserted if both the passenger and the cruise exist,
+     * so the existence checks cost no extra round trip. Payment status is final (PAID)
+     * because the payment row goes in with it in the same transaction.
+     */
+    private static final String INSERT_BOOKING = """
+            INSERT INTO booking (passenger_id, cruise_id, cabin_class, price, status, payment_status)
+            SELECT p.passenger_id, c.cruise_id, ?, ?, 'CONFIRMED', 'PAID'
+            FROM passenger p JOIN cruise c ON c.cruise_id = ?
+            WHERE p.passenger_id = ?
+            """;
+    static final String INSERT_PAYMENT = "INSERT INTO payment (booking_id, amount, mode, status) VALUES (?, ?, ?, 'PAID')";
+
+    private static final Metrics.Timer BOOK = Metrics.timer("booking.book");
+    private static final Metrics.Timer BOOK_BATCH = Metrics.timer("booking.bookAll");
+    private static final Metrics.Timer BOOK_GROUP = Metrics.timer("booking.bookGroup");
+    private static final Metrics.Timer BOOK_WRITE_BEHIND = Metrics.timer("booking.bookWriteBehind");
+    private static final Metrics.Timer SQL_INSERT_BOOKING = Metrics.timer("sql.booking.insert");
+    private static final Metrics.Timer SQL_INSERT_PAYMENT = Metrics.timer("sql.payment.insert");
+    private static final Metrics.Timer SQL_BATCH_BOOKING = Metrics.timer("sql.booking.insertBatch");
+    private static final Metrics.Timer SQL_BATCH_PAYMENT = Metrics.timer("sql.payment.insertBatch");
+    private static final Metrics.Timer SQL_COMMIT = Metrics.timer("sql.booking.commit");
+    private static final Metrics.Timer SQL_BY_PASSENGER = Metrics.timer("sql.booking.byPassenger");
+    private static final Metrics.Counter SOLD_OUT_COUNT = Metrics.counter("booking.soldOut");
+    private static final Metrics.Counter FAILED_COUNT = Metrics.counter("booking.failed");
+
+    /** Returned by {@link #book} when the cabin class is sold out on that cruise. */
+    public static final int SOLD_OUT = -2;
+
+    /** Payment modes the payment table accepts. */
+    public static final List<String> PAYMENT_MODES = List.of("UPI", "CARD", "NETBANKING", "CASH");
+
+    /** Most passengers in one {@link #bookGroup} call. */
+    public static final int MAX_GROUP_SIZE = Integer.getInteger("bookings.maxGroupSize", 50);
+
+    /**
+     * Book and pay atomically. Sets the booking and payment IDs on {@code booking} and
+     * returns the booking ID, -1 if the passenger or cruise does not exist, or
+     * {@link #SOLD_OUT} if no cabin of that class is left (nothing is written in either case).
+     */
+    public int book(Booking booking, String paymentMode) throws SQLException {
+        long start = System.nanoTime();
+        try (Connection conn = DBConnection.borrow()) {
+            if (!CabinInventory.tryReserve(conn, booking.getCruiseId(), booking.getCabinClass(), 1)) {
+                SOLD_OUT_COUNT.increment();
+                return SOLD_OUT;
+            }
+
+            boolean reserved = true;
+            conn.setAutoCommit(false);
+            try {
+                int bookingId = -1;
+                try (PreparedStatement ps = conn.prepareStatement(INSERT_BOOKING, Statement.RETURN_GENERATED_KEYS)) {
+                    bindBooking(ps, booking);
+                    long t0 = System.nanoTime();
+                    if (ps.executeUpdate() > 0) {
+                        try (ResultSet gk = ps.getGeneratedKeys()) {
+                            if (gk.next()) bookingId = gk.getInt(1);
+                        }
+                    }
+                    SQL_INSERT_BOOKING.record(t0);
+                }
+                if (bookingId == -1) {
+                    conn.rollback();
+                    return -1;
+                }
+
+                int paymentId = -1;
+                try (PreparedStatement ps = conn.prepareStatement(INSERT_PAYMENT, Statement.RETURN_GENERATED_KEYS)) {
+                    ps.setInt(1, bookingId);
+                    ps.setDouble(2, booking.getPrice());
+                    ps.setString(3, paymentMode);
+                    long t0 = System.nanoTime();
+                    ps.executeUpdate();
+                    try (ResultSet gk = ps.getGeneratedKeys()) {
+                        if (gk.next()) paymentId = gk.getInt(1);
+                    }
+                    SQL_INSERT_PAYMENT.record(t0);
+                }
+
+                // last statement before commit, so the inventory row lock is held as briefly as possible
+                if (!CabinInventory.commitReservation(conn, booking.getCruiseId(), booking.getCabinClass(), 1)) {
+                    reserved = false;
+                    conn.rollback();
+                    SOLD_OUT_COUNT.increment();
+                    return SOLD_OUT;
+                }
+
+                long t0 = System.nanoTime();
+                conn.commit();
+                SQL_COMMIT.record(t0);
+                reserved = false;
+                CabinInventory.confirmReservation(booking.getCruiseId(), booking.getCabinClass(), 1);
+                DBConnection.markWritten(DBConnection.passenger(booking.getPassengerId()), DBConnection.cruise(booking.getCruiseId()));
+                Startup.bookingDone();
+                booking.setBookingId(bookingId);
+                booking.setPaymentId(paymentId);
+                PricingEngine.occupancyChanged(conn, booking.getCruiseId());
+                return bookingId;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                if (reserved) CabinInventory.release(booking.getCruiseId(), booking.getCabinClass(), 1);
+            }
+        } catch (SQLException e) {
+            FAILED_COUNT.increment();
+            throw e;
+        } finally {
+            BOOK.record(start);
+        }
+    }
+
+    /**
+     * Book and pay for many bookings in one transaction using JDBC batches
+     * (one batch for bookings, one for payments). Bookings that are sold out or whose
+     * passenger or cruise does not exist are skipped and keep booking ID 0.
+     * Returns the number booked.
+     */
+    public int bookAll(List<Booking> bookings, String paymentMode) throws SQLException {
+        if (bookings.isEmpty()) return 0;
+
+        long start = System.nanoTime();
+        try (Connection conn = DBConnection.borrow()) {
+            List<Booking> admitted = new ArrayList<>(bookings.size());
+            for (Booking b : bookings) {
+                if (CabinInventory.tryReserve(conn, b.getCruiseId(), b.getCabinClass(), 1)) admitted.add(b);
+            }
+            if (admitted.isEmpty()) return 0;
+
+            Set<Booking> reserved = new HashSet<>(admitted);
+            conn.setAutoCommit(false);
+            try {
+                List<Booking> booked = new ArrayList<>(admitted.size());
+                try (PreparedStatement ps = conn.prepareStatement(INSERT_BOOKING, Statement.RETURN_GENERATED_KEYS)) {
+                    for (Booking b : admitted) {
+                        bindBooking(ps, b);
+                        ps.addBatch();
+                    }
+                    long t0 = System.nanoTime();
+                    int[] counts = ps.executeBatch();
+                    SQL_BATCH_BOOKING.record(t0);
+                    try (ResultSet gk = ps.getGeneratedKeys()) {
+                        for (int i = 0; i < counts.length; i++) {
+                            if (counts[i] == 0 || counts[i] == Statement.EXECUTE_FAILED) continue;
+                            if (!gk.next()) break;
+                            Booking b = admitted.get(i);
+                            b.setBookingId(gk.getInt(1));
+                            booked.add(b);
+                        }
+                    }
+                }
+
+                if (!booked.isEmpty()) {
+                    try (PreparedStatement ps = conn.prepareStatement(INSERT_PAYMENT)) {
+                        for (Booking b : booked) {
+                            ps.setInt(1, b.getBookingId());
+                            ps.setDouble(2, b.getPrice());
+                            ps.setString(3, paymentMode);
+                            ps.addBatch();
+                        }
+                        long t0 = System.nanoTime();
+                        ps.executeBatch();
+                        SQL_BATCH_PAYMENT.record(t0);
+                    }
+                }
+
+                // skipped bookings give their cabin back, booked ones are written per (cruise, class)
+                for (Booking b : admitted) {
+                    if (b.getBookingId() == 0) {
+                        CabinInventory.release(b.getCruiseId(), b.getCabinClass(), 1);
+                        reserved.remove(b);
+                    }
+                }
+                Map<String, List<Booking>> byClass = new LinkedHashMap<>();
+                for (Booking b : booked) {
+                    byClass.computeIfAbsent(b.getCruiseId() + "/" + b.getCabinClass(), k -> new ArrayList<>()).add(b);
+                }
+                for (List<Booking> group : byClass.values()) {
+                    Booking first = group.get(0);
+                    reserved.removeAll(group);
+                    if (!CabinInventory.commitReservation(conn, first.getCruiseId(), first.getCabinClass(), group.size())) {
+                        throw new SQLException("Not enough " + first.getCabinClass() + " cabins left on cruise " + first.getCruiseId());
+                    }
+                    reserved.addAll(group);
+                }
+
+                long t0 = System.nanoTime();
+                conn.commit();
+                SQL_COMMIT.record(t0);
+                reserved.clear();
+                for (List<Booking> group : byClass.values()) {
+                    CabinInventory.confirmReservation(group.get(0).getCruiseId(), group.get(0).getCabinClass(), group.size());
+                }
+                DBConnection.markWritten(writtenKeys(booked));
+                Startup.bookingDone();
+                Set<Integer> repriced = new HashSet<>();
+                for (Booking b : booked) {
+                    if (repriced.add(b.getCruiseId())) PricingEngine.occupancyChanged(conn, b.getCruiseId());
+                }
+                return booked.size();
+            } catch (SQLException e) {
+                conn.rollback();
+                for (Booking b : bookings) b.setBookingId(0);
+                throw e;
+            } finally {
+                for (Booking b : reserved) CabinInventory.release(b.getCruiseId(), b.getCabinClass(), 1);
+            }
+        } catch (SQLException e) {
+            FAILED_COUNT.increment();
+            throw e;
+        } finally {
+            BOOK_BATCH.record(start);
+        }
+    }
+
+    /**
+     * Book a group onto one cruise, all or nothing: either every booking is written with
+     * its payment in one transaction, or none is. Sets the booking IDs and returns the
+     * number booked, -1 if a passenger or the cruise does not exist, or {@link #SOLD_OUT}
+     * if there are not enough cabins for the whole group. A passenger may appear only once.
+     */
+    public int bookGroup(List<Booking> group, String paymentMode) throws SQLException {
+        if (group.isEmpty() || group.size() > MAX_GROUP_SIZE) {
+            throw new IllegalArgumentException("A group has 1 to " + MAX_GROUP_SIZE + " passengers");
+        }
+        int cruiseId = group.get(0).getCruiseId();
+        Map<String, Integer> perClass = new LinkedHashMap<>();
+        Set<Integer> passengers = new HashSet<>();
+        for (Booking b : group) {
+            if (b.getCruiseId() != cruiseId) throw new IllegalArgumentException("A group books a single cruise");
+            if (!passengers.add(b.getPassengerId())) throw new IllegalArgumentException("Passenger " + b.getPassengerId() + " is listed twice");
+            perClass.merge(b.getCabinClass(), 1, Integer::sum);
+        }
+
+        long start = System.nanoTime();
+        Map<String, Integer> reserved = new LinkedHashMap<>();
+        try (Connection conn = DBConnection.borrow()) {
+            for (Map.Entry<String, Integer> e : perClass.entrySet()) {
+                if (!CabinInventory.tryReserve(conn, cruiseId, e.getKey(), e.getValue())) {
+                    SOLD_OUT_COUNT.increment();
+                    return SOLD_OUT;
+                }
+                reserved.put(e.getKey(), e.getValue());
+            }
+
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement ps = conn.prepareStatement(INSERT_BOOKING, Statement.RETURN_GENERATED_KEYS)) {
+                    for (Booking b : group) {
+                        bindBooking(ps, b);
+                        ps.addBatch();
+                    }
+                    long t0 = System.nanoTime();
+                    int[] counts = ps.executeBatch();
+                    SQL_BATCH_BOOKING.record(t0);
+                    try (ResultSet gk = ps.getGeneratedKeys()) {
+                        for (int i = 0; i < counts.length; i++) {
+                            if (counts[i] == 0 || counts[i] == Statement.EXECUTE_FAILED || !gk.next()) {
+                                conn.rollback();
+                                for (Booking b : group) b.setBookingId(0);
+                                return -1;
+                            }
+                            group.get(i).setBookingId(gk.getInt(1));
+                        }
+                    }
+                }
+
+                try (PreparedStatement ps = conn.prepareStatement(INSERT_PAYMENT)) {
+                    for (Booking b : group) {
+                        ps.setInt(1, b.getBookingId());
+                        ps.setDouble(2, b.getPrice());
+                        ps.setString(3, paymentMode);
+                        ps.addBatch();
+                    }
+                    long t0 = System.nanoTime();
+                    ps.executeBatch();
+                    SQL_BATCH_PAYMENT.record(t0);
+                }
+
+                for (Map.Entry<String, Integer> e : perClass.entrySet()) {
+                    // a failed commitReservation has given its own reservation back
+                    reserved.remove(e.getKey());
+                    if (!CabinInventory.commitReservation(conn, cruiseId, e.getKey(), e.getValue())) {
+                        conn.rollback();
+                        for (Booking b : group) b.setBookingId(0);
+                        SOLD_OUT_COUNT.increment();
+                        return SOLD_OUT;
+                    }
+                    reserved.put(e.getKey(), e.getValue());
+                }
+
+                long t0 = System.nanoTime();
+                conn.commit();
+                SQL_COMMIT.record(t0);
+                reserved.clear();
+                perClass.forEach((cabinClass, n) -> CabinInventory.confirmReservation(cruiseId, cabinClass, n));
+                DBConnection.markWritten(writtenKeys(group));
+                Startup.bookingDone();
+                PricingEngine.occupancyChanged(conn, cruiseId);
+                return group.size();
+            } catch (SQLException e) {
+                conn.rollback();
+                for (Booking b : group) b.setBookingId(0);
+                throw e;
+            }
+        } catch (SQLException e) {
+            FAILED_COUNT.increment();
+            throw e;
+        } finally {
+            reserved.forEach((cabinClass, n) -> CabinInventory.release(cruiseId, cabinClass, n));
+            BOOK_GROUP.record(start);
+        }
+    }
+
+    /**
+     * Book and pay through the {@link BookingJournal}: returns as soon as the booking is
+     * durable in the local journal, before it reaches the database. The status is
+     * PENDING until the journal has written it ({@link BookingJournal.Pending#whenDone()}),
+     * or SOLD_OUT / NOT_FOUND straight away. A repeated {@code idempotencyKey} returns the
+     * booking made with it; null generates a new key.
+     */
+    public BookingJournal.Pending bookWriteBehind(Booking booking, String paymentMode, String idempotencyKey)
+            throws SQLException, IOException {
+        String key = idempotencyKey != null ? idempotencyKey : UUID.randomUUID().toString();
+        if (key.isBlank() || key.length() > BookingJournal.MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Idempotency key must be 1 to " + BookingJournal.MAX_KEY_LENGTH + " characters");
+        }
+        // checked before journaling: the database would refuse it only at drain time
+        if (!PAYMENT_MODES.contains(paymentMode)) throw new IllegalArgumentException("Unknown payment mode: " + paymentMode);
+        long start = System.nanoTime();
+        try {
+            BookingJournal journal = BookingJournal.shared();
+            BookingJournal.Pending known = journal.lookup(key);
+            if (known != null) return known;
+
+            // checked here because the journal acknowledges before the database sees the booking
+            if (!passengerKnown(booking.getPassengerId()) || !cruiseKnown(booking.getCruiseId())) {
+                return BookingJournal.rejected(key, booking, paymentMode, BookingJournal.Status.NOT_FOUND);
+            }
+            if (!reserve(booking)) {
+                SOLD_OUT_COUNT.increment();
+                return BookingJournal.rejected(key, booking, paymentMode, BookingJournal.Status.SOLD_OUT);
+            }
+            BookingJournal.Pending p;
+            try {
+                p = journal.append(booking, paymentMode, key);
+            } catch (IOException | RuntimeException e) {
+                CabinInventory.release(booking.getCruiseId(), booking.getCabinClass(), 1);
+                FAILED_COUNT.increment();
+                throw e;
+            }
+            // lost a race with a retry under the same key, which keeps its own cabin
+            if (p.getBooking() != booking) CabinInventory.release(booking.getCruiseId(), booking.getCabinClass(), 1);
+            // the drain usually lands well within the sticky window
+            DBConnection.markWritten(DBConnection.passenger(booking.getPassengerId()), DBConnection.cruise(booking.getCruiseId()));
+            Startup.bookingDone();
+            return p;
+        } finally {
+            BOOK_WRITE_BEHIND.record(start);
+        }
+    }
+
+    /** Booking ID of the booking written under an idempotency key, or -1 if there is none. */
+    public int findBookingIdByKey(String idempotencyKey) throws SQLException {
+        try (Connection conn = DBConnection.borrow();
+             PreparedStatement ps = conn.prepareStatement("SELECT booking_id FROM booking WHERE idempotency_key = ?")) {
+            ps.setString(1, idempotencyKey);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt("booking_id") : -1;
+            }
+        }
+    }
+
+    // in memory first; the database only for passengers and cruises this process has not seen yet
+    private boolean passengerKnown(int passengerId) throws SQLException {
+        if (PassengerIndex.contains(passengerId)) return true;
+        try (Connection conn = DBConnection.borrow()) {
+            return passengerExists(conn, passengerId);
+        }
+    }
+
+    private boolean cruiseKnown(int cruiseId) throws SQLException {
+        if (ScheduleService.get(cruiseId) != null) return true;
+        try (Connection conn = DBConnection.borrow()) {
+            return cruiseExists(conn, cruiseId);
+        }
+    }
+
+    private static boolean reserve(Booking b) throws SQLException {
+        if (CabinInventory.isLoaded(b.getCruiseId())) return CabinInventory.tryReserve(null, b.getCruiseId(), b.getCabinClass(), 1);
+        try (Connection conn = DBConnection.borrow()) {
+            return CabinInventory.tryReserve(conn, b.getCruiseId(), b.getCabinClass(), 1);
+        }
+    }
+
+    /** The passengers and cruises a batch of bookings wrote, for {@link DBConnection#markWritten}. */
+    private static String[] writtenKeys(List<Booking> bookings) {
+        Set<String> keys = new LinkedHashSet<>();
+        for (Booking b : bookings) {
+            keys.add(DBConnection.passenger(b.getPassengerId()));
+            keys.add(DBConnection.cruise(b.getCruiseId()));
+        }
+        return keys.toArray(new String[0]);
+    }
+
+    private void bindBooking(PreparedStatement ps, Booking b) throws SQLException {
+        ps.setString(1, b.getCabinClass());
+        ps.setDouble(2, b.getPrice());
+        ps.setInt(3, b.getCruiseId());
+        ps.setInt(4, b.getPassengerId());
+    }
+
     /**
      * Single-step: book, pay, generate ticket (auto)
      */
@@ -45,91 +468,160 @@ public class BookingService {
         try {
             System.out.print("Enter Passenger ID: ");
             int passengerId = Integer.parseInt(sc.nextLine().trim());
-            if (!passengerExists(passengerId)) {
-                System.out.println("Invalid Passenger ID. Please add passenger first or choose a valid ID.");
-                return;
-            }
 
             System.out.print("Enter Cruise ID: ");
             int cruiseId = Integer.parseInt(sc.nextLine().trim());
-            if (!cruiseExists(cruiseId)) {
-                System.out.println("Invalid Cruise ID. Choose a valid cruise from View All Cruises.");
-                return;
-            }
 
             System.out.print("Enter Cabin Class (ECONOMY/STANDARD/LUXURY): ");
             String cabinClass = sc.nextLine().trim().toUpperCase();
 
-            double price = calculatePrice(cabinClass);
+            double price = quotePrice(cruiseId, cabinClass);
             if (price <= 0) {
                 System.out.println("Invalid cabin class entered.");
                 return;
             }
+            System.out.printf("Price: ₹%.2f%n", price);
 
-            // insert booking
-            String insert = "INSERT INTO booking (passenger_id, cruise_id, cabin_class, price, status, payment_status) VALUES (?, ?, ?, ?, 'CONFIRMED', 'PENDING')";
-            int bookingId = -1;
-            try (PreparedStatement ps = conn.prepareStatement(insert, Statement.RETURN_GENERATED_KEYS)) {
-                ps.setInt(1, passengerId);
-                ps.setInt(2, cruiseId);
-                ps.setString(3, cabinClass);
-                ps.setDouble(4, price);
-                int rows = ps.executeUpdate();
-                if (rows > 0) {
-                    try (ResultSet gk = ps.getGeneratedKeys()) {
-                        if (gk.next()) bookingId = gk.getInt(1);
-                    }
-                }
-            }
+            // payment is taken together with the booking (simulate success)
+            String mode = readPaymentMode();
 
-            if (bookingId == -1) {
-                System.out.println("Booking failed.");
+            Booking booking = new Booking(passengerId, cruiseId, cabinClass, price);
+            if (BookingJournal.ENABLED) {
+                bookThroughJournal(booking, mode);
                 return;
             }
+            int bookingId = book(booking, mode);
 
-            System.out.printf("Booking confirmed. Booking ID: %d  Price: ₹%.2f%n", bookingId, price);
-            System.out.println("Proceeding to payment...");
-
-            // process payment immediately (simulate success)
-            String mode;
-            System.out.println("Choose payment mode: 1-UPI 2-CARD 3-NETBANKING 4-CASH");
-            int opt = Integer.parseInt(sc.nextLine().trim());
-            switch (opt) {
-                case 1 -> mode = "UPI";
-                case 2 -> mode = "CARD";
-                case 3 -> mode = "NETBANKING";
-                default -> mode = "CASH";
-            }
-
-            String ins = "INSERT INTO payment (booking_id, amount, mode, status) VALUES (?, ?, ?, 'PAID')";
-            int paymentId = -1;
-            try (PreparedStatement ps2 = conn.prepareStatement(ins, Statement.RETURN_GENERATED_KEYS)) {
-                ps2.setInt(1, bookingId);
-                ps2.setDouble(2, price);
-                ps2.setString(3, mode);
-                int r = ps2.executeUpdate();
-                if (r > 0) {
-                    try (ResultSet gk = ps2.getGeneratedKeys()) {
-                        if (gk.next()) paymentId = gk.getInt(1);
+            if (bookingId == SOLD_OUT) {
+                System.out.println("No " + cabinClass + " cabins left on this cruise.");
+                return;
+            }
+            if (bookingId == -1) {
+                try (Connection conn = DBConnection.borrow()) {
+                    if (!passengerExists(conn, passengerId)) {
+                        System.out.println("Invalid Passenger ID. Please add passenger first or choose a valid ID.");
+                    } else if (!cruiseExists(conn, cruiseId)) {
+                        System.out.println("Invalid Cruise ID. Choose a valid cruise from View All Cruises.");
+                    } else {
+                        System.out.println("Booking failed.");
                     }
                 }
+                return;
             }
 
-            // update booking payment_status
-            try (PreparedStatement up = conn.prepareStatement("UPDATE booking SET payment_status = 'PAID' WHERE booking_id = ?")) {
-                up.setInt(1, bookingId);
-                up.executeUpdate();
+            System.out.printf("Booking confirmed. Booking ID: %d  Price: ₹%.2f%n", bookingId, price);
+            System.out.println("Payment successful. Payment ID: " + (booking.getPaymentId() == -1 ? "N/A" : booking.getPaymentId()));
+
+            // ticket is rendered in the background, the booking is already done
+            offerTicket(TicketJobQueue.submit(bookingId));
+
+        } catch (Exception e) {
+            System.out.println("Error in booking/payment: " + e.getMessage());
+        }
+    }
+
+    private String readPaymentMode() {
+        System.out.println("Choose payment mode: 1-UPI 2-CARD 3-NETBANKING 4-CASH");
+        int opt = Integer.parseInt(sc.nextLine().trim());
+        return switch (opt) {
+            case 1 -> "UPI";
+            case 2 -> "CARD";
+            case 3 -> "NETBANKING";
+            default -> "CASH";
+        };
+    }
+
+    // 16) Group booking: several passengers, one cruise and cabin class, one ticket PDF
+    public void addGroupBooking() {
+        try {
+            System.out.print("Enter Cruise ID: ");
+            int cruiseId = Integer.parseInt(sc.nextLine().trim());
+
+            System.out.print("Enter Cabin Class (ECONOMY/STANDARD/LUXURY): ");
+            String cabinClass = sc.nextLine().trim().toUpperCase();
+
+            System.out.print("Enter Passenger IDs (comma separated): ");
+            List<Integer> passengerIds = new ArrayList<>();
+            for (String id : sc.nextLine().split(",")) {
+                if (!id.isBlank()) passengerIds.add(Integer.parseInt(id.trim()));
+            }
+            if (passengerIds.isEmpty()) {
+                System.out.println("No passengers entered.");
+                return;
             }
 
-            System.out.println("Payment successful. Payment ID: " + (paymentId == -1 ? "N/A" : paymentId));
-            System.out.println("Generating ticket PDF...");
+            double price = quotePrice(cruiseId, cabinClass);
+            if (price <= 0) {
+                System.out.println("Invalid cabin class entered.");
+                return;
+            }
+            System.out.printf("Price: ₹%.2f x %d = ₹%.2f%n", price, passengerIds.size(), price * passengerIds.size());
+            String mode = readPaymentMode();
 
-            // generate ticket
-            TicketGenerator.generateTicketPDF(bookingId, conn);
+            List<Booking> group = new ArrayList<>(passengerIds.size());
+            for (int pid : passengerIds) group.add(new Booking(pid, cruiseId, cabinClass, price));
+            int booked = bookGroup(group, mode);
+            if (booked == SOLD_OUT) {
+                System.out.println("Not enough " + cabinClass + " cabins left on this cruise for " + group.size() + " passengers.");
+                return;
+            }
+            if (booked == -1) {
+                System.out.println("Nothing was booked: a passenger ID or the cruise ID does not exist.");
+                return;
+            }
 
+            List<Integer> bookingIds = new ArrayList<>(group.size());
+            for (Booking b : group) bookingIds.add(b.getBookingId());
+            System.out.println("Group booking confirmed. Booking IDs: " + bookingIds);
+            TicketGenerator.openGroupTicket(bookingIds);
         } catch (Exception e) {
-            System.out.println("Error in booking/payment: " + e.getMessage());
-            e.printStackTrace();
+            System.out.println("Error in group booking: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Console side of {@link #bookWriteBehind}: waits a moment for the database so the
+     * usual confirmation can be shown, otherwise leaves the booking to the journal.
+     */
+    private void bookThroughJournal(Booking booking, String mode) throws Exception {
+        BookingJournal.Pending p = bookWriteBehind(booking, mode, null);
+        if (p.getStatus() == BookingJournal.Status.SOLD_OUT) {
+            System.out.println("No " + booking.getCabinClass() + " cabins left on this cruise.");
+            return;
+        }
+        if (p.getStatus() == BookingJournal.Status.NOT_FOUND) {
+            System.out.println("Invalid Passenger or Cruise ID. Check both and try again.");
+            return;
+        }
+        System.out.println("Booking and payment accepted. Reference: " + p.getKey());
+        try {
+            p.whenDone().get(2, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            System.out.println("The database is busy; the booking will be confirmed and its ticket generated as soon as it is written.");
+            return;
+        }
+        if (p.getStatus() != BookingJournal.Status.CONFIRMED) {
+            System.out.println("Booking could not be completed: " + switch (p.getStatus()) {
+                case SOLD_OUT -> "the last cabins were sold in the meantime.";
+                case NOT_FOUND -> "the passenger or cruise no longer exists.";
+                default -> "the database refused it.";
+            });
+            return;
+        }
+        System.out.printf("Booking confirmed. Booking ID: %d  Price: ₹%.2f%n", p.getBookingId(), booking.getPrice());
+        // the journal queues the ticket when it writes the booking
+        TicketJobQueue.Job job = TicketJobQueue.lookup(p.getBookingId());
+        offerTicket(job != null ? job : TicketJobQueue.submit(p.getBookingId()));
+    }
+
+    private void offerTicket(TicketJobQueue.Job job) {
+        if (job.getStatus() == TicketJobQueue.Status.REJECTED) {
+            System.out.println("Ticket queue is busy, reissue the ticket later from the menu.");
+            return;
+        }
+        System.out.print("Ticket is being generated. Open it when ready? (y/N): ");
+        if (sc.nextLine().trim().equalsIgnoreCase("y")) {
+            job.getResult().thenAccept(TicketGenerator::openTicket);
         }
     }
 
@@ -141,24 +633,83 @@ public class BookingService {
             System.out.print("Enter Passenger ID: ");
             int passengerId = Integer.parseInt(sc.nextLine().trim());
 
-            String sql = "SELECT b.booking_id, b.cruise_id, b.booking_date, b.cabin_class, b.price, b.payment_status FROM booking b WHERE b.passenger_id = ?";
-            try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setInt(1, passengerId);
-                try (ResultSet rs = ps.executeQuery()) {
-                    System.out.println("BookingID | CruiseID | BookingDate | Cabin | Price | PaymentStatus");
-                    while (rs.next()) {
-                        System.out.printf("%d | %d | %s | %s | ₹%.2f | %s%n",
-                                rs.getInt("booking_id"),
-                                rs.getInt("cruise_id"),
-                                rs.getTimestamp("booking_date"),
-                                rs.getString("cabin_class"),
-                                rs.getDouble("price"),
-                                rs.getString("payment_status")
-                        );
-                    }
+            System.out.println("BookingID | CruiseID | BookingDate | Cabin | Price | PaymentStatus");
+            for (Booking b : findBookingsByPassenger(passengerId)) {
+                System.out.printf("%d | %d | %s | %s | ₹%.2f | %s%n",
+                        b.getBookingId(),
+                        b.getCruiseId(),
+                        b.getBookingDate(),
+                        b.getCabinClass(),
+                        b.getPrice(),
+                        b.getPaymentStatus()
+                );
+            }
+
+        } catch (Exception e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+
+    public List<Booking> findBookingsByPassenger(int passengerId) throws SQLException {
+        String sql = "SELECT b.booking_id, b.cruise_id, b.booking_date, b.cabin_class, b.price, b.payment_status FROM booking b WHERE b.passenger_id = ?";
+        List<Booking> bookings = new ArrayList<>();
+        try (Connection conn = DBConnection.borrowRead(DBConnection.passenger(passengerId));
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, passengerId);
+            long t0 = System.nanoTime();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Booking b = new Booking(passengerId, rs.getInt("cruise_id"), rs.getString("cabin_class"), rs.getDouble("price"));
+                    b.setBookingId(rs.getInt("booking_id"));
+                    b.setBookingDate(rs.getTimestamp("booking_date"));
+                    b.setPaymentStatus(rs.getString("payment_status"));
+                    bookings.add(b);
                 }
+            } finally {
+                SQL_BY_PASSENGER.record(t0);
+            }
+        }
+        return bookings;
+    }
+
+    /**
+     * Reissue tickets for every booking on a cruise (batch, parallel rendering)
+     */
+    public void generateCruiseTickets() {
+        try {
+            System.out.print("Enter Cruise ID: ");
+            int cruiseId = Integer.parseInt(sc.nextLine().trim());
+
+            try (Connection conn = DBConnection.borrowRead(DBConnection.cruise(cruiseId))) {
+                TicketGenerator.generateTicketsForCruise(cruiseId, conn);
+            }
+        } catch (Exception e) {
+            System.out.println("Error while generating tickets: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Show the background ticket job for a booking, and open the ticket if it is ready
+     */
+    public void checkTicketStatus() {
+        try {
+            System.out.print("Enter Booking ID: ");
+            int bookingId = Integer.parseInt(sc.nextLine().trim());
+
+            TicketJobQueue.Job job = TicketJobQueue.lookup(bookingId);
+            if (job == null) {
+                System.out.println("No ticket job found for booking " + bookingId);
+                return;
             }
 
+            System.out.println("Ticket status: " + job.getStatus() + " (attempts: " + job.getAttempts() + ")"
+                    + (job.getError() != null ? "  Last error: " + job.getError() : ""));
+            if (job.getStatus() == TicketJobQueue.Status.DONE) {
+                System.out.print("Open ticket? (y/N): ");
+                if (sc.nextLine().trim().equalsIgnoreCase("y")) {
+                    TicketGenerator.openTicket(job.getResult().join());
+                }
+            }
         } catch (Exception e) {
             System.out.println("Error: " + e.getMessage());
         }
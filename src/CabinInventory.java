@@ -0,0 +1,257 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cabin capacity per (cruise, cabin class), see sql/cabin_inventory.sql.
+ *
+ * Each (cruise, class) has its own lock-free counter, so booking threads for different
+ * sailings or classes never contend, and a sold-out class is rejected without touching
+ * the database. The counters are only an admission filter: the conditional UPDATE on
+ * cabin_inventory inside the booking transaction is what guarantees no overbooking
+ * across application instances. The row version tells a reload whether anyone else
+ * changed the row since this process last saw it.
+ *
+ * A counter keeps the cabins committed in the database apart from reservations still in
+ * flight (reserved but not yet committed or released). A reload only replaces the
+ * committed part, so bookings in progress, including journaled ones waiting for the
+ * drain, keep their cabins. A reload that races a commit may count that booking twice
+ * until the next reload, never too few.
+ */
+public class CabinInventory {
+
+    static final String[] CABIN_CLASSES = {"ECONOMY", "STANDARD", "LUXURY"};
+    private static final int UNLIMITED = -1;
+
+    private static final Metrics.Timer SQL_COMMIT = Metrics.timer("sql.inventory.commit");
+    private static final Metrics.Timer SQL_LOAD = Metrics.timer("sql.inventory.load");
+
+    private static final ConcurrentHashMap<Integer, Slot[]> cruises = new ConcurrentHashMap<>();
+
+    private static final class Slot {
+        // committed cabins (cabin_inventory.booked) in the high half, reservations in flight in the low half
+        private final AtomicLong counts;
+        volatile int capacity;
+        final AtomicLong version;
+
+        Slot(int capacity, int booked, long version) {
+            this.capacity = capacity;
+            this.counts = new AtomicLong(pack(booked, 0));
+            this.version = new AtomicLong(version);
+        }
+
+        private static long pack(int committed, int inFlight) {
+            return ((long) committed << 32) | (inFlight & 0xffffffffL);
+        }
+
+        private static int committed(long c) {
+            return (int) (c >>> 32);
+        }
+
+        private static int inFlight(long c) {
+            return (int) c;
+        }
+
+        /** Committed plus in flight. */
+        int taken() {
+            long c = counts.get();
+            return committed(c) + inFlight(c);
+        }
+
+        boolean tryReserve(int n) {
+            while (true) {
+                long c = counts.get();
+                if (capacity != UNLIMITED && committed(c) + inFlight(c) + n > capacity) return false;
+                if (counts.compareAndSet(c, pack(committed(c), inFlight(c) + n))) return true;
+            }
+        }
+
+        void release(int n) {
+            counts.getAndUpdate(c -> pack(committed(c), inFlight(c) - n));
+        }
+
+        /** In flight to committed, after the transaction that wrote it committed. */
+        void confirm(int n) {
+            counts.getAndUpdate(c -> pack(committed(c) + n, inFlight(c) - n));
+            version.incrementAndGet(); // commitReservation bumped the row version once
+        }
+
+        /** Take the committed count from a fresher copy of the row, keeping reservations in flight. */
+        void refreshFrom(Slot loaded) {
+            if (capacity == loaded.capacity && version.get() == loaded.version.get()) return;
+            int committed = committed(loaded.counts.get());
+            counts.getAndUpdate(c -> pack(committed, inFlight(c)));
+            capacity = loaded.capacity;
+            version.set(loaded.version.get());
+        }
+    }
+
+    static int classIndex(String cabinClass) {
+        for (int i = 0; i < CABIN_CLASSES.length; i++) {
+            if (CABIN_CLASSES[i].equalsIgnoreCase(cabinClass)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Fast in-memory admission for {@code n} cabins. Must be followed by
+     * {@link #commitReservation} in the booking transaction and {@link #confirmReservation}
+     * once it committed, or {@link #release} if the booking does not go ahead. {@code conn}
+     * is only used to load the cruise's counters and may be null when {@link #isLoaded}
+     * says they are in memory.
+     */
+    public static boolean tryReserve(Connection conn, int cruiseId, String cabinClass, int n) throws SQLException {
+        int idx = classIndex(cabinClass);
+        if (idx < 0) return false;
+        return slots(conn, cruiseId)[idx].tryReserve(n);
+    }
+
+    /**
+     * Write the reservation to cabin_inventory in the caller's transaction. Returns false
+     * if the database has fewer cabins left than this process thought (another instance
+     * sold them); the in-memory reservation is then released and the counters reloaded.
+     * On true the reservation stays in flight until {@link #confirmReservation}, or
+     * {@link #release} if the transaction is rolled back after all.
+     */
+    public static boolean commitReservation(Connection conn, int cruiseId, String cabinClass, int n) throws SQLException {
+        int idx = classIndex(cabinClass);
+        Slot slot = slots(conn, cruiseId)[idx];
+        if (slot.capacity == UNLIMITED) return true;
+
+        String sql = "UPDATE cabin_inventory SET booked = booked + ?, version = version + 1 "
+                + "WHERE cruise_id = ? AND cabin_class = ? AND booked + ? <= capacity";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, n);
+            ps.setInt(2, cruiseId);
+            ps.setString(3, CABIN_CLASSES[idx]);
+            ps.setInt(4, n);
+            long t0 = System.nanoTime();
+            int updated = ps.executeUpdate();
+            SQL_COMMIT.record(t0);
+            if (updated > 0) return true;
+        }
+        slot.release(n);
+        reload(conn, cruiseId);
+        return false;
+    }
+
+    /**
+     * The transaction that ran {@link #commitReservation} has committed: count the cabins
+     * as booked. Only now does the in-memory row version move, so a reload while the
+     * transaction was open does not mistake it for another instance's change.
+     */
+    public static void confirmReservation(int cruiseId, String cabinClass, int n) {
+        int idx = classIndex(cabinClass);
+        Slot[] s = cruises.get(cruiseId);
+        if (idx >= 0 && s != null) s[idx].confirm(n);
+    }
+
+    /** Whether the cruise's counters are in memory. */
+    static boolean isLoaded(int cruiseId) {
+        return cruises.containsKey(cruiseId);
+    }
+
+    /** Give back an in-memory reservation whose booking was rolled back or skipped. */
+    public static void release(int cruiseId, String cabinClass, int n) {
+        int idx = classIndex(cabinClass);
+        Slot[] s = cruises.get(cruiseId);
+        if (idx >= 0 && s != null) s[idx].release(n);
+    }
+
+    /** Cabins left, or -1 if the class is not capacity-limited on this cruise. */
+    public static int remaining(Connection conn, int cruiseId, String cabinClass) throws SQLException {
+        int idx = classIndex(cabinClass);
+        if (idx < 0) return 0;
+        Slot slot = slots(conn, cruiseId)[idx];
+        return slot.capacity == UNLIMITED ? -1 : Math.max(0, slot.capacity - slot.taken());
+    }
+
+    /**
+     * Share of a class already booked (0..1) from the counters in memory, loading the
+     * cruise if needed. 0 if the class is not capacity-limited.
+     */
+    static double loadFactor(Connection conn, int cruiseId, int classIdx) throws SQLException {
+        Slot slot = slots(conn, cruiseId)[classIdx];
+        if (slot.capacity == UNLIMITED || slot.capacity == 0) return slot.capacity == 0 ? 1.0 : 0.0;
+        return Math.min(1.0, (double) slot.taken() / slot.capacity);
+    }
+
+    /**
+     * Re-read one cruise's rows. Classes whose version moved take the committed count
+     * from the database; reservations in flight are kept either way.
+     */
+    public static void reload(Connection conn, int cruiseId) throws SQLException {
+        merge(cruiseId, load(conn, cruiseId));
+    }
+
+    /**
+     * Cabins left per class (in CABIN_CLASSES order, -1 where not capacity-limited) for
+     * every cruise in cabin_inventory, in one query, as committed in the database. Read
+     * only: the counters in memory are left alone. A cruise missing from the map has no
+     * inventory rows and so no limit.
+     */
+    static Map<Integer, int[]> availability(Connection conn) throws SQLException {
+        Map<Integer, int[]> out = new HashMap<>();
+        String sql = "SELECT cruise_id, cabin_class, capacity, booked FROM cabin_inventory";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            long t0 = System.nanoTime();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    int idx = classIndex(rs.getString("cabin_class"));
+                    if (idx < 0) continue;
+                    int[] r = out.computeIfAbsent(rs.getInt("cruise_id"), k -> {
+                        int[] a = new int[CABIN_CLASSES.length];
+                        Arrays.fill(a, -1);
+                        return a;
+                    });
+                    r[idx] = Math.max(0, rs.getInt("capacity") - rs.getInt("booked"));
+                }
+            } finally {
+                SQL_LOAD.record(t0);
+            }
+        }
+        return out;
+    }
+
+    /** Slots are updated in place, never replaced, so no reservation is made on a slot that is about to go away. */
+    private static void merge(int cruiseId, Slot[] loaded) {
+        Slot[] current = cruises.putIfAbsent(cruiseId, loaded);
+        if (current == null) return;
+        for (int i = 0; i < current.length; i++) current[i].refreshFrom(loaded[i]);
+    }
+
+    private static Slot[] slots(Connection conn, int cruiseId) throws SQLException {
+        Slot[] s = cruises.get(cruiseId);
+        if (s != null) return s;
+        Slot[] loaded = load(conn, cruiseId);
+        Slot[] raced = cruises.putIfAbsent(cruiseId, loaded);
+        return raced != null ? raced : loaded;
+    }
+
+    private static Slot[] load(Connection conn, int cruiseId) throws SQLException {
+        Slot[] s = new Slot[CABIN_CLASSES.length];
+        String sql = "SELECT cabin_class, capacity, booked, version FROM cabin_inventory WHERE cruise_id = ?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, cruiseId);
+            long t0 = System.nanoTime();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    int idx = classIndex(rs.getString("cabin_class"));
+                    if (idx >= 0) s[idx] = new Slot(rs.getInt("capacity"), rs.getInt("booked"), rs.getLong("version"));
+                }
+            } finally {
+                SQL_LOAD.record(t0);
+            }
+        }
+        for (int i = 0; i < s.length; i++) {
+            if (s[i] == null) s[i] = new Slot(UNLIMITED, 0, 0);
+        }
+        return s;
+    }
+}
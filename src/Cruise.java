@@ -0,0 +1,40 @@
+import java.time.LocalDate;
+
+public class Cruise {
+    private int cruiseId;
+    private int shipId;
+    private String shipName;
+    private String startPort;
+    private String destPort;
+    private int stops;
+    private LocalDate startDate;
+    private LocalDate endDate;
+    private String status;
+
+    public Cruise(int cruiseId, int shipId, String shipName, String startPort, String destPort, int stops,
+                  LocalDate startDate, LocalDate endDate, String status) {
+        this.cruiseId = cruiseId;
+        this.shipId = shipId;
+        this.shipName = shipName;
+        this.startPort = startPort;
+        this.destPort = destPort;
+        this.stops = stops;
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.status = status;
+    }
+
+    public int getCruiseId() { return cruiseId; }
+    public int getShipId() { return shipId; }
+    public String getShipName() { return shipName; }
+    public String getStartPort() { return startPort; }
+    public String getDestPort() { return destPort; }
+    public int getStops() { return stops; }
+    public LocalDate getStartDate() { return startDate; }
+    public LocalDate getEndDate() { return endDate; }
+    public String getStatus() { return status; }
+
+    public String getRoute() {
+        return stops == 0 ? "TBD" : startPort + " -> " + destPort + " (" + stops + " stops)";
+    }
+}
@@ -1,41 +1,112 @@
 import java.sql.Connection;
+import java.sql.Date;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
 
 public class CruiseService {
-    private Connection conn;
-    private Scanner sc = new Scanner(System.in);
 
-    public CruiseService(Connection conn) {
-        this.conn = conn;
+    public static void viewAllCruises() {
+        try {
+            printSchedule(ScheduleService.query(null, ScheduleService.Sort.START_DATE, false));
+        } catch (Exception e) {
+            System.out.println("Error: " + e.getMessage());
+        }
     }
 
-    public static void viewAllCruises() {
-        String query = "SELECT c.cruise_id, s.name AS ship_name, c.start_date, c.end_date, c.status " +
-                "FROM cruise c JOIN ship s ON c.ship_id = s.ship_id";
+    /** Schedule with filters and sort order read from the console. Enter skips a filter. */
+    public static void searchSchedule(Scanner sc) {
+        try {
+            ScheduleService.Filter filter = new ScheduleService.Filter();
+            System.out.print("Sailing from date (yyyy-mm-dd): ");
+            String from = sc.nextLine().trim();
+            if (!from.isEmpty()) filter.from(LocalDate.parse(from));
+            System.out.print("Sailing until date (yyyy-mm-dd): ");
+            String to = sc.nextLine().trim();
+            if (!to.isEmpty()) filter.to(LocalDate.parse(to));
+            System.out.print("Departure port: ");
+            filter.departurePort(sc.nextLine());
+            System.out.print("Status: ");
+            filter.status(sc.nextLine());
+            System.out.print("Ship ID: ");
+            String ship = sc.nextLine().trim();
+            if (!ship.isEmpty()) filter.shipId(Integer.parseInt(ship));
+            System.out.print("Only with cabins left in class (" + String.join("/", CabinInventory.CABIN_CLASSES) + "): ");
+            filter.availableIn(sc.nextLine());
+            System.out.print("Sort by (" + Arrays.toString(ScheduleService.Sort.values()) + ", Enter for START_DATE): ");
+            String sort = sc.nextLine().trim();
 
-        try (Connection conn = DBConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
+            printSchedule(ScheduleService.query(filter,
+                    sort.isEmpty() ? ScheduleService.Sort.START_DATE : ScheduleService.Sort.valueOf(sort.toUpperCase()), false));
+        } catch (Exception e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
 
-            System.out.println("\n=== Cruise Schedule ===");
-            System.out.println("ID | Ship Name | Start Date | End Date | Status");
-            System.out.println("--------------------------------------------------");
+    private static void printSchedule(List<ScheduleService.Entry> entries) {
+        System.out.println("\n=== Cruise Schedule ===");
+        System.out.println("ID | Ship Name | Route | Start Date | End Date | Status | Cabins left (E/S/L)");
+        System.out.println("--------------------------------------------------");
 
-            while (rs.next()) {
-                System.out.println(
-                        rs.getInt("cruise_id") + " | " +
-                        rs.getString("ship_name") + " | " +
-                        rs.getString("start_date") + " | " +
-                        rs.getString("end_date") + " | " +
-                        rs.getString("status")
-                );
+        for (ScheduleService.Entry e : entries) {
+            Cruise c = e.getCruise();
+            StringBuilder left = new StringBuilder();
+            for (String cls : CabinInventory.CABIN_CLASSES) {
+                int n = e.getRemaining(cls);
+                if (left.length() > 0) left.append('/');
+                left.append(n < 0 ? "-" : String.valueOf(n));
             }
+            System.out.println(
+                    c.getCruiseId() + " | " +
+                    c.getShipName() + " | " +
+                    c.getRoute() + " | " +
+                    c.getStartDate() + " | " +
+                    c.getEndDate() + " | " +
+                    c.getStatus() + " | " +
+                    left
+            );
+        }
+        if (entries.isEmpty()) System.out.println("No cruises match.");
+    }
 
-        } catch (Exception e) {
-            System.out.println("Error: " + e.getMessage());
+    /** Every cruise straight from the database; callers that browse should use {@link ScheduleService}. */
+    public static List<Cruise> listCruises() throws SQLException {
+        try (Connection conn = DBConnection.borrowRead()) {
+            return listCruises(conn);
         }
     }
-}
 
+    static List<Cruise> listCruises(Connection conn) throws SQLException {
+        String query = "SELECT c.cruise_id, c.ship_id, c.start_date, c.end_date, c.status FROM cruise c ORDER BY c.cruise_id";
+        List<Cruise> cruises = new ArrayList<>();
+        ItineraryIndex.ensureLoaded(conn);
+
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(query)) {
+
+            while (rs.next()) {
+                int cruiseId = rs.getInt("cruise_id");
+                int shipId = rs.getInt("ship_id");
+                ItineraryIndex.Itinerary route = ItineraryIndex.get(conn, cruiseId);
+                Date start = rs.getDate("start_date");
+                Date end = rs.getDate("end_date");
+                cruises.add(new Cruise(
+                        cruiseId,
+                        shipId,
+                        ReferenceData.shipName(conn, shipId),
+                        ReferenceData.portName(conn, route.getStartPortId()),
+                        ReferenceData.portName(conn, route.getDestPortId()),
+                        route.getStopPortIds().size(),
+                        start != null ? start.toLocalDate() : null,
+                        end != null ? end.toLocalDate() : null,
+                        rs.getString("status")));
+            }
+        }
+        return cruises;
+    }
+}
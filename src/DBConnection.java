@@ -1,18 +1,512 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Hands out pooled MySQL connections. Callers borrow with {@link #borrow()} and give
+ * the connection back by closing it (try-with-resources); the physical connection stays
+ * open and goes back to the pool. {@link #getConnection()} is the older form that
+ * returns null instead of throwing.
+ *
+ * With {@code -Ddb.replica.url} set there is a second pool for a read replica, used by
+ * {@link #borrowRead()}. Reads go to the primary instead while the replica lags by more
+ * than {@code db.replica.maxLagSeconds} or cannot be reached. Reads about a passenger or
+ * cruise written in the last {@code db.replica.stickyMs} also go to the primary (see
+ * {@link #markWritten}), so a client reads its own writes on its next request, whichever
+ * thread serves it.
+ */
 public class DBConnection {
-    private static final String URL = "jdbc:mysql://localhost:3306/CruiseManagementDB?useSSL=false&allowPublicKeyRetrieval=true&serverTimezone=UTC";
-    private static final String USER = "root";
-    private static final String PASSWORD = "1538";
+    private static final String URL = System.getProperty("db.url",
+            "jdbc:mysql://localhost:3306/CruiseManagementDB?useSSL=false&allowPublicKeyRetrieval=true&serverTimezone=UTC"
+            + "&rewriteBatchedStatements=true&useLocalSessionState=true");
+    private static final String USER = System.getProperty("db.user", "root");
+    private static final String PASSWORD = System.getProperty("db.password", "1538");
 
-    public static Connection getConnection() {
+    private static final int MAX_POOL_SIZE = Integer.getInteger("db.pool.maxSize", 10);
+    private static final int MIN_IDLE = Integer.getInteger("db.pool.minIdle", 2);
+    private static final long BORROW_TIMEOUT_MS = Long.getLong("db.pool.borrowTimeoutMs", 5_000);
+    private static final long IDLE_TIMEOUT_MS = Long.getLong("db.pool.idleTimeoutMs", 300_000);
+    private static final long LEAK_THRESHOLD_MS = Long.getLong("db.pool.leakThresholdMs", 60_000);
+    private static final long VALIDATE_AFTER_IDLE_MS = 1_000;
+    private static final int VALIDATION_TIMEOUT_S = 2;
+
+    private static final String REPLICA_URL = System.getProperty("db.replica.url");
+    private static final String REPLICA_USER = System.getProperty("db.replica.user", USER);
+    private static final String REPLICA_PASSWORD = System.getProperty("db.replica.password", PASSWORD);
+    private static final int REPLICA_POOL_SIZE = Integer.getInteger("db.replica.pool.maxSize", MAX_POOL_SIZE);
+    // negative: never check, always trust the replica (e.g. a restored copy for testing)
+    private static final int MAX_LAG_SECONDS = Integer.getInteger("db.replica.maxLagSeconds", 2);
+    private static final long LAG_CHECK_MS = Long.getLong("db.replica.lagCheckMs", 1_000);
+    private static final long STICKY_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("db.replica.stickyMs", 5_000));
+
+    private static final Metrics.Timer ACQUIRE = Metrics.timer("db.acquire");
+    private static final Metrics.Counter ACQUIRE_TIMEOUTS = Metrics.counter("db.acquireTimeouts");
+    private static final Metrics.Counter READS_REPLICA = Metrics.counter("db.readsReplica");
+    private static final Metrics.Counter READS_PRIMARY = Metrics.counter("db.readsPrimary");
+    private static final Metrics.Counter REPLICA_ERRORS = Metrics.counter("db.replicaErrors");
+
+    private static final Pool POOL;
+    private static final Pool REPLICA;
+    // key (see passenger/cruise) -> System.nanoTime() of its last write, pruned once per sticky window
+    private static final ConcurrentHashMap<String, Long> lastWrites = new ConcurrentHashMap<>();
+    private static final AtomicLong lastPrune = new AtomicLong(System.nanoTime());
+    private static volatile boolean replicaUsable;
+    private static volatile String replicaState = "not checked yet";
+    private static volatile boolean lagChecked;
+    private static ScheduledExecutorService lagChecker;
+
+    static {
         try {
             Class.forName("com.mysql.cj.jdbc.Driver");
-            return DriverManager.getConnection(URL, USER, PASSWORD);
-        } catch (Exception e) {
+        } catch (ClassNotFoundException e) {
+            System.out.println("MySQL JDBC driver not found: " + e.getMessage());
+        }
+        POOL = new Pool(URL, USER, PASSWORD, MAX_POOL_SIZE, MIN_IDLE);
+        REPLICA = REPLICA_URL != null && !REPLICA_URL.isBlank()
+                ? new Pool(REPLICA_URL, REPLICA_USER, REPLICA_PASSWORD, REPLICA_POOL_SIZE, MIN_IDLE) : null;
+        if (REPLICA != null) startLagCheck();
+    }
+
+    /**
+     * Borrow a connection from the pool. Returns null (after printing the reason)
+     * when no connection could be obtained, same as before pooling.
+     */
+    public static Connection getConnection() {
+        try {
+            return POOL.borrow();
+        } catch (SQLException e) {
             System.out.println("Database Connection Failed: " + e.getMessage());
             return null;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Borrow a connection from the pool, throwing instead of returning null.
+     * Services use this inside try-with-resources so the connection always goes back.
+     */
+    public static Connection borrow() throws SQLException {
+        return POOL.borrow();
+    }
+
+    /**
+     * Borrow a connection for queries that may see data a few seconds old. It comes from
+     * the replica pool when one is configured and healthy and none of {@code keys} was
+     * written recently, otherwise from the primary.
+     */
+    public static Connection borrowRead(String... keys) throws SQLException {
+        if (REPLICA == null) return POOL.borrow();
+        if (replicaUsable && !writtenRecently(keys)) {
+            try {
+                Connection c = REPLICA.borrow();
+                READS_REPLICA.increment();
+                return c;
+            } catch (SQLException e) {
+                REPLICA_ERRORS.increment();
+                replicaDown("cannot borrow a connection: " + e.getMessage());
+            }
+        }
+        READS_PRIMARY.increment();
+        return POOL.borrow();
+    }
+
+    /**
+     * Route reads about {@code keys} to the primary for the next {@code db.replica.stickyMs},
+     * so a read right after a write sees it. Call after committing a write.
+     */
+    public static void markWritten(String... keys) {
+        if (REPLICA == null) return;
+        long now = System.nanoTime();
+        for (String k : keys) lastWrites.put(k, now);
+        long pruned = lastPrune.get();
+        if (now - pruned > STICKY_NANOS && lastPrune.compareAndSet(pruned, now)) {
+            lastWrites.values().removeIf(t -> now - t > STICKY_NANOS);
+        }
+    }
+
+    /** Key for {@link #markWritten} and {@link #borrowRead}: a passenger and their bookings. */
+    public static String passenger(int passengerId) {
+        return "passenger:" + passengerId;
+    }
+
+    /** Key for {@link #markWritten} and {@link #borrowRead}: a cruise and its bookings. */
+    public static String cruise(int cruiseId) {
+        return "cruise:" + cruiseId;
+    }
+
+    private static boolean writtenRecently(String[] keys) {
+        long now = System.nanoTime();
+        for (String k : keys) {
+            Long t = lastWrites.get(k);
+            if (t != null && now - t <= STICKY_NANOS) return true;
+        }
+        return false;
+    }
+
+    /** True when a replica is configured, so a read that found nothing may be worth repeating on the primary. */
+    public static boolean hasReplica() {
+        return REPLICA != null;
+    }
+
+    /**
+     * Open the minimum number of idle connections up front so the first
+     * requests don't pay the MySQL handshake. Returns false if the database is unreachable.
+     */
+    public static boolean warmUp() {
+        try {
+            POOL.warmUp();
+            return true;
+        } catch (SQLException e) {
+            System.out.println("Database Connection Failed: " + e.getMessage());
+            return false;
+        }
+    }
+
+    public static String getPoolStats() {
+        if (REPLICA == null) return POOL.stats();
+        return "primary " + POOL.stats() + "\nreplica " + REPLICA.stats() + " (" + replicaState + ")";
+    }
+
+    public static void shutdown() {
+        if (lagChecker != null) lagChecker.shutdownNow();
+        POOL.close();
+        if (REPLICA != null) REPLICA.close();
+    }
+
+    // ---- replica health ----
+
+    private static void startLagCheck() {
+        if (MAX_LAG_SECONDS < 0) {
+            replicaUsable = true;
+            replicaState = "lag not checked";
+            return;
+        }
+        lagChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-replica-lag");
+            t.setDaemon(true);
+            return t;
+        });
+        lagChecker.scheduleWithFixedDelay(DBConnection::checkLag, 0, LAG_CHECK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /** Read the replica's own view of its delay; anything but a small number sends reads to the primary. */
+    private static void checkLag() {
+        try (Connection c = REPLICA.borrow()) {
+            Long lag = replicationLagSeconds(c);
+            if (lag == null) {
+                replicaDown("replication is not running");
+            } else if (lag > MAX_LAG_SECONDS) {
+                replicaDown(lag + " s behind");
+            } else {
+                if (!replicaUsable && lagChecked) System.out.println("Read replica is back (" + lag + " s behind), reading from it again");
+                replicaState = lag + " s behind";
+                replicaUsable = true;
+            }
+        } catch (SQLException e) {
+            REPLICA_ERRORS.increment();
+            replicaDown("unreachable: " + e.getMessage());
+        }
+        lagChecked = true;
+    }
+
+    /** Seconds_Behind_Source (MySQL 8.0.22+) or Seconds_Behind_Master; null if not replicating. */
+    private static Long replicationLagSeconds(Connection c) throws SQLException {
+        try (Statement st = c.createStatement()) {
+            ResultSet status;
+            String column = "Seconds_Behind_Source";
+            try {
+                status = st.executeQuery("SHOW REPLICA STATUS");
+            } catch (SQLException e) {
+                status = st.executeQuery("SHOW SLAVE STATUS");
+                column = "Seconds_Behind_Master";
+            }
+            try (ResultSet rs = status) {
+                if (!rs.next()) return null;
+                long lag = rs.getLong(column);
+                return rs.wasNull() ? null : lag;
+            }
+        }
+    }
+
+    private static void replicaDown(String why) {
+        if (replicaUsable || !lagChecked) System.out.println("Read replica " + why + ", reading from the primary");
+        replicaUsable = false;
+        replicaState = why;
+    }
+
+    /**
+     * Bounded pool: a semaphore caps the number of live connections, idle ones sit in a
+     * LIFO deque so the most recently used (warmest) connection is handed out first.
+     */
+    static final class Pool {
+        private final String url;
+        private final String user;
+        private final String password;
+        private final int maxSize;
+        private final int minIdle;
+
+        private final Semaphore permits;
+        private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+        private final Map<PooledConnection, Boolean> inUse = new ConcurrentHashMap<>();
+        private final AtomicInteger total = new AtomicInteger();
+        private final ScheduledExecutorService housekeeper;
+        private volatile boolean closed;
+
+        private final LongAdder borrows = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+        private final LongAdder timeouts = new LongAdder();
+        private final LongAdder created = new LongAdder();
+        private final LongAdder evicted = new LongAdder();
+        private final LongAdder invalid = new LongAdder();
+        private final LongAdder leaks = new LongAdder();
+
+        Pool(String url, String user, String password, int maxSize, int minIdle) {
+            this.url = url;
+            this.user = user;
+            this.password = password;
+            this.maxSize = maxSize;
+            this.minIdle = Math.min(minIdle, maxSize);
+            this.permits = new Semaphore(maxSize, true);
+            this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "db-pool-housekeeper");
+                t.setDaemon(true);
+                return t;
+            });
+            housekeeper.scheduleWithFixedDelay(this::housekeep, 30, 30, TimeUnit.SECONDS);
+        }
+
+        Connection borrow() throws SQLException {
+            if (closed) throw new SQLException("Connection pool is shut down", "08003");
+            long start = System.nanoTime();
+            try {
+                if (!permits.tryAcquire(BORROW_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    timeouts.increment();
+                    ACQUIRE_TIMEOUTS.increment();
+                    throw new SQLTransientConnectionException("Timed out after " + BORROW_TIMEOUT_MS + " ms waiting for a connection (" + stats() + ")");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLTransientConnectionException("Interrupted while waiting for a connection", e);
+            }
+
+            try {
+                PooledConnection pc = takeValidIdle();
+                if (pc == null) pc = open();
+                pc.borrowedAt = System.currentTimeMillis();
+                pc.borrowSite = LEAK_THRESHOLD_MS > 0 ? new Throwable("Connection borrowed here") : null;
+                inUse.put(pc, Boolean.TRUE);
+
+                long waited = System.nanoTime() - start;
+                borrows.increment();
+                waitNanos.add(waited);
+                maxWaitNanos.accumulateAndGet(waited, Math::max);
+                ACQUIRE.recordNanos(waited);
+                return pc.newHandle();
+            } catch (SQLException | RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+        }
+
+        private PooledConnection takeValidIdle() {
+            PooledConnection pc;
+            while ((pc = idle.pollFirst()) != null) {
+                long idleFor = System.currentTimeMillis() - pc.returnedAt;
+                if (idleFor < VALIDATE_AFTER_IDLE_MS || isValid(pc.physical)) return pc;
+                invalid.increment();
+                destroy(pc);
+            }
+            return null;
+        }
+
+        private PooledConnection open() throws SQLException {
+            Connection physical = DriverManager.getConnection(url, user, password);
+            created.increment();
+            total.incrementAndGet();
+            return new PooledConnection(this, physical);
+        }
+
+        void release(PooledConnection pc) {
+            inUse.remove(pc);
+            pc.borrowSite = null;
+            boolean healthy = resetState(pc.physical);
+            if (closed || !healthy) {
+                destroy(pc);
+            } else {
+                pc.returnedAt = System.currentTimeMillis();
+                idle.offerFirst(pc);
+            }
+            permits.release();
+        }
+
+        /** Undo anything a borrower may have left behind, so the next borrower gets a clean connection. */
+        private boolean resetState(Connection c) {
+            try {
+                if (c.isClosed()) return false;
+                if (!c.getAutoCommit()) {
+                    c.rollback();
+                    c.setAutoCommit(true);
+                }
+                if (c.isReadOnly()) c.setReadOnly(false);
+                c.clearWarnings();
+                return true;
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        private boolean isValid(Connection c) {
+            try {
+                return c.isValid(VALIDATION_TIMEOUT_S);
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        private void destroy(PooledConnection pc) {
+            total.decrementAndGet();
+            try {
+                pc.physical.close();
+            } catch (SQLException ignored) {}
+        }
+
+        void warmUp() throws SQLException {
+            while (total.get() < minIdle && permits.tryAcquire()) {
+                try {
+                    PooledConnection pc = open();
+                    pc.returnedAt = System.currentTimeMillis();
+                    idle.offerLast(pc);
+                } finally {
+                    permits.release();
+                }
+            }
+        }
+
+        /** Evict connections idle for too long (keeping minIdle) and report suspected leaks. */
+        private void housekeep() {
+            long now = System.currentTimeMillis();
+            for (PooledConnection pc : idle) {
+                if (total.get() <= minIdle) break;
+                if (now - pc.returnedAt > IDLE_TIMEOUT_MS && idle.removeFirstOccurrence(pc)) {
+                    evicted.increment();
+                    destroy(pc);
+                }
+            }
+
+            if (LEAK_THRESHOLD_MS > 0) {
+                for (PooledConnection pc : inUse.keySet()) {
+                    Throwable site = pc.borrowSite;
+                    if (site != null && now - pc.borrowedAt > LEAK_THRESHOLD_MS) {
+                        leaks.increment();
+                        pc.borrowSite = null; // report each leak once
+                        System.out.println("Possible connection leak: held for " + (now - pc.borrowedAt) + " ms");
+                        site.printStackTrace(System.out);
+                    }
+                }
+            }
+
+            try {
+                warmUp();
+            } catch (SQLException ignored) {}
+        }
+
+        String stats() {
+            long n = borrows.sum();
+            double avgWaitMs = n == 0 ? 0 : waitNanos.sum() / 1e6 / n;
+            return String.format("pool[total=%d, idle=%d, inUse=%d, max=%d] borrows=%d avgWait=%.3fms maxWait=%.3fms "
+                            + "timeouts=%d created=%d evicted=%d invalid=%d leaks=%d",
+                    total.get(), idle.size(), inUse.size(), maxSize, n, avgWaitMs, maxWaitNanos.get() / 1e6,
+                    timeouts.sum(), created.sum(), evicted.sum(), invalid.sum(), leaks.sum());
+        }
+
+        void close() {
+            closed = true;
+            housekeeper.shutdownNow();
+            PooledConnection pc;
+            while ((pc = idle.pollFirst()) != null) destroy(pc);
+        }
+    }
+
+    /**
+     * One physical connection. Each borrow gets a fresh proxy handle whose close()
+     * returns the connection to the pool; using a handle after close() fails.
+     */
+    static final class PooledConnection {
+        final Pool pool;
+        final Connection physical;
+        volatile long borrowedAt;
+        volatile long returnedAt;
+        volatile Throwable borrowSite;
+
+        PooledConnection(Pool pool, Connection physical) {
+            this.pool = pool;
+            this.physical = physical;
+        }
+
+        Connection newHandle() {
+            return (Connection) Proxy.newProxyInstance(
+                    DBConnection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    new Handle(this));
+        }
+    }
+
+    private static final class Handle implements InvocationHandler {
+        private final PooledConnection pc;
+        private boolean closed;
+
+        Handle(PooledConnection pc) {
+            this.pc = pc;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close" -> {
+                    if (!closed) {
+                        closed = true;
+                        pc.pool.release(pc);
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    return closed || pc.physical.isClosed();
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+                    return "Pooled" + pc.physical;
+                }
+                default -> {
+                    if (closed) throw new SQLException("Connection has already been returned to the pool");
+                }
+            }
+            try {
+                return method.invoke(pc.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-cruise summary of cruise_route: ordered stops, first departure, final arrival and
+ * total sailing time. Tickets and the schedule read it instead of joining cruise_route,
+ * so a lookup is one map read however many stops a cruise has.
+ *
+ * Loaded in one pass at startup or by the first caller that needs every cruise
+ * ({@link #ensureLoaded}); when a cruise's route changes call {@link #refresh} for that
+ * cruise only. Cruises missing from the index are loaded on first use.
+ */
+public class ItineraryIndex {
+
+    private static final String ROUTE_COLUMNS = "SELECT cruise_id, port_id, departure, estimated_arrival, duration_hours FROM cruise_route ";
+
+    private static final ConcurrentHashMap<Integer, Itinerary> index = new ConcurrentHashMap<>();
+    private static volatile boolean loaded;
+
+    public static final class Itinerary {
+        private final int cruiseId;
+        private final List<Integer> stopPortIds;
+        private final LocalDateTime firstDeparture;
+        private final LocalDateTime finalArrival;
+        private final int totalDurationHours;
+
+        Itinerary(int cruiseId, List<Integer> stopPortIds, LocalDateTime firstDeparture, LocalDateTime finalArrival, int totalDurationHours) {
+            this.cruiseId = cruiseId;
+            this.stopPortIds = Collections.unmodifiableList(stopPortIds);
+            this.firstDeparture = firstDeparture;
+            this.finalArrival = finalArrival;
+            this.totalDurationHours = totalDurationHours;
+        }
+
+        public int getCruiseId() { return cruiseId; }
+        /** Port IDs in stop_order. Empty if the cruise has no route yet. */
+        public List<Integer> getStopPortIds() { return stopPortIds; }
+        public LocalDateTime getFirstDeparture() { return firstDeparture; }
+        public LocalDateTime getFinalArrival() { return finalArrival; }
+        public int getTotalDurationHours() { return totalDurationHours; }
+        public int getStartPortId() { return stopPortIds.isEmpty() ? 0 : stopPortIds.get(0); }
+        public int getDestPortId() { return stopPortIds.isEmpty() ? 0 : stopPortIds.get(stopPortIds.size() - 1); }
+    }
+
+    /** Mutable accumulator for one cruise while rows are read in stop order. */
+    private static final class Builder {
+        final int cruiseId;
+        final List<Integer> stops = new ArrayList<>();
+        LocalDateTime firstDeparture;
+        LocalDateTime lastArrival;
+        int totalHours;
+
+        Builder(int cruiseId) {
+            this.cruiseId = cruiseId;
+        }
+
+        void add(ResultSet rs) throws SQLException {
+            stops.add(rs.getInt("port_id"));
+            Timestamp dep = rs.getTimestamp("departure");
+            if (firstDeparture == null && dep != null) firstDeparture = dep.toLocalDateTime();
+            Timestamp arr = rs.getTimestamp("estimated_arrival");
+            lastArrival = arr != null ? arr.toLocalDateTime() : null;
+            totalHours += Math.max(0, rs.getInt("duration_hours"));
+        }
+
+        Itinerary build() {
+            LocalDateTime arrival = lastArrival != null ? lastArrival
+                    : (firstDeparture != null && totalHours > 0 ? firstDeparture.plusHours(totalHours) : null);
+            return new Itinerary(cruiseId, stops, firstDeparture, arrival, totalHours);
+        }
+    }
+
+    /** Build the whole index in one scan of cruise_route. */
+    public static void load(Connection conn) throws SQLException {
+        Map<Integer, Builder> builders = new HashMap<>();
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery(ROUTE_COLUMNS + "ORDER BY cruise_id, stop_order")) {
+            while (rs.next()) {
+                builders.computeIfAbsent(rs.getInt("cruise_id"), Builder::new).add(rs);
+            }
+        }
+        Map<Integer, Itinerary> fresh = new HashMap<>(builders.size() * 2);
+        for (Builder b : builders.values()) fresh.put(b.cruiseId, b.build());
+
+        index.putAll(fresh);
+        index.keySet().retainAll(fresh.keySet());
+        loaded = true;
+    }
+
+    /** {@link #load} unless it already ran, so a walk over every cruise costs one query, not one per cruise. */
+    public static void ensureLoaded(Connection conn) throws SQLException {
+        if (!loaded) load(conn);
+    }
+
+    /** Itinerary for a cruise, loading just that cruise if it is not indexed yet. */
+    public static Itinerary get(Connection conn, int cruiseId) throws SQLException {
+        Itinerary it = index.get(cruiseId);
+        return it != null ? it : refresh(conn, cruiseId);
+    }
+
+    /** Re-read one cruise's stops, e.g. after its route was edited. */
+    public static Itinerary refresh(Connection conn, int cruiseId) throws SQLException {
+        Builder b = new Builder(cruiseId);
+        try (PreparedStatement ps = conn.prepareStatement(ROUTE_COLUMNS + "WHERE cruise_id = ? ORDER BY stop_order")) {
+            ps.setInt(1, cruiseId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) b.add(rs);
+            }
+        }
+        Itinerary it = b.build();
+        index.put(cruiseId, it);
+        return it;
+    }
+
+    /** Drop a cruise, e.g. after it was deleted. */
+    public static void remove(int cruiseId) {
+        index.remove(cruiseId);
+    }
+
+    public static int size() {
+        return index.size();
+    }
+}
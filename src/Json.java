@@ -0,0 +1,183 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON support for the API: writes maps/lists/strings/numbers/booleans, and
+ * parses a flat request object whose values may be arrays of scalars (no nested objects,
+ * which no endpoint needs).
+ */
+public class Json {
+
+    public static String write(Object value) {
+        StringBuilder sb = new StringBuilder();
+        write(sb, value);
+        return sb.toString();
+    }
+
+    private static void write(StringBuilder sb, Object v) {
+        if (v == null) {
+            sb.append("null");
+        } else if (v instanceof String s) {
+            writeString(sb, s);
+        } else if (v instanceof Number || v instanceof Boolean) {
+            sb.append(v);
+        } else if (v instanceof Map<?, ?> m) {
+            sb.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> e : m.entrySet()) {
+                if (!first) sb.append(',');
+                first = false;
+                writeString(sb, String.valueOf(e.getKey()));
+                sb.append(':');
+                write(sb, e.getValue());
+            }
+            sb.append('}');
+        } else if (v instanceof List<?> l) {
+            sb.append('[');
+            for (int i = 0; i < l.size(); i++) {
+                if (i > 0) sb.append(',');
+                write(sb, l.get(i));
+            }
+            sb.append(']');
+        } else {
+            writeString(sb, v.toString());
+        }
+    }
+
+    private static void writeString(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+                }
+            }
+        }
+        sb.append('"');
+    }
+
+    /**
+     * Parse a flat JSON object. Values come back as String, Double, Boolean or null, or
+     * a List of those for an array.
+     * Throws IllegalArgumentException on malformed input.
+     */
+    public static Map<String, Object> parseObject(String text) {
+        Parser p = new Parser(text);
+        Map<String, Object> out = new LinkedHashMap<>();
+        p.skipWs();
+        p.expect('{');
+        p.skipWs();
+        if (p.peek() == '}') {
+            p.pos++;
+            return out;
+        }
+        while (true) {
+            p.skipWs();
+            String key = p.string();
+            p.skipWs();
+            p.expect(':');
+            p.skipWs();
+            out.put(key, p.value());
+            p.skipWs();
+            char c = p.next();
+            if (c == '}') return out;
+            if (c != ',') throw new IllegalArgumentException("Expected ',' or '}' at " + (p.pos - 1));
+        }
+    }
+
+    private static final class Parser {
+        final String s;
+        int pos;
+
+        Parser(String s) {
+            this.s = s == null ? "" : s;
+        }
+
+        char peek() {
+            if (pos >= s.length()) throw new IllegalArgumentException("Unexpected end of JSON");
+            return s.charAt(pos);
+        }
+
+        char next() {
+            char c = peek();
+            pos++;
+            return c;
+        }
+
+        void expect(char c) {
+            if (next() != c) throw new IllegalArgumentException("Expected '" + c + "' at " + (pos - 1));
+        }
+
+        void skipWs() {
+            while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) pos++;
+        }
+
+        Object value() {
+            char c = peek();
+            if (c == '"') return string();
+            if (c == '[') return array();
+            if (s.startsWith("true", pos)) { pos += 4; return Boolean.TRUE; }
+            if (s.startsWith("false", pos)) { pos += 5; return Boolean.FALSE; }
+            if (s.startsWith("null", pos)) { pos += 4; return null; }
+            int start = pos;
+            while (pos < s.length() && "+-0123456789.eE".indexOf(s.charAt(pos)) >= 0) pos++;
+            if (start == pos) throw new IllegalArgumentException("Unsupported JSON value at " + start);
+            return Double.parseDouble(s.substring(start, pos));
+        }
+
+        List<Object> array() {
+            expect('[');
+            List<Object> out = new ArrayList<>();
+            skipWs();
+            if (peek() == ']') {
+                pos++;
+                return out;
+            }
+            while (true) {
+                skipWs();
+                if (peek() == '[' || peek() == '{') throw new IllegalArgumentException("Nested JSON value at " + pos);
+                out.add(value());
+                skipWs();
+                char c = next();
+                if (c == ']') return out;
+                if (c != ',') throw new IllegalArgumentException("Expected ',' or ']' at " + (pos - 1));
+            }
+        }
+
+        String string() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (true) {
+                char c = next();
+                if (c == '"') return sb.toString();
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                char e = next();
+                switch (e) {
+                    case 'n' -> sb.append('\n');
+                    case 'r' -> sb.append('\r');
+                    case 't' -> sb.append('\t');
+                    case 'b' -> sb.append('\b');
+                    case 'f' -> sb.append('\f');
+                    case 'u' -> {
+                        if (pos + 4 > s.length()) throw new IllegalArgumentException("Bad \\u escape");
+                        sb.append((char) Integer.parseInt(s.substring(pos, pos + 4), 16));
+                        pos += 4;
+                    }
+                    default -> sb.append(e);
+                }
+            }
+        }
+    }
+}
@@ -1,21 +1,37 @@
+import java.io.IOException;
 import java.util.Scanner;
-import java.sql.Connection;
 
 public class Main {
     public static void main(String[] args) {
+        boolean server = args.length > 0 && args[0].equals("--server");
+        Startup.configure(server);
         Scanner sc = new Scanner(System.in);
 
-        DBConnection db = new DBConnection();
-        Connection conn = db.getConnection();
-
-        if (conn == null) {
+        if (!DBConnection.warmUp()) {
             System.out.println("Database Connection Failed! Exiting...");
             return;
         }
 
-        PassengerService passengerService = new PassengerService(conn, sc);
-        BookingService bookingService = new BookingService(conn, sc);
-        //CruiseService cruiseService = new CruiseService(conn);
+        // the console menu would be interrupted by the dump, so it is off there unless asked for
+        Metrics.startReporter(Long.getLong("metrics.dumpIntervalMs", server ? 60_000 : 0));
+
+        Startup.initCaches();
+        // replays bookings journaled before a crash or restart
+        if (BookingJournal.ENABLED) BookingJournal.shared();
+        Startup.initTickets();
+
+        if (server) {
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : Integer.getInteger("api.port", 8080);
+            TicketVerifier.startRevocationRefresh(Long.getLong("tickets.revocationRefreshMs", 30_000));
+            ScheduleService.startRefresh(ScheduleService.REFRESH_MS);
+            PricingEngine.startRecompute(Long.getLong("pricing.recomputeMs", 3_600_000));
+            startServer(port);
+            return;
+        }
+
+        PassengerService passengerService = new PassengerService(sc);
+        BookingService bookingService = new BookingService(sc);
+        Startup.ready();
 
         while (true) {
             System.out.println("\n========== Cruise Management System ==========");
@@ -27,6 +43,14 @@ public class Main {
             System.out.println("6. View All Cruises");
             System.out.println("7. Book Ticket (book + pay + generate ticket)");
             System.out.println("8. View Bookings by Passenger");
+            System.out.println("9. Reissue All Tickets for a Cruise");
+            System.out.println("10. Check Ticket Status");
+            System.out.println("11. Import Passengers from CSV");
+            System.out.println("12. Export Passengers to CSV");
+            System.out.println("13. Search Passengers by Name/Nationality");
+            System.out.println("14. Search Cruise Schedule");
+            System.out.println("15. Export Cruise Manifest (CSV + PDF)");
+            System.out.println("16. Group Booking (one ticket PDF for all)");
             System.out.println("0. Exit");
             System.out.print("Enter Your Choice: ");
 
@@ -41,12 +65,57 @@ public class Main {
                 case 6 -> CruiseService.viewAllCruises();
                 case 7 -> bookingService.addBookingSingleFlow();
                 case 8 -> bookingService.viewBookingsByPassenger();
+                case 9 -> bookingService.generateCruiseTickets();
+                case 10 -> bookingService.checkTicketStatus();
+                case 11 -> passengerService.importPassengers();
+                case 12 -> passengerService.exportPassengers();
+                case 13 -> passengerService.searchPassengersByName();
+                case 14 -> CruiseService.searchSchedule(sc);
+                case 15 -> ManifestExporter.exportManifest(sc);
+                case 16 -> bookingService.addGroupBooking();
                 case 0 -> {
                     System.out.println("Exiting... Thank you!");
+                    System.out.println(BookingJournal.stats());
+                    BookingJournal.closeShared();
+                    TicketJobQueue.shutdown(30_000);
+                    System.out.println(DBConnection.getPoolStats());
+                    System.out.println(ReferenceData.stats());
+                    System.out.println(TicketCache.stats());
+                    System.out.println(PassengerIndex.stats());
+                    System.out.println(ScheduleService.stats());
+                    System.out.println(PricingEngine.stats());
+                    System.out.println(Startup.stats());
+                    System.out.print(Metrics.report());
+                    TicketStore.closeShared();
+                    DBConnection.shutdown();
                     System.exit(0);
                 }
                 default -> System.out.println("Invalid Choice! Try again.");
             }
         }
     }
+
+    /** Headless mode: serve the API until the process is stopped. */
+    private static void startServer(int port) {
+        try {
+            ApiServer server = new ApiServer(port);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                System.out.println("Shutting down API server...");
+                server.stop();
+                System.out.println(BookingJournal.stats());
+                BookingJournal.closeShared();
+                TicketJobQueue.shutdown(30_000);
+                System.out.println(DBConnection.getPoolStats());
+                System.out.println(Startup.stats());
+                System.out.print(Metrics.report());
+                TicketStore.closeShared();
+                DBConnection.shutdown();
+            }, "api-shutdown"));
+            server.start();
+            Startup.ready();
+        } catch (IOException e) {
+            System.out.println("Could not start API server: " + e.getMessage());
+            DBConnection.shutdown();
+        }
+    }
 }
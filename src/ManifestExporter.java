@@ -0,0 +1,302 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Scanner;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+
+/**
+ * Passenger manifest of a sailing, as CSV and as a multi-page PDF table.
+ *
+ * Rows are streamed from the database (forward-only, fetch size Integer.MIN_VALUE) and
+ * written to both files as they arrive, in one pass, so memory stays flat however many
+ * passengers the ship carries: the CSV goes through a buffered writer, and the PDF keeps
+ * finished pages in a scratch file instead of the heap. The Roboto fonts are embedded
+ * once per document, subset to the glyphs used.
+ *
+ * Files are written next to their target and moved into place when complete, so a
+ * failed export never leaves a half manifest behind.
+ */
+public class ManifestExporter {
+
+    static final Path OUTPUT_DIR = Paths.get(System.getProperty("manifest.dir", "manifests"));
+
+    private static final Metrics.Timer EXPORT = Metrics.timer("manifest.export");
+    private static final Metrics.Timer SQL_SELECT = Metrics.timer("sql.manifest.select");
+
+    private static final String MANIFEST_SELECT = """
+            SELECT b.booking_id, b.cabin_class, b.payment_status,
+                   p.passenger_id, p.name, p.age, p.gender, p.nationality,
+                   (SELECT pm.mode FROM payment pm WHERE pm.booking_id = b.booking_id
+                    ORDER BY pm.payment_date DESC LIMIT 1) AS payment_mode
+            FROM booking b
+            JOIN passenger p ON b.passenger_id = p.passenger_id
+            WHERE b.cruise_id = ? AND b.status <> 'CANCELLED'
+            ORDER BY p.name, b.booking_id
+            """;
+
+    /** One passenger on the manifest. */
+    public record Row(int bookingId, int passengerId, String name, int age, String gender,
+                      String nationality, String cabinClass, String paymentStatus, String paymentMode) {}
+
+    /** What an export wrote; a path is null if that format was not requested. */
+    public record Result(long rows, Path csv, Path pdf) {}
+
+    interface RowSink {
+        void accept(Row row) throws IOException;
+    }
+
+    /** Console flow: export a cruise's manifest to manifests/Manifest_<id>.csv and .pdf. */
+    public static void exportManifest(Scanner sc) {
+        try {
+            System.out.print("Enter Cruise ID: ");
+            int cruiseId = Integer.parseInt(sc.nextLine().trim());
+
+            long start = System.nanoTime();
+            Result r = export(cruiseId, OUTPUT_DIR.resolve("Manifest_" + cruiseId + ".csv"),
+                    OUTPUT_DIR.resolve("Manifest_" + cruiseId + ".pdf"));
+            System.out.printf("Exported %d passengers to %s and %s in %.2f s%n",
+                    r.rows(), r.csv(), r.pdf(), (System.nanoTime() - start) / 1e9);
+        } catch (Exception e) {
+            System.out.println("Error while exporting manifest: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Write the manifest of a cruise to {@code csv} and/or {@code pdf} (either may be null)
+     * in a single pass over the bookings.
+     */
+    public static Result export(int cruiseId, Path csv, Path pdf) throws SQLException, IOException {
+        ScheduleService.Entry entry = ScheduleService.get(cruiseId);
+        if (entry == null) throw new IllegalArgumentException("Cruise not found: " + cruiseId);
+        long t0 = System.nanoTime();
+
+        Path csvTmp = csv != null ? tempFileFor(csv) : null;
+        Path pdfTmp = pdf != null ? tempFileFor(pdf) : null;
+        try {
+            long rows;
+            try (BufferedWriter w = csv != null ? Files.newBufferedWriter(csvTmp, StandardCharsets.UTF_8) : null;
+                 PdfTable table = pdf != null ? new PdfTable(entry.getCruise()) : null;
+                 Connection conn = DBConnection.borrowRead(DBConnection.cruise(cruiseId))) {
+                if (w != null) {
+                    w.write("booking_id,passenger_id,name,age,gender,nationality,cabin_class,payment_status,payment_mode");
+                    w.newLine();
+                }
+                rows = stream(conn, cruiseId, row -> {
+                    if (w != null) {
+                        // every text field goes through PassengerService.csv, which also quotes
+                        // CR and LF, so a name with a line break stays one manifest row
+                        w.write(row.bookingId() + "," + row.passengerId() + "," + PassengerService.csv(row.name()) + ","
+                                + row.age() + "," + PassengerService.csv(row.gender()) + ","
+                                + PassengerService.csv(row.nationality()) + "," + PassengerService.csv(row.cabinClass()) + ","
+                                + PassengerService.csv(row.paymentStatus()) + "," + PassengerService.csv(row.paymentMode()));
+                        w.newLine();
+                    }
+                    if (table != null) table.add(row);
+                });
+                if (table != null) table.save(rows, pdfTmp);
+            }
+            if (csv != null) Files.move(csvTmp, csv, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (pdf != null) Files.move(pdfTmp, pdf, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            EXPORT.record(t0);
+            return new Result(rows, csv, pdf);
+        } finally {
+            if (csvTmp != null) Files.deleteIfExists(csvTmp);
+            if (pdfTmp != null) Files.deleteIfExists(pdfTmp);
+        }
+    }
+
+    /**
+     * Hand every passenger booked on a cruise to {@code sink}, ordered by name, one row at
+     * a time as the driver streams them. Returns the number of rows.
+     */
+    public static long stream(Connection conn, int cruiseId, RowSink sink) throws SQLException, IOException {
+        long count = 0;
+        try (PreparedStatement ps = conn.prepareStatement(MANIFEST_SELECT, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            ps.setFetchSize(Integer.MIN_VALUE);
+            ps.setInt(1, cruiseId);
+            long t0 = System.nanoTime();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    sink.accept(new Row(
+                            rs.getInt("booking_id"),
+                            rs.getInt("passenger_id"),
+                            rs.getString("name"),
+                            rs.getInt("age"),
+                            rs.getString("gender"),
+                            rs.getString("nationality"),
+                            rs.getString("cabin_class"),
+                            rs.getString("payment_status"),
+                            rs.getString("payment_mode")));
+                    count++;
+                }
+            } finally {
+                SQL_SELECT.record(t0);
+            }
+        }
+        return count;
+    }
+
+    private static Path tempFileFor(Path target) throws IOException {
+        Path dir = target.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        return Files.createTempFile(dir, target.getFileName().toString(), ".part");
+    }
+
+    /**
+     * The PDF side of an export: a table that starts a new page whenever the current one
+     * is full. Each page's content stream is closed (and so compressed into the scratch
+     * file) as soon as the page is full.
+     */
+    private static final class PdfTable implements Closeable {
+        private static final PDRectangle PAGE_SIZE = PDRectangle.A4;
+        private static final float MARGIN = 40f;
+        private static final float ROW_HEIGHT = 13f;
+        private static final float TEXT_SIZE = 8.5f;
+        private static final float TOP_ROW_Y = PAGE_SIZE.getHeight() - 100f;
+        private static final float BOTTOM_Y = 50f;
+
+        private static final String[] HEADINGS = {"#", "Booking", "Name", "Age", "Gender", "Nationality", "Cabin", "Payment"};
+        private static final float[] COLUMN_X = {40f, 68f, 113f, 283f, 308f, 348f, 433f, 488f, 555f}; // last is the right edge
+
+        private final PDDocument doc = new PDDocument(MemoryUsageSetting.setupTempFileOnly());
+        private final PDFont regular;
+        private final PDFont bold;
+        private final String subtitle;
+        private PDPageContentStream cs;
+        private int pages;
+        private float y;
+        private long line;
+
+        PdfTable(Cruise cruise) throws IOException {
+            try {
+                regular = PDType0Font.load(doc, TicketTemplate.findAsset(TicketTemplate.FONT_REGULAR));
+                bold = PDType0Font.load(doc, TicketTemplate.findAsset(TicketTemplate.FONT_BOLD));
+            } catch (IOException e) {
+                doc.close();
+                throw e;
+            }
+            subtitle = "Cruise " + cruise.getCruiseId() + "  |  " + cruise.getShipName()
+                    + "  |  departs " + cruise.getStartDate() + " from " + cruise.getStartPort();
+        }
+
+        void add(Row r) throws IOException {
+            if (cs == null || y < BOTTOM_Y) newPage();
+            String[] cells = {
+                    Long.toString(++line),
+                    Integer.toString(r.bookingId()),
+                    r.name(),
+                    Integer.toString(r.age()),
+                    r.gender(),
+                    r.nationality(),
+                    r.cabinClass(),
+                    r.paymentStatus() + (r.paymentMode() != null ? " " + r.paymentMode() : "")};
+            writeRow(regular, cells);
+        }
+
+        void save(long rows, Path out) throws IOException {
+            if (cs == null || y < BOTTOM_Y) newPage();
+            y -= ROW_HEIGHT / 2;
+            text(bold, TEXT_SIZE, COLUMN_X[0], y, rows == 0 ? "No passengers booked." : "Total passengers: " + rows);
+            cs.close();
+            cs = null;
+            doc.save(out.toFile());
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (cs != null) cs.close();
+            } finally {
+                doc.close();
+            }
+        }
+
+        private void newPage() throws IOException {
+            if (cs != null) cs.close();
+            PDPage page = new PDPage(PAGE_SIZE);
+            doc.addPage(page);
+            pages++;
+            cs = new PDPageContentStream(doc, page);
+
+            float top = PAGE_SIZE.getHeight() - MARGIN;
+            text(bold, 14, MARGIN, top - 14, "PASSENGER MANIFEST");
+            text(regular, 9, MARGIN, top - 32, subtitle);
+            String pageNo = "Page " + pages;
+            text(regular, 8, PAGE_SIZE.getWidth() - MARGIN - width(regular, 8, pageNo), MARGIN - 15, pageNo);
+
+            y = TOP_ROW_Y + ROW_HEIGHT + 4;
+            writeRow(bold, HEADINGS);
+            cs.setLineWidth(0.5f);
+            cs.moveTo(MARGIN, y + ROW_HEIGHT - 3);
+            cs.lineTo(PAGE_SIZE.getWidth() - MARGIN, y + ROW_HEIGHT - 3);
+            cs.stroke();
+            y = TOP_ROW_Y;
+        }
+
+        private void writeRow(PDFont font, String[] cells) throws IOException {
+            for (int i = 0; i < cells.length; i++) {
+                float room = COLUMN_X[i + 1] - COLUMN_X[i] - 4;
+                text(font, TEXT_SIZE, COLUMN_X[i], y, fit(font, cells[i], room));
+            }
+            y -= ROW_HEIGHT;
+        }
+
+        private void text(PDFont font, float size, float x, float atY, String s) throws IOException {
+            if (s.isEmpty()) return;
+            cs.beginText();
+            cs.setFont(font, size);
+            cs.newLineAtOffset(x, atY);
+            cs.showText(s);
+            cs.endText();
+        }
+
+        /** {@code s} with characters the font cannot draw replaced by '?', cut to fit {@code room} points. */
+        private static String fit(PDFont font, String s, float room) throws IOException {
+            if (s == null) return "";
+            s = drawable(font, s);
+            if (width(font, TEXT_SIZE, s) <= room) return s;
+            int end = s.length();
+            while (end > 0 && width(font, TEXT_SIZE, s.substring(0, end) + "…") > room) end--;
+            return s.substring(0, end) + "…";
+        }
+
+        private static String drawable(PDFont font, String s) throws IOException {
+            try {
+                font.encode(s);
+                return s;
+            } catch (IllegalArgumentException e) {
+                StringBuilder sb = new StringBuilder(s.length());
+                s.codePoints().forEach(cp -> {
+                    String c = new String(Character.toChars(cp));
+                    try {
+                        font.encode(c);
+                        sb.append(c);
+                    } catch (IllegalArgumentException | IOException ex) {
+                        sb.append('?');
+                    }
+                });
+                return sb.toString();
+            }
+        }
+
+        private static float width(PDFont font, float size, String s) throws IOException {
+            return font.getStringWidth(s) / 1000f * size;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Latency histograms and counters for SQL statements, ticket rendering phases and
+ * connection acquisition. Each one is registered in JMX under {@code CruiseManagement:type=...,name=...}
+ * and {@link #report()} renders all of them as text.
+ *
+ * Timers are created once (static finals at the call site) and recording is a couple of
+ * LongAdder increments into fixed power-of-two buckets, so nothing is allocated per call:
+ *
+ *   long t0 = System.nanoTime();
+ *   try { ... } finally { SQL_INSERT.record(t0); }
+ */
+public class Metrics {
+
+    private static final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private static final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private static volatile ScheduledExecutorService reporter;
+
+    public interface TimerMBean {
+        long getCount();
+        double getMeanMillis();
+        double getMaxMillis();
+        double getP50Millis();
+        double getP90Millis();
+        double getP99Millis();
+        double getP999Millis();
+        void reset();
+    }
+
+    public interface CounterMBean {
+        long getCount();
+    }
+
+    /**
+     * Histogram of durations in nanoseconds. Bucket i holds values in [2^i, 2^(i+1)),
+     * so percentiles are upper bounds within a factor of two, which is enough to tell a
+     * 2 ms statement from a 200 ms one.
+     */
+    public static final class Timer implements TimerMBean {
+        private final LongAdder[] buckets = new LongAdder[64];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        Timer() {
+            for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+        }
+
+        /** Record the time elapsed since {@code startNanos} (a System.nanoTime() value). */
+        public void record(long startNanos) {
+            recordNanos(System.nanoTime() - startNanos);
+        }
+
+        public void recordNanos(long nanos) {
+            if (nanos < 1) nanos = 1;
+            buckets[63 - Long.numberOfLeadingZeros(nanos)].increment();
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        @Override public long getCount() { return count.sum(); }
+
+        @Override
+        public double getMeanMillis() {
+            long n = count.sum();
+            return n == 0 ? 0 : totalNanos.sum() / 1e6 / n;
+        }
+
+        @Override public double getMaxMillis() { return maxNanos.get() / 1e6; }
+        @Override public double getP50Millis() { return percentile(0.50); }
+        @Override public double getP90Millis() { return percentile(0.90); }
+        @Override public double getP99Millis() { return percentile(0.99); }
+        @Override public double getP999Millis() { return percentile(0.999); }
+
+        @Override
+        public void reset() {
+            for (LongAdder b : buckets) b.reset();
+            count.reset();
+            totalNanos.reset();
+            maxNanos.reset();
+        }
+
+        /** Upper bound of the bucket holding the q-th value, capped at the max seen. */
+        double percentile(double q) {
+            long[] snapshot = new long[buckets.length];
+            long n = 0;
+            for (int i = 0; i < snapshot.length; i++) n += snapshot[i] = buckets[i].sum();
+            if (n == 0) return 0;
+            long rank = (long) Math.ceil(q * n);
+            long seen = 0;
+            for (int i = 0; i < snapshot.length; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    long upper = i >= 62 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+                    return Math.min(upper, maxNanos.get()) / 1e6;
+                }
+            }
+            return getMaxMillis();
+        }
+    }
+
+    public static final class Counter implements CounterMBean {
+        private final LongAdder value = new LongAdder();
+
+        public void increment() { value.increment(); }
+        public void add(long n) { value.add(n); }
+        @Override public long getCount() { return value.sum(); }
+    }
+
+    /** The timer with this name, created and registered in JMX on first use. */
+    public static Timer timer(String name) {
+        return timers.computeIfAbsent(name, n -> register("Timer", n, new Timer(), TimerMBean.class));
+    }
+
+    public static Counter counter(String name) {
+        return counters.computeIfAbsent(name, n -> register("Counter", n, new Counter(), CounterMBean.class));
+    }
+
+    private static <T> T register(String type, String name, T metric, Class<? super T> iface) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName on = new ObjectName("CruiseManagement:type=" + type + ",name=" + ObjectName.quote(name));
+            if (server.isRegistered(on)) server.unregisterMBean(on);
+            server.registerMBean(new StandardMBean(metric, castInterface(iface)), on);
+        } catch (Exception e) {
+            System.out.println("Could not register metric " + name + " in JMX: " + e.getMessage());
+        }
+        return metric;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Class<T> castInterface(Class<? super T> iface) {
+        return (Class<T>) iface;
+    }
+
+    /** All metrics as a text table, timers first. */
+    public static String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-32s %10s %9s %9s %9s %9s %9s%n", "timer (ms)", "count", "mean", "p50", "p99", "p99.9", "max"));
+        for (Map.Entry<String, Timer> e : new TreeMap<>(timers).entrySet()) {
+            Timer t = e.getValue();
+            if (t.getCount() == 0) continue;
+            sb.append(String.format("%-32s %10d %9.3f %9.3f %9.3f %9.3f %9.3f%n", e.getKey(), t.getCount(),
+                    t.getMeanMillis(), t.getP50Millis(), t.getP99Millis(), t.getP999Millis(), t.getMaxMillis()));
+        }
+        for (Map.Entry<String, Counter> e : new TreeMap<>(counters).entrySet()) {
+            sb.append(String.format("%-32s %10d%n", e.getKey(), e.getValue().getCount()));
+        }
+        return sb.toString();
+    }
+
+    /** Print {@link #report()} every {@code periodMs}; does nothing if periodMs <= 0 or already running. */
+    public static synchronized void startReporter(long periodMs) {
+        if (periodMs <= 0 || reporter != null) return;
+        reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-reporter");
+            t.setDaemon(true);
+            return t;
+        });
+        reporter.scheduleAtFixedRate(() -> System.out.print("---- metrics ----\n" + report()),
+                periodMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    public static synchronized void stopReporter() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+    }
+}
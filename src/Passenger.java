@@ -0,0 +1,21 @@
+public class Passenger {
+    private int passengerId;
+    private String name;
+    private int age;
+    private String gender;
+    private String nationality;
+
+    public Passenger(int passengerId, String name, int age, String gender, String nationality) {
+        this.passengerId = passengerId;
+        this.name = name;
+        this.age = age;
+        this.gender = gender;
+        this.nationality = nationality;
+    }
+
+    public int getPassengerId() { return passengerId; }
+    public String getName() { return name; }
+    public int getAge() { return age; }
+    public String getGender() { return gender; }
+    public String getNationality() { return nationality; }
+}
@@ -0,0 +1,235 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bulk load of passenger manifests from CSV (name,age,gender,nationality).
+ *
+ * The file is read line by line and inserted in JDBC batches, one transaction per batch,
+ * so memory stays at one batch no matter how large the file is. Per-row results
+ * (generated passenger ID or the validation/SQL error) are streamed to a report CSV.
+ */
+public class PassengerImporter {
+
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    private static final String INSERT = "INSERT INTO passenger(name, age, gender, nationality) VALUES (?, ?, ?, ?)";
+
+    public static final class Result {
+        private final long rows;
+        private final long imported;
+        private final long failed;
+        private final long elapsedNanos;
+
+        Result(long rows, long imported, long failed, long elapsedNanos) {
+            this.rows = rows;
+            this.imported = imported;
+            this.failed = failed;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getRows() { return rows; }
+        public long getImported() { return imported; }
+        public long getFailed() { return failed; }
+        public double getSeconds() { return elapsedNanos / 1e9; }
+        public double getRowsPerSecond() { return rows / Math.max(getSeconds(), 1e-9); }
+
+        @Override
+        public String toString() {
+            return String.format("%d rows: %d imported, %d failed in %.2f s (%.0f rows/s)",
+                    rows, imported, failed, getSeconds(), getRowsPerSecond());
+        }
+    }
+
+    /** One parsed, validated row waiting in the current batch. */
+    private static final class Row {
+        final long line;
+        final String name;
+        final int age;
+        final String gender;
+        final String nationality;
+
+        Row(long line, String name, int age, String gender, String nationality) {
+            this.line = line;
+            this.name = name;
+            this.age = age;
+            this.gender = gender;
+            this.nationality = nationality;
+        }
+    }
+
+    /**
+     * Import {@code csv}, writing one report line per data row to {@code report}
+     * (line,status,passenger_id,error).
+     */
+    public static Result importCsv(Path csv, Path report, int batchSize) throws IOException, SQLException {
+        if (batchSize <= 0) batchSize = DEFAULT_BATCH_SIZE;
+        long start = System.nanoTime();
+        long rows = 0, imported = 0;
+
+        try (BufferedReader in = Files.newBufferedReader(csv, StandardCharsets.UTF_8);
+             BufferedWriter out = Files.newBufferedWriter(report, StandardCharsets.UTF_8);
+             Connection conn = DBConnection.borrow();
+             PreparedStatement ps = conn.prepareStatement(INSERT, Statement.RETURN_GENERATED_KEYS)) {
+
+            out.write("line,status,passenger_id,error");
+            out.newLine();
+            conn.setAutoCommit(false);
+
+            List<Row> batch = new ArrayList<>(batchSize);
+            String line;
+            long lineNo = 0;
+            while ((line = in.readLine()) != null) {
+                lineNo++;
+                if (line.isBlank()) continue;
+                if (lineNo == 1 && line.toLowerCase().startsWith("name")) continue; // header
+
+                rows++;
+                String error;
+                try {
+                    Row row = parse(lineNo, line);
+                    error = validate(row);
+                    if (error == null) {
+                        batch.add(row);
+                        if (batch.size() == batchSize) {
+                            imported += flush(conn, ps, batch, out);
+                        }
+                        continue;
+                    }
+                } catch (IllegalArgumentException e) {
+                    error = e.getMessage();
+                }
+                writeReport(out, lineNo, "ERROR", 0, error);
+            }
+            imported += flush(conn, ps, batch, out);
+        }
+        return new Result(rows, imported, rows - imported, System.nanoTime() - start);
+    }
+
+    /**
+     * Insert and commit the pending batch. If the batch is rejected as a whole, it is
+     * rolled back and replayed row by row so only the offending rows fail.
+     */
+    private static long flush(Connection conn, PreparedStatement ps, List<Row> batch, BufferedWriter out) throws SQLException, IOException {
+        if (batch.isEmpty()) return 0;
+        long ok = 0;
+        try {
+            for (Row r : batch) {
+                bind(ps, r);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            int[] ids = new int[batch.size()];
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                for (int i = 0; i < ids.length && keys.next(); i++) ids[i] = keys.getInt(1);
+            }
+            conn.commit();
+            for (int i = 0; i < ids.length; i++) {
+                writeReport(out, batch.get(i).line, "OK", ids[i], null);
+                if (ids[i] > 0) PassengerIndex.put(toPassenger(ids[i], batch.get(i)));
+                ok++;
+            }
+        } catch (BatchUpdateException e) {
+            ps.clearBatch();
+            conn.rollback();
+            ok = insertOneByOne(conn, ps, batch, out);
+        }
+        batch.clear();
+        return ok;
+    }
+
+    private static long insertOneByOne(Connection conn, PreparedStatement ps, List<Row> batch, BufferedWriter out) throws SQLException, IOException {
+        long ok = 0;
+        List<Passenger> inserted = new ArrayList<>();
+        for (Row r : batch) {
+            try {
+                bind(ps, r);
+                ps.executeUpdate();
+                int id = 0;
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    if (keys.next()) id = keys.getInt(1);
+                }
+                writeReport(out, r.line, "OK", id, null);
+                if (id > 0) inserted.add(toPassenger(id, r));
+                ok++;
+            } catch (SQLException e) {
+                writeReport(out, r.line, "ERROR", 0, e.getMessage());
+            }
+        }
+        conn.commit();
+        for (Passenger p : inserted) PassengerIndex.put(p);
+        return ok;
+    }
+
+    private static Passenger toPassenger(int id, Row r) {
+        return new Passenger(id, r.name, r.age, r.gender, r.nationality);
+    }
+
+    private static void bind(PreparedStatement ps, Row r) throws SQLException {
+        ps.setString(1, r.name);
+        ps.setInt(2, r.age);
+        ps.setString(3, r.gender);
+        ps.setString(4, r.nationality);
+    }
+
+    private static Row parse(long lineNo, String line) {
+        List<String> f = splitCsv(line);
+        if (f.size() != 4) throw new IllegalArgumentException("expected 4 columns, found " + f.size());
+        int age;
+        try {
+            age = Integer.parseInt(f.get(1).trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("age is not a number: " + f.get(1));
+        }
+        return new Row(lineNo, f.get(0).trim(), age, f.get(2).trim().toUpperCase(), f.get(3).trim());
+    }
+
+    private static String validate(Row r) {
+        if (r.name.isEmpty()) return "name is empty";
+        if (r.age < 0 || r.age > 130) return "age out of range: " + r.age;
+        if (!r.gender.equals("M") && !r.gender.equals("F") && !r.gender.equals("O")) return "gender must be M, F or O";
+        if (r.nationality.isEmpty()) return "nationality is empty";
+        return null;
+    }
+
+    /** Split one CSV line, honouring double quotes ("" inside quotes is a literal quote). */
+    static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>(4);
+        StringBuilder cur = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    cur.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    cur.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(cur.toString());
+                cur.setLength(0);
+            } else {
+                cur.append(c);
+            }
+        }
+        fields.add(cur.toString());
+        return fields;
+    }
+
+    private static void writeReport(BufferedWriter out, long line, String status, int passengerId, String error) throws IOException {
+        out.write(line + "," + status + "," + (passengerId > 0 ? passengerId : "") + ",");
+        if (error != null) out.write('"' + error.replace("\"", "\"\"") + '"');
+        out.newLine();
+    }
+}
@@ -0,0 +1,472 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory search index over the passenger table, so agents can find people by part of
+ * their name without a LIKE '%...%' scan of the live table.
+ *
+ * Names are lower-cased, stripped of accents and split into words. Each word is indexed
+ * under its first letter, its first two letters and every three-letter substring, each
+ * gram pointing at a sorted list of passenger IDs. Nationality and gender have one list
+ * per value. A query intersects the lists of its grams and filters, starting from the
+ * shortest, then checks and ranks the survivors:
+ *
+ *   whole word match 3, word prefix 2, inside a word 1 (per query word, summed),
+ *   then shorter names first, then passenger ID.
+ *
+ * Every query word must match some word of the name. Query words of one or two letters
+ * only match at the start of a name word.
+ *
+ * Loaded at startup or on the first search; PassengerService and PassengerImporter keep it
+ * in sync as they write. Until it is loaded, updates are ignored and search reports that
+ * it is not ready. Updates check that under the lock, so one that waits for a load in
+ * progress is applied after it.
+ */
+public class PassengerIndex {
+
+    private static final Pattern ACCENTS = Pattern.compile("\\p{M}+");
+    private static final Pattern WORD_BREAK = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static final Metrics.Timer SEARCH = Metrics.timer("passenger.search");
+    private static final Metrics.Timer LOAD = Metrics.timer("passenger.index.load");
+
+    private static final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // indexed by passenger ID: IDs are auto-increment, so the array is dense and a lookup
+    // is one load instead of a hash probe through boxed keys
+    private static Entry[] byId = new Entry[1024];
+    // folded name words joined by single spaces, by passenger ID: ranking reads only this
+    private static char[][] folded = new char[1024][];
+    // the arrays only grow to DENSE_MIN or 4x the passenger count; IDs beyond that (an
+    // import with huge or sparse IDs) live here, all above byId.length, in ID order
+    private static final TreeMap<Integer, Entry> sparse = new TreeMap<>();
+    private static final int DENSE_MIN = 1 << 16;
+    private static int count;
+    private static final Map<String, Postings> grams = new HashMap<>();
+    private static final Map<String, Postings> nationalities = new HashMap<>();
+    private static final Map<String, Postings> genders = new HashMap<>();
+    private static volatile boolean loaded;
+
+    /** One page of search results plus the total number of matches. */
+    public static final class Page {
+        private final int total;
+        private final List<Passenger> items;
+
+        Page(int total, List<Passenger> items) {
+            this.total = total;
+            this.items = Collections.unmodifiableList(items);
+        }
+
+        public int getTotal() { return total; }
+        public List<Passenger> getItems() { return items; }
+    }
+
+    private static final class Entry {
+        final Passenger passenger;
+        final String[] words;
+        final char[] folded;
+
+        Entry(Passenger passenger) {
+            this.passenger = passenger;
+            this.words = words(passenger.getName());
+            this.folded = String.join(" ", words).toCharArray();
+        }
+    }
+
+    /** Sorted, duplicate-free list of passenger IDs. */
+    private static final class Postings {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            if (size > 0 && ids[size - 1] >= id) {
+                int at = Arrays.binarySearch(ids, 0, size, id);
+                if (at >= 0) return;
+                insert(-at - 1, id);
+            } else {
+                insert(size, id);
+            }
+        }
+
+        private void insert(int at, int id) {
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            ids[at] = id;
+            size++;
+        }
+
+        void remove(int id) {
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            if (at < 0) return;
+            System.arraycopy(ids, at + 1, ids, at, size - at - 1);
+            size--;
+        }
+
+        /** Position of the first ID >= {@code id}, searching from {@code from} (galloping). */
+        int seek(int from, int id) {
+            if (from >= size) return size;
+            int bound = 1;
+            while (from + bound < size && ids[from + bound] < id) bound <<= 1;
+            int at = Arrays.binarySearch(ids, from + (bound >> 1), Math.min(from + bound + 1, size), id);
+            return at >= 0 ? at : -at - 1;
+        }
+    }
+
+    /**
+     * (Re)build the index from the passenger table. Streams the rows, and holds the write
+     * lock throughout so no concurrent insert or update can be lost.
+     */
+    public static void load(Connection conn) throws SQLException {
+        String sql = "SELECT passenger_id, name, age, gender, nationality FROM passenger ORDER BY passenger_id";
+        long t0 = System.nanoTime();
+        lock.writeLock().lock();
+        try (Statement st = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            st.setFetchSize(Integer.MIN_VALUE);
+            byId = new Entry[1024];
+            folded = new char[1024][];
+            sparse.clear();
+            count = 0;
+            grams.clear();
+            nationalities.clear();
+            genders.clear();
+            try (ResultSet rs = st.executeQuery(sql)) {
+                while (rs.next()) {
+                    add(new Passenger(rs.getInt("passenger_id"), rs.getString("name"), rs.getInt("age"),
+                            rs.getString("gender"), rs.getString("nationality")));
+                }
+            }
+            loaded = true;
+        } finally {
+            lock.writeLock().unlock();
+            LOAD.record(t0);
+        }
+    }
+
+    public static boolean isLoaded() {
+        return loaded;
+    }
+
+    /** Whether the passenger is indexed; always false while the index is not loaded. */
+    public static boolean contains(int passengerId) {
+        lock.readLock().lock();
+        try {
+            return entry(passengerId) != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Index a new or changed passenger. */
+    public static void put(Passenger p) {
+        lock.writeLock().lock();
+        try {
+            if (!loaded) return;
+            remove0(p.getPassengerId());
+            add(p);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Apply a name/age change to an indexed passenger. */
+    public static void update(int passengerId, String name, int age) {
+        lock.writeLock().lock();
+        try {
+            if (!loaded) return;
+            Entry old = remove0(passengerId);
+            if (old != null) {
+                Passenger p = old.passenger;
+                add(new Passenger(passengerId, name, age, p.getGender(), p.getNationality()));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public static void remove(int passengerId) {
+        lock.writeLock().lock();
+        try {
+            if (!loaded) return;
+            remove0(passengerId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Ranked search. {@code query} is matched against names (blank for no name condition),
+     * {@code nationality} and {@code gender} are exact, case-insensitive filters (null or
+     * blank for any). Returns the page starting at {@code offset}, empty once the offset
+     * is past the last match.
+     */
+    public static Page search(String query, String nationality, String gender, int offset, int limit) {
+        if (!loaded) throw new IllegalStateException("Passenger index is not loaded");
+        long t0 = System.nanoTime();
+        String[] queryWords = words(query);
+        char[][] queryChars = new char[queryWords.length][];
+        for (int i = 0; i < queryWords.length; i++) queryChars[i] = queryWords[i].toCharArray();
+        offset = Math.max(0, offset);
+        limit = Math.max(0, limit);
+
+        lock.readLock().lock();
+        try {
+            List<Postings> lists = new ArrayList<>();
+            for (String w : queryWords) {
+                for (String g : queryGrams(w)) {
+                    Postings p = grams.get(g);
+                    if (p == null) return new Page(0, List.of());
+                    lists.add(p);
+                }
+            }
+            if (!isBlank(nationality)) {
+                Postings p = nationalities.get(key(nationality));
+                if (p == null) return new Page(0, List.of());
+                lists.add(p);
+            }
+            if (!isBlank(gender)) {
+                Postings p = genders.get(key(gender));
+                if (p == null) return new Page(0, List.of());
+                lists.add(p);
+            }
+
+            if (lists.isEmpty()) {
+                // no condition at all: everyone, by ID
+                if (offset >= count) return new Page(count, List.of());
+                List<Passenger> items = new ArrayList<>();
+                int skip = offset;
+                for (int id = 0; id < byId.length && items.size() < limit; id++) {
+                    if (byId[id] != null && skip-- <= 0) items.add(byId[id].passenger);
+                }
+                for (Iterator<Entry> it = sparse.values().iterator(); it.hasNext() && items.size() < limit; ) {
+                    Entry e = it.next();
+                    if (skip-- <= 0) items.add(e.passenger);
+                }
+                return new Page(count, items);
+            }
+
+            lists.sort(Comparator.comparingInt(p -> p.size));
+            Postings smallest = lists.get(0);
+
+            // the best `wanted` matches as rank keys (smaller is better), in a max-heap so
+            // the worst one is on top and a candidate that cannot make the page costs one compare.
+            // There are at most smallest.size matches; past them the scan only counts.
+            int wanted = offset >= smallest.size ? 0 : (int) Math.min((long) offset + limit, smallest.size);
+            long[] heap = new long[wanted];
+            int heapSize = 0;
+            int total = 0;
+            // candidates come in ID order, so each other list is walked forward with a cursor
+            int[] cursors = new int[lists.size()];
+            candidates:
+            for (int i = 0; i < smallest.size; i++) {
+                int id = smallest.ids[i];
+                for (int k = 1; k < lists.size(); k++) {
+                    Postings p = lists.get(k);
+                    int at = p.seek(cursors[k], id);
+                    cursors[k] = at;
+                    if (at == p.size || p.ids[at] != id) continue candidates;
+                }
+                char[] name = id < folded.length ? folded[id] : sparse.get(id).folded;
+                int score = score(queryChars, name);
+                if (score < 0) continue; // gram hit without a real match
+                total++;
+                if (wanted == 0) continue;
+                // shorter names rank first only when there is a name to match
+                long rank = rankKey(score, queryChars.length == 0 ? 0 : name.length, id);
+                if (heapSize < wanted) {
+                    heap[heapSize] = rank;
+                    siftUp(heap, heapSize++);
+                } else if (rank < heap[0]) {
+                    heap[0] = rank;
+                    siftDown(heap, heapSize);
+                }
+            }
+
+            long[] ranked = Arrays.copyOf(heap, heapSize);
+            Arrays.sort(ranked);
+            List<Passenger> items = new ArrayList<>(Math.max(0, ranked.length - offset));
+            for (int i = offset; i < ranked.length; i++) items.add(entry((int) ranked[i]).passenger);
+            return new Page(total, items);
+        } finally {
+            lock.readLock().unlock();
+            SEARCH.record(t0);
+        }
+    }
+
+    public static String stats() {
+        lock.readLock().lock();
+        try {
+            return String.format("passengerIndex[passengers=%d grams=%d nationalities=%d]", count, grams.size(), nationalities.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Higher score, then shorter name, then lower ID sorts first. IDs are positive. */
+    private static long rankKey(int score, int nameLength, int id) {
+        long inverseScore = 0xFFFF - Math.min(score, 0xFFFF);
+        return inverseScore << 48 | (long) Math.min(nameLength, 0xFFFF) << 32 | id;
+    }
+
+    private static void siftUp(long[] heap, int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent] >= heap[i]) return;
+            long t = heap[parent]; heap[parent] = heap[i]; heap[i] = t;
+            i = parent;
+        }
+    }
+
+    private static void siftDown(long[] heap, int size) {
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) return;
+            if (child + 1 < size && heap[child + 1] > heap[child]) child++;
+            if (heap[i] >= heap[child]) return;
+            long t = heap[child]; heap[child] = heap[i]; heap[i] = t;
+            i = child;
+        }
+    }
+
+    /**
+     * Sum over query words of the best match in the folded name (whole word 3, word
+     * prefix 2, inside a word 1), or -1 if some word does not match.
+     */
+    private static int score(char[][] queryWords, char[] name) {
+        int total = 0;
+        for (char[] q : queryWords) {
+            int best = -1;
+            for (int at = 0; at + q.length <= name.length && best < 3; at++) {
+                if (!matchesAt(name, at, q)) continue;
+                boolean start = at == 0 || name[at - 1] == ' ';
+                boolean end = at + q.length == name.length || name[at + q.length] == ' ';
+                int s = start ? (end ? 3 : 2) : (q.length >= 3 ? 1 : -1);
+                if (s > best) best = s;
+            }
+            if (best < 0) return -1;
+            total += best;
+        }
+        return total;
+    }
+
+    private static boolean matchesAt(char[] name, int at, char[] q) {
+        for (int i = 0; i < q.length; i++) {
+            if (name[at + i] != q[i]) return false;
+        }
+        return true;
+    }
+
+    // --- maintenance, callers hold the write lock ---
+
+    private static Entry entry(int id) {
+        return id >= 0 && id < byId.length ? byId[id] : sparse.get(id);
+    }
+
+    private static void add(Passenger p) {
+        int id = p.getPassengerId();
+        Entry e = new Entry(p);
+        if (id >= byId.length) {
+            long size = Math.max(id + 1L, byId.length * 2L);
+            if (size <= Math.max(DENSE_MIN, 4L * (count + 1))) grow((int) size);
+        }
+        if (id >= 0 && id < byId.length) {
+            if (byId[id] == null) count++;
+            byId[id] = e;
+            folded[id] = e.folded;
+        } else if (sparse.put(id, e) == null) {
+            count++;
+        }
+        for (String g : nameGrams(e.words)) grams.computeIfAbsent(g, k -> new Postings()).add(id);
+        if (!isBlank(p.getNationality())) nationalities.computeIfAbsent(key(p.getNationality()), k -> new Postings()).add(id);
+        if (!isBlank(p.getGender())) genders.computeIfAbsent(key(p.getGender()), k -> new Postings()).add(id);
+    }
+
+    /** Grow the arrays and move the sparse entries they now cover into them. */
+    private static void grow(int size) {
+        byId = Arrays.copyOf(byId, size);
+        folded = Arrays.copyOf(folded, size);
+        Map<Integer, Entry> covered = sparse.headMap(size);
+        for (Map.Entry<Integer, Entry> m : covered.entrySet()) {
+            byId[m.getKey()] = m.getValue();
+            folded[m.getKey()] = m.getValue().folded;
+        }
+        covered.clear();
+    }
+
+    private static Entry remove0(int id) {
+        Entry e = entry(id);
+        if (e == null) return null;
+        if (id < byId.length) {
+            byId[id] = null;
+            folded[id] = null;
+        } else {
+            sparse.remove(id);
+        }
+        count--;
+        for (String g : nameGrams(e.words)) removeFrom(grams, g, id);
+        Passenger p = e.passenger;
+        if (!isBlank(p.getNationality())) removeFrom(nationalities, key(p.getNationality()), id);
+        if (!isBlank(p.getGender())) removeFrom(genders, key(p.getGender()), id);
+        return e;
+    }
+
+    private static void removeFrom(Map<String, Postings> lists, String key, int id) {
+        Postings p = lists.get(key);
+        if (p == null) return;
+        p.remove(id);
+        if (p.size == 0) lists.remove(key);
+    }
+
+    // --- text handling ---
+
+    private static String[] words(String s) {
+        if (isBlank(s)) return new String[0];
+        String plain = ACCENTS.matcher(Normalizer.normalize(s, Normalizer.Form.NFD)).replaceAll("");
+        return Arrays.stream(WORD_BREAK.split(plain.toLowerCase(Locale.ROOT)))
+                .filter(w -> !w.isEmpty())
+                .toArray(String[]::new);
+    }
+
+    /** Grams stored for a name: word-start prefixes of one and two letters, and every trigram. */
+    private static Set<String> nameGrams(String[] words) {
+        Set<String> out = new LinkedHashSet<>();
+        for (String w : words) {
+            out.add(" " + w.substring(0, 1));
+            if (w.length() >= 2) out.add(" " + w.substring(0, 2));
+            for (int i = 0; i + 3 <= w.length(); i++) out.add(w.substring(i, i + 3));
+        }
+        return out;
+    }
+
+    /** Grams a query word needs: its prefix gram when short, else all of its trigrams. */
+    private static List<String> queryGrams(String w) {
+        if (w.length() < 3) return List.of(" " + w);
+        List<String> out = new ArrayList<>(w.length() - 2);
+        for (int i = 0; i + 3 <= w.length(); i++) out.add(w.substring(i, i + 3));
+        return out;
+    }
+
+    private static String key(String value) {
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.isBlank();
+    }
+}
@@ -1,12 +1,34 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
+import java.util.function.Consumer;
 
 public class PassengerService {
-    private final Connection conn;
+    private static final int PAGE_SIZE = Integer.getInteger("passengers.pageSize", 20);
+
+    private static final Metrics.Timer SQL_INSERT = Metrics.timer("sql.passenger.insert");
+    private static final Metrics.Timer SQL_PAGE = Metrics.timer("sql.passenger.page");
+    private static final Metrics.Timer SQL_FIND = Metrics.timer("sql.passenger.find");
+    private static final Metrics.Timer SQL_UPDATE = Metrics.timer("sql.passenger.update");
+    private static final Metrics.Timer SQL_DELETE = Metrics.timer("sql.passenger.delete");
+    private static final Metrics.Timer SQL_EXPORT = Metrics.timer("sql.passenger.export");
+
     private final Scanner sc;
 
-    public PassengerService(Connection conn, Scanner sc) {
-        this.conn = conn;
+    /** For callers without a console (the API server); the menu methods need a Scanner. */
+    public PassengerService() {
+        this(null);
+    }
+
+    public PassengerService(Scanner sc) {
         this.sc = sc;
     }
 
@@ -25,88 +47,219 @@ public class PassengerService {
             System.out.print("Enter Nationality: ");
             String nationality = sc.nextLine().trim();
 
-            String sql = "INSERT INTO passenger(name, age, gender, nationality) VALUES (?, ?, ?, ?)";
-            try (PreparedStatement pst = conn.prepareStatement(sql)) {
-                pst.setString(1, name);
-                pst.setInt(2, age);
-                pst.setString(3, gender);
-                pst.setString(4, nationality);
-
-                int rows = pst.executeUpdate();
-                if (rows > 0) System.out.println("Passenger added successfully.");
-                else System.out.println("⚠ Passenger not added.");
-            }
+            int id = createPassenger(name, age, gender, nationality);
+            if (id > 0) System.out.println("Passenger added successfully. Passenger ID: " + id);
+            else System.out.println("⚠ Passenger not added.");
         } catch (Exception e) {
             System.out.println("Error while adding passenger: " + e.getMessage());
         }
     }
 
-    // 2) View all passengers
+    /** Insert a passenger and return the generated ID (0 if nothing was inserted). */
+    public int createPassenger(String name, int age, String gender, String nationality) throws SQLException {
+        String sql = "INSERT INTO passenger(name, age, gender, nationality) VALUES (?, ?, ?, ?)";
+        try (Connection conn = DBConnection.borrow();
+             PreparedStatement pst = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            pst.setString(1, name);
+            pst.setInt(2, age);
+            pst.setString(3, gender);
+            pst.setString(4, nationality);
+
+            long t0 = System.nanoTime();
+            int id;
+            try {
+                if (pst.executeUpdate() == 0) return 0;
+                try (ResultSet gk = pst.getGeneratedKeys()) {
+                    id = gk.next() ? gk.getInt(1) : 0;
+                }
+            } finally {
+                SQL_INSERT.record(t0);
+            }
+            if (id > 0) {
+                DBConnection.markWritten(DBConnection.passenger(id));
+                PassengerIndex.put(new Passenger(id, name, age, gender, nationality));
+            }
+            return id;
+        }
+    }
+
+    // 2) View all passengers, one page at a time
     public void viewPassengers() {
-        String sql = "SELECT passenger_id, name, age, gender, nationality FROM passenger ORDER BY passenger_id";
-        try (Statement st = conn.createStatement();
-             ResultSet rs = st.executeQuery(sql)) {
-
-            System.out.printf("%-5s %-25s %-5s %-8s %-15s%n", "ID", "Name", "Age", "Gender", "Nationality");
-            System.out.println("------------------------------------------------------------------");
-
-            while (rs.next()) {
-                System.out.printf("%-5d %-25s %-5d %-8s %-15s%n",
-                        rs.getInt("passenger_id"),
-                        rs.getString("name"),
-                        rs.getInt("age"),
-                        rs.getString("gender"),
-                        rs.getString("nationality")
-                );
+        try {
+            int afterId = 0;
+            while (true) {
+                List<Passenger> page = listPassengers(afterId, PAGE_SIZE);
+                if (page.isEmpty()) {
+                    if (afterId == 0) System.out.println("No passengers found.");
+                    return;
+                }
+
+                System.out.printf("%-5s %-25s %-5s %-8s %-15s%n", "ID", "Name", "Age", "Gender", "Nationality");
+                System.out.println("------------------------------------------------------------------");
+                for (Passenger p : page) {
+                    System.out.printf("%-5d %-25s %-5d %-8s %-15s%n",
+                            p.getPassengerId(), p.getName(), p.getAge(), p.getGender(), p.getNationality());
+                }
+
+                if (page.size() < PAGE_SIZE) return;
+                System.out.print("Enter for next page, q to stop: ");
+                if (sc.nextLine().trim().equalsIgnoreCase("q")) return;
+                afterId = page.get(page.size() - 1).getPassengerId();
             }
         } catch (SQLException e) {
             System.out.println("Error while fetching passengers: " + e.getMessage());
         }
     }
 
+    /**
+     * One page of passengers with ID greater than {@code afterId} (0 for the first page).
+     * Keyset pagination: the index seek on passenger_id makes every page cost the same,
+     * however deep into the table it is. Pass the last ID of a page to get the next one.
+     */
+    public List<Passenger> listPassengers(int afterId, int pageSize) throws SQLException {
+        String sql = "SELECT passenger_id, name, age, gender, nationality FROM passenger "
+                + "WHERE passenger_id > ? ORDER BY passenger_id LIMIT ?";
+        List<Passenger> page = new ArrayList<>(pageSize);
+        try (Connection conn = DBConnection.borrowRead();
+             PreparedStatement pst = conn.prepareStatement(sql)) {
+            pst.setInt(1, afterId);
+            pst.setInt(2, pageSize);
+            long t0 = System.nanoTime();
+            try (ResultSet rs = pst.executeQuery()) {
+                while (rs.next()) page.add(readPassenger(rs));
+            } finally {
+                SQL_PAGE.record(t0);
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Hand every passenger to {@code sink} in ID order without loading the table into memory:
+     * a forward-only, read-only statement with fetch size Integer.MIN_VALUE makes
+     * MySQL Connector/J stream rows one at a time. Returns the number of rows.
+     */
+    public long streamPassengers(Consumer<Passenger> sink) throws SQLException {
+        String sql = "SELECT passenger_id, name, age, gender, nationality FROM passenger ORDER BY passenger_id";
+        long count = 0;
+        try (Connection conn = DBConnection.borrowRead();
+             Statement st = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            st.setFetchSize(Integer.MIN_VALUE);
+            long t0 = System.nanoTime();
+            try (ResultSet rs = st.executeQuery(sql)) {
+                while (rs.next()) {
+                    sink.accept(readPassenger(rs));
+                    count++;
+                }
+            } finally {
+                SQL_EXPORT.record(t0);
+            }
+        }
+        return count;
+    }
+
+    private static Passenger readPassenger(ResultSet rs) throws SQLException {
+        return new Passenger(
+                rs.getInt("passenger_id"),
+                rs.getString("name"),
+                rs.getInt("age"),
+                rs.getString("gender"),
+                rs.getString("nationality"));
+    }
+
     // 3) Search passenger by id (reads id inside)
     public void searchPassenger() {
         try {
             System.out.print("Enter Passenger ID: ");
             int id = Integer.parseInt(sc.nextLine().trim());
 
-            String sql = "SELECT passenger_id, name, age, gender, nationality FROM passenger WHERE passenger_id = ?";
-            try (PreparedStatement pst = conn.prepareStatement(sql)) {
-                pst.setInt(1, id);
-                try (ResultSet rs = pst.executeQuery()) {
-                    if (rs.next()) {
-                        System.out.println("\nPassenger found:");
-                        System.out.println("ID: " + rs.getInt("passenger_id"));
-                        System.out.println("Name: " + rs.getString("name"));
-                        System.out.println("Age: " + rs.getInt("age"));
-                        System.out.println("Gender: " + rs.getString("gender"));
-                        System.out.println("Nationality: " + rs.getString("nationality"));
-                    } else {
-                        System.out.println("Passenger not found with ID: " + id);
-                    }
-                }
+            Passenger p = findPassenger(id);
+            if (p != null) {
+                System.out.println("\nPassenger found:");
+                System.out.println("ID: " + p.getPassengerId());
+                System.out.println("Name: " + p.getName());
+                System.out.println("Age: " + p.getAge());
+                System.out.println("Gender: " + p.getGender());
+                System.out.println("Nationality: " + p.getNationality());
+            } else {
+                System.out.println("Passenger not found with ID: " + id);
             }
         } catch (Exception e) {
             System.out.println("Error while searching passenger: " + e.getMessage());
         }
     }
 
+    /** Passenger by ID, or null if there is none. */
+    public Passenger findPassenger(int id) throws SQLException {
+        String sql = "SELECT passenger_id, name, age, gender, nationality FROM passenger WHERE passenger_id = ?";
+        try (Connection conn = DBConnection.borrowRead(DBConnection.passenger(id));
+             PreparedStatement pst = conn.prepareStatement(sql)) {
+            pst.setInt(1, id);
+            long t0 = System.nanoTime();
+            try (ResultSet rs = pst.executeQuery()) {
+                return rs.next() ? readPassenger(rs) : null;
+            } finally {
+                SQL_FIND.record(t0);
+            }
+        }
+    }
+
+    // 3b) Search passengers by part of the name, optionally filtered by nationality
+    public void searchPassengersByName() {
+        try {
+            System.out.print("Name contains (Enter for any): ");
+            String query = sc.nextLine().trim();
+            System.out.print("Nationality (Enter for any): ");
+            String nationality = sc.nextLine().trim();
+
+            int offset = 0;
+            while (true) {
+                PassengerIndex.Page page = searchPassengers(query, nationality, null, offset, PAGE_SIZE);
+                if (page.getItems().isEmpty()) {
+                    if (offset == 0) System.out.println("No matching passengers.");
+                    return;
+                }
+
+                System.out.printf("%d matches, showing %d-%d%n", page.getTotal(), offset + 1, offset + page.getItems().size());
+                System.out.printf("%-5s %-25s %-5s %-8s %-15s%n", "ID", "Name", "Age", "Gender", "Nationality");
+                System.out.println("------------------------------------------------------------------");
+                for (Passenger p : page.getItems()) {
+                    System.out.printf("%-5d %-25s %-5d %-8s %-15s%n",
+                            p.getPassengerId(), p.getName(), p.getAge(), p.getGender(), p.getNationality());
+                }
+
+                offset += page.getItems().size();
+                if (offset >= page.getTotal()) return;
+                System.out.print("Enter for next page, q to stop: ");
+                if (sc.nextLine().trim().equalsIgnoreCase("q")) return;
+            }
+        } catch (Exception e) {
+            System.out.println("Error while searching passengers: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Ranked name search served from {@link PassengerIndex}, which is loaded on first use
+     * if startup could not load it.
+     */
+    public PassengerIndex.Page searchPassengers(String query, String nationality, String gender, int offset, int limit) throws SQLException {
+        if (!PassengerIndex.isLoaded()) {
+            try (Connection conn = DBConnection.borrowRead()) {
+                PassengerIndex.load(conn);
+            }
+        }
+        return PassengerIndex.search(query, nationality, gender, offset, limit);
+    }
+
     // 4) Update passenger (reads id & details inside)
     public void updatePassenger() {
         try {
             System.out.print("Enter Passenger ID to update: ");
             int id = Integer.parseInt(sc.nextLine().trim());
 
-            // Check exists
-            String check = "SELECT passenger_id FROM passenger WHERE passenger_id = ?";
-            try (PreparedStatement pcheck = conn.prepareStatement(check)) {
-                pcheck.setInt(1, id);
-                try (ResultSet rs = pcheck.executeQuery()) {
-                    if (!rs.next()) {
-                        System.out.println("No passenger with ID " + id);
-                        return;
-                    }
-                }
+            if (findPassenger(id) == null) {
+                System.out.println("No passenger with ID " + id);
+                return;
             }
 
             System.out.print("Enter New Name: ");
@@ -114,36 +267,122 @@ public class PassengerService {
             System.out.print("Enter New Age: ");
             int newAge = Integer.parseInt(sc.nextLine().trim());
 
-            String sql = "UPDATE passenger SET name = ?, age = ? WHERE passenger_id = ?";
-            try (PreparedStatement pst = conn.prepareStatement(sql)) {
-                pst.setString(1, newName);
-                pst.setInt(2, newAge);
-                pst.setInt(3, id);
-
-                int rows = pst.executeUpdate();
-                if (rows > 0) System.out.println("Passenger updated successfully.");
-                else System.out.println("⚠ No changes made.");
-            }
+            if (updatePassenger(id, newName, newAge)) System.out.println("Passenger updated successfully.");
+            else System.out.println("⚠ No changes made.");
         } catch (Exception e) {
             System.out.println("Error while updating passenger: " + e.getMessage());
         }
     }
 
+    /** Change name and age. Returns false if no passenger has that ID. */
+    public boolean updatePassenger(int id, String name, int age) throws SQLException {
+        String sql = "UPDATE passenger SET name = ?, age = ? WHERE passenger_id = ?";
+        try (Connection conn = DBConnection.borrow();
+             PreparedStatement pst = conn.prepareStatement(sql)) {
+            pst.setString(1, name);
+            pst.setInt(2, age);
+            pst.setInt(3, id);
+            long t0 = System.nanoTime();
+            boolean updated;
+            try {
+                updated = pst.executeUpdate() > 0;
+            } finally {
+                SQL_UPDATE.record(t0);
+            }
+            if (updated) {
+                DBConnection.markWritten(DBConnection.passenger(id));
+                PassengerIndex.update(id, name, age);
+            }
+            return updated;
+        }
+    }
+
     // 5) Delete passenger (reads id inside)
     public void deletePassenger() {
         try {
             System.out.print("Enter Passenger ID to delete: ");
             int id = Integer.parseInt(sc.nextLine().trim());
 
-            String sql = "DELETE FROM passenger WHERE passenger_id = ?";
-            try (PreparedStatement pst = conn.prepareStatement(sql)) {
-                pst.setInt(1, id);
-                int rows = pst.executeUpdate();
-                if (rows > 0) System.out.println("🗑 Passenger deleted successfully.");
-                else System.out.println("No passenger found with ID: " + id);
-            }
+            if (deletePassenger(id)) System.out.println("🗑 Passenger deleted successfully.");
+            else System.out.println("No passenger found with ID: " + id);
         } catch (Exception e) {
             System.out.println("Error while deleting passenger: " + e.getMessage());
         }
     }
+
+    /** Returns false if no passenger has that ID. */
+    public boolean deletePassenger(int id) throws SQLException {
+        try (Connection conn = DBConnection.borrow();
+             PreparedStatement pst = conn.prepareStatement("DELETE FROM passenger WHERE passenger_id = ?")) {
+            pst.setInt(1, id);
+            long t0 = System.nanoTime();
+            boolean deleted;
+            try {
+                deleted = pst.executeUpdate() > 0;
+            } finally {
+                SQL_DELETE.record(t0);
+            }
+            if (deleted) {
+                DBConnection.markWritten(DBConnection.passenger(id));
+                PassengerIndex.remove(id);
+            }
+            return deleted;
+        }
+    }
+
+    // 6) Bulk import from a partner manifest (CSV: name,age,gender,nationality)
+    public void importPassengers() {
+        try {
+            System.out.print("Enter CSV file path: ");
+            Path csv = Paths.get(sc.nextLine().trim());
+
+            System.out.print("Batch size (Enter for " + PassengerImporter.DEFAULT_BATCH_SIZE + "): ");
+            String bs = sc.nextLine().trim();
+            int batchSize = bs.isEmpty() ? PassengerImporter.DEFAULT_BATCH_SIZE : Integer.parseInt(bs);
+
+            Path report = Paths.get(csv + ".report.csv");
+            PassengerImporter.Result result = PassengerImporter.importCsv(csv, report, batchSize);
+            System.out.println("Import finished: " + result);
+            System.out.println("Per-row report: " + report);
+        } catch (Exception e) {
+            System.out.println("Error while importing passengers: " + e.getMessage());
+        }
+    }
+
+    // 7) Export every passenger to CSV (streams, does not load the table)
+    public void exportPassengers() {
+        try {
+            System.out.print("Enter output CSV path: ");
+            Path out = Paths.get(sc.nextLine().trim());
+
+            long start = System.nanoTime();
+            long rows;
+            try (BufferedWriter w = Files.newBufferedWriter(out, StandardCharsets.UTF_8)) {
+                w.write("passenger_id,name,age,gender,nationality");
+                w.newLine();
+                rows = streamPassengers(p -> {
+                    try {
+                        w.write(p.getPassengerId() + "," + csv(p.getName()) + "," + p.getAge() + ","
+                                + csv(p.getGender()) + "," + csv(p.getNationality()));
+                        w.newLine();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+            System.out.printf("Exported %d passengers to %s in %.2f s%n", rows, out, (System.nanoTime() - start) / 1e9);
+        } catch (Exception e) {
+            System.out.println("Error while exporting passengers: " + e.getMessage());
+        }
+    }
+
+    /** One CSV field, quoted (RFC 4180) when it holds a comma, a quote or a line break. */
+    static String csv(String value) {
+        if (value == null) return "";
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\r' || c == '\n') return '"' + value.replace("\"", "\"\"") + '"';
+        }
+        return value;
+    }
 }
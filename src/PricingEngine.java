@@ -0,0 +1,236 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.MonthDay;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Cabin prices per (cruise, cabin class), precomputed so a quote is one map read.
+ *
+ *   price = base(class) x season(departure) x load(occupancy of the class) x early bird
+ *
+ * Each cruise has an immutable price entry; a recompute builds a new entry and swaps it
+ * in, so quoting threads never lock or see a half-updated table. A booking recomputes
+ * only its own cruise, and the entry is only replaced when a price actually moved
+ * (occupancy crossing a load tier). Everything is recomputed every
+ * pricing.recomputeMs (1 h) so date-based rules (early bird) age correctly, and when
+ * the rules are replaced.
+ *
+ * Rules come from system properties, see {@link Rules#fromProperties()}.
+ */
+public class PricingEngine {
+
+    private static final Metrics.Timer RECOMPUTE = Metrics.timer("pricing.recompute");
+    private static final Metrics.Counter REPRICED = Metrics.counter("pricing.repriced");
+
+    private static final ConcurrentHashMap<Integer, CruisePrices> table = new ConcurrentHashMap<>();
+    private static final AtomicReference<Rules> rules = new AtomicReference<>(Rules.fromProperties());
+    private static volatile ScheduledExecutorService recomputer;
+
+    /** Immutable once published. */
+    private record CruisePrices(double[] byClass, LocalDate asOf) {}
+
+    /**
+     * Pricing rules. Properties (defaults in brackets):
+     *
+     *   pricing.base.ECONOMY / STANDARD / LUXURY   base fare [15000 / 25000 / 45000]
+     *   pricing.earlyBirdDays                      days before departure that count as early [120]
+     *   pricing.earlyBirdDiscount                  discount for early bookings [0.10]
+     *   pricing.loadTiers     occupancy:multiplier, highest reached applies [0.70:1.10,0.85:1.25,0.95:1.40]
+     *   pricing.seasons       MM-dd..MM-dd:multiplier on departure, may wrap the year
+     *                         [06-01..08-31:1.15,12-15..01-05:1.25]
+     */
+    public static final class Rules {
+        private final double[] base;
+        private final int earlyBirdDays;
+        private final double earlyBirdDiscount;
+        private final double[] loadThresholds;
+        private final double[] loadMultipliers;
+        private final List<Season> seasons;
+
+        private record Season(MonthDay from, MonthDay to, double multiplier) {
+            boolean contains(MonthDay d) {
+                return from.isAfter(to)
+                        ? !d.isBefore(from) || !d.isAfter(to) // wraps the new year
+                        : !d.isBefore(from) && !d.isAfter(to);
+            }
+        }
+
+        Rules(double[] base, int earlyBirdDays, double earlyBirdDiscount, String loadTiers, String seasons) {
+            if (base.length != CabinInventory.CABIN_CLASSES.length) throw new IllegalArgumentException("One base price per cabin class");
+            this.base = base.clone();
+            this.earlyBirdDays = earlyBirdDays;
+            this.earlyBirdDiscount = earlyBirdDiscount;
+
+            List<double[]> tiers = new ArrayList<>();
+            for (String t : split(loadTiers)) {
+                String[] kv = t.split(":");
+                tiers.add(new double[]{Double.parseDouble(kv[0].trim()), Double.parseDouble(kv[1].trim())});
+            }
+            tiers.sort((a, b) -> Double.compare(a[0], b[0]));
+            this.loadThresholds = tiers.stream().mapToDouble(t -> t[0]).toArray();
+            this.loadMultipliers = tiers.stream().mapToDouble(t -> t[1]).toArray();
+
+            List<Season> s = new ArrayList<>();
+            for (String t : split(seasons)) {
+                String[] kv = t.split(":");
+                String[] range = kv[0].split("\\.\\.");
+                s.add(new Season(MonthDay.parse("--" + range[0].trim()), MonthDay.parse("--" + range[1].trim()),
+                        Double.parseDouble(kv[1].trim())));
+            }
+            this.seasons = List.copyOf(s);
+        }
+
+        public static Rules fromProperties() {
+            double[] base = {
+                    Double.parseDouble(System.getProperty("pricing.base.ECONOMY", "15000")),
+                    Double.parseDouble(System.getProperty("pricing.base.STANDARD", "25000")),
+                    Double.parseDouble(System.getProperty("pricing.base.LUXURY", "45000"))};
+            return new Rules(base,
+                    Integer.getInteger("pricing.earlyBirdDays", 120),
+                    Double.parseDouble(System.getProperty("pricing.earlyBirdDiscount", "0.10")),
+                    System.getProperty("pricing.loadTiers", "0.70:1.10,0.85:1.25,0.95:1.40"),
+                    System.getProperty("pricing.seasons", "06-01..08-31:1.15,12-15..01-05:1.25"));
+        }
+
+        double price(int classIdx, LocalDate departure, double load, LocalDate today) {
+            double p = base[classIdx];
+            if (departure != null) {
+                MonthDay md = MonthDay.from(departure);
+                for (Season s : seasons) {
+                    if (s.contains(md)) {
+                        p *= s.multiplier;
+                        break;
+                    }
+                }
+                if (ChronoUnit.DAYS.between(today, departure) >= earlyBirdDays) p *= 1 - earlyBirdDiscount;
+            }
+            for (int i = loadThresholds.length - 1; i >= 0; i--) {
+                if (load >= loadThresholds[i]) {
+                    p *= loadMultipliers[i];
+                    break;
+                }
+            }
+            return Math.round(p); // whole rupees
+        }
+
+        private static List<String> split(String list) {
+            List<String> out = new ArrayList<>();
+            if (list == null) return out;
+            for (String s : list.split(",")) {
+                if (!s.isBlank()) out.add(s.trim());
+            }
+            return out;
+        }
+    }
+
+    /**
+     * Current price of a cabin class on a cruise, 0 for an unknown class. Computed and
+     * published on the first quote for a cruise (borrowing a connection in case the
+     * cruise's route or inventory is not loaded yet); after that a lock-free read.
+     * IllegalArgumentException for a cruise that is not in the schedule.
+     */
+    public static double quote(int cruiseId, String cabinClass) throws SQLException {
+        int idx = CabinInventory.classIndex(cabinClass);
+        if (idx < 0) return 0;
+        return prices(cruiseId).byClass[idx];
+    }
+
+    /** Prices of every class on a cruise, in CabinInventory.CABIN_CLASSES order. */
+    public static double[] quoteAll(int cruiseId) throws SQLException {
+        return prices(cruiseId).byClass.clone();
+    }
+
+    /**
+     * Reprice one cruise after its occupancy changed (a booking, a cancellation). Called
+     * after the change committed, so it never throws: a failure only leaves the old price
+     * until the next recompute, and must not make the caller think the booking failed.
+     */
+    public static void occupancyChanged(Connection conn, int cruiseId) {
+        if (!table.containsKey(cruiseId)) return;
+        try {
+            recompute(conn, cruiseId);
+        } catch (SQLException | RuntimeException e) {
+            System.out.println("Could not reprice cruise " + cruiseId + ", keeping the current prices: " + e.getMessage());
+        }
+    }
+
+    /** Replace the rules and reprice everything. */
+    public static void setRules(Connection conn, Rules r) throws SQLException {
+        rules.set(r);
+        recomputeAll(conn);
+    }
+
+    /** Reprice every cruise that has been quoted. */
+    public static void recomputeAll(Connection conn) throws SQLException {
+        for (Integer cruiseId : table.keySet()) recompute(conn, cruiseId);
+    }
+
+    /** Reprice everything every {@code periodMs} in the background; no-op if periodMs <= 0. */
+    public static synchronized void startRecompute(long periodMs) {
+        if (periodMs <= 0 || recomputer != null) return;
+        recomputer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "pricing-recompute");
+            t.setDaemon(true);
+            return t;
+        });
+        recomputer.scheduleWithFixedDelay(() -> {
+            try (Connection conn = DBConnection.borrow()) {
+                recomputeAll(conn);
+            } catch (Exception e) {
+                System.out.println("Could not recompute prices, keeping the current ones: " + e.getMessage());
+            }
+        }, periodMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    public static synchronized void stopRecompute() {
+        if (recomputer != null) {
+            recomputer.shutdownNow();
+            recomputer = null;
+        }
+    }
+
+    public static String stats() {
+        return String.format("pricing[cruises=%d repriced=%d]", table.size(), REPRICED.getCount());
+    }
+
+    private static CruisePrices prices(int cruiseId) throws SQLException {
+        CruisePrices p = table.get(cruiseId);
+        if (p != null) return p;
+        // only cruises in the schedule get priced, so made-up IDs fill no caches here or in
+        // ItineraryIndex and CabinInventory
+        if (ScheduleService.get(cruiseId) == null) throw new IllegalArgumentException("Cruise not found: " + cruiseId);
+        try (Connection conn = DBConnection.borrow()) {
+            return recompute(conn, cruiseId);
+        }
+    }
+
+    private static CruisePrices recompute(Connection conn, int cruiseId) throws SQLException {
+        long t0 = System.nanoTime();
+        Rules r = rules.get();
+        LocalDate today = LocalDate.now();
+        ItineraryIndex.Itinerary route = ItineraryIndex.get(conn, cruiseId);
+        LocalDate departure = route.getFirstDeparture() != null ? route.getFirstDeparture().toLocalDate() : null;
+
+        double[] prices = new double[CabinInventory.CABIN_CLASSES.length];
+        for (int i = 0; i < prices.length; i++) {
+            prices[i] = r.price(i, departure, CabinInventory.loadFactor(conn, cruiseId, i), today);
+        }
+        CruisePrices fresh = new CruisePrices(prices, today);
+        // keep the published entry if nothing moved. Two repricers racing on one cruise can
+        // leave the slightly older result; the next booking or periodic pass corrects it.
+        CruisePrices published = table.compute(cruiseId, (k, old) ->
+                old != null && old.asOf.equals(today) && Arrays.equals(old.byClass, prices) ? old : fresh);
+        if (published == fresh) REPRICED.increment();
+        RECOMPUTE.record(t0);
+        return published;
+    }
+}
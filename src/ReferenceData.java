@@ -0,0 +1,133 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory cache of rarely changing lookup data (port and ship names), preloaded at
+ * startup so tickets and the schedule don't query the port/ship tables per row.
+ * Entries expire after a TTL and can be invalidated explicitly after an edit.
+ */
+public class ReferenceData {
+
+    private static final int MAX_ENTRIES = Integer.getInteger("refdata.maxEntries", 10_000);
+    private static final long TTL_MS = Long.getLong("refdata.ttlMs", 15 * 60_000L);
+
+    private static final Cache<Integer, String> PORTS = new Cache<>("ports", MAX_ENTRIES, TTL_MS);
+    private static final Cache<Integer, String> SHIPS = new Cache<>("ships", MAX_ENTRIES, TTL_MS);
+
+    public static String portName(Connection conn, int portId) throws SQLException {
+        if (portId <= 0) return "Unknown";
+        return PORTS.get(portId, id -> lookupName(conn, "SELECT name FROM port WHERE port_id = ?", id));
+    }
+
+    public static String shipName(Connection conn, int shipId) throws SQLException {
+        if (shipId <= 0) return "Unknown";
+        return SHIPS.get(shipId, id -> lookupName(conn, "SELECT name FROM ship WHERE ship_id = ?", id));
+    }
+
+    /** Load every port and ship in two queries. */
+    public static void preload(Connection conn) throws SQLException {
+        loadAll(conn, "SELECT port_id, name FROM port", PORTS);
+        loadAll(conn, "SELECT ship_id, name FROM ship", SHIPS);
+    }
+
+    public static void invalidatePort(int portId) { PORTS.invalidate(portId); }
+    public static void invalidateShip(int shipId) { SHIPS.invalidate(shipId); }
+
+    public static void invalidateAll() {
+        PORTS.invalidateAll();
+        SHIPS.invalidateAll();
+    }
+
+    public static String stats() {
+        return PORTS.stats() + " " + SHIPS.stats();
+    }
+
+    private static String lookupName(Connection conn, String sql, int id) throws SQLException {
+        try (PreparedStatement pst = conn.prepareStatement(sql)) {
+            pst.setInt(1, id);
+            try (ResultSet rs = pst.executeQuery()) {
+                return rs.next() ? rs.getString(1) : "Unknown";
+            }
+        }
+    }
+
+    private static void loadAll(Connection conn, String sql, Cache<Integer, String> cache) throws SQLException {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery(sql)) {
+            while (rs.next()) cache.put(rs.getInt(1), rs.getString(2));
+        }
+    }
+
+    interface Loader<K, V> {
+        V load(K key) throws SQLException;
+    }
+
+    /**
+     * Small LRU map with per-entry expiry and hit/miss counters. Loads happen outside
+     * the lock, so a slow query never blocks readers of other keys.
+     */
+    static final class Cache<K, V> {
+        private final String name;
+        private final long ttlMs;
+        private final Map<K, Entry<V>> map;
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+
+        private record Entry<V>(V value, long expiresAt) {}
+
+        Cache(String name, int maxEntries, long ttlMs) {
+            this.name = name;
+            this.ttlMs = ttlMs;
+            this.map = new LinkedHashMap<>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                    if (size() <= maxEntries) return false;
+                    evictions.increment();
+                    return true;
+                }
+            };
+        }
+
+        V get(K key, Loader<K, V> loader) throws SQLException {
+            synchronized (this) {
+                Entry<V> e = map.get(key);
+                if (e != null && e.expiresAt > System.currentTimeMillis()) {
+                    hits.increment();
+                    return e.value;
+                }
+            }
+            misses.increment();
+            V value = loader.load(key);
+            put(key, value);
+            return value;
+        }
+
+        synchronized void put(K key, V value) {
+            map.put(key, new Entry<>(value, System.currentTimeMillis() + ttlMs));
+        }
+
+        synchronized void invalidate(K key) {
+            map.remove(key);
+        }
+
+        synchronized void invalidateAll() {
+            map.clear();
+        }
+
+        String stats() {
+            int size;
+            synchronized (this) {
+                size = map.size();
+            }
+            return String.format("%s[size=%d hits=%d misses=%d evictions=%d]",
+                    name, size, hits.sum(), misses.sum(), evictions.sum());
+        }
+    }
+}
@@ -0,0 +1,243 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Cruise schedule served from memory: an immutable snapshot of every cruise with its
+ * route and the cabins left per class, rebuilt in the background and swapped in
+ * atomically, so browsing the schedule never queries the database.
+ *
+ * A rebuild is two queries (cruise, cabin_inventory); routes, ports and ships come from
+ * ItineraryIndex and ReferenceData. Availability is as of the last rebuild; the booking
+ * path does its own live check, so a stale count can only make a sold-out class show
+ * a few cabins for up to one refresh period.
+ *
+ * Without the background refresh (console mode) a snapshot older than
+ * schedule.refreshMs (30 s) is rebuilt on the next read.
+ */
+public class ScheduleService {
+
+    static final long REFRESH_MS = Long.getLong("schedule.refreshMs", 30_000);
+    // every class without a capacity limit, for cruises with no cabin_inventory rows
+    private static final int[] UNLIMITED = new int[CabinInventory.CABIN_CLASSES.length];
+    static {
+        Arrays.fill(UNLIMITED, -1);
+    }
+
+    private static final Metrics.Timer REFRESH = Metrics.timer("schedule.refresh");
+    private static final Metrics.Timer QUERY = Metrics.timer("schedule.query");
+
+    private static final AtomicReference<Snapshot> current = new AtomicReference<>();
+    private static volatile ScheduledExecutorService refresher;
+
+    public enum Sort { START_DATE, END_DATE, SHIP, DEPARTURE_PORT, AVAILABILITY, CRUISE_ID }
+
+    /** One cruise in the schedule with its availability. */
+    public static final class Entry {
+        private final Cruise cruise;
+        private final int[] remaining;
+        private final int totalRemaining;
+
+        Entry(Cruise cruise, int[] remaining) {
+            this.cruise = cruise;
+            this.remaining = remaining;
+            int total = 0;
+            for (int r : remaining) {
+                if (r < 0) {
+                    total = -1;
+                    break;
+                }
+                total += r;
+            }
+            this.totalRemaining = total;
+        }
+
+        public Cruise getCruise() { return cruise; }
+
+        /** Cabins left in a class, -1 if the class is not capacity-limited, 0 for an unknown class. */
+        public int getRemaining(String cabinClass) {
+            int idx = CabinInventory.classIndex(cabinClass);
+            return idx < 0 ? 0 : remaining[idx];
+        }
+
+        /** Cabins left over all classes, -1 if any class is not capacity-limited. */
+        public int getTotalRemaining() { return totalRemaining; }
+    }
+
+    /** Conditions on a schedule query; unset fields match everything. */
+    public static final class Filter {
+        private LocalDate from;
+        private LocalDate to;
+        private String status;
+        private int shipId;
+        private String departurePort;
+        private String cabinClass;
+
+        /** Sailing on or after this date. */
+        public Filter from(LocalDate date) { this.from = date; return this; }
+        /** Sailing on or before this date. */
+        public Filter to(LocalDate date) { this.to = date; return this; }
+        public Filter status(String status) { this.status = blankToNull(status); return this; }
+        public Filter shipId(int shipId) { this.shipId = shipId; return this; }
+        /** Port name of the first stop, case-insensitive. */
+        public Filter departurePort(String port) { this.departurePort = blankToNull(port); return this; }
+        /** Only cruises with at least one cabin left in this class. */
+        public Filter availableIn(String cabinClass) { this.cabinClass = blankToNull(cabinClass); return this; }
+
+        boolean matches(Entry e) {
+            Cruise c = e.cruise;
+            if (to != null && (c.getStartDate() == null || c.getStartDate().isAfter(to))) return false;
+            if (status != null && !status.equalsIgnoreCase(c.getStatus())) return false;
+            if (shipId > 0 && c.getShipId() != shipId) return false;
+            if (departurePort != null && !departurePort.equalsIgnoreCase(c.getStartPort())) return false;
+            if (cabinClass != null && e.getRemaining(cabinClass) == 0) return false;
+            return true;
+        }
+
+        private static String blankToNull(String s) {
+            return s == null || s.isBlank() ? null : s.trim();
+        }
+    }
+
+    /**
+     * Every cruise ordered by start date, the first {@code dated} of them with a start
+     * date, plus a lookup by cruise ID and when it was built.
+     */
+    private record Snapshot(Entry[] byStartDate, LocalDate[] startDates, int dated, Map<Integer, Entry> byId, long builtAtMillis) {}
+
+    private static final Comparator<Entry> BY_START = Comparator
+            .comparing((Entry e) -> e.cruise.getStartDate(), Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparingInt(e -> e.cruise.getCruiseId());
+
+    /**
+     * Cruises matching {@code filter}, sorted by {@code sort} (cruise ID breaks ties).
+     * A date range starts with a binary search on the start-date ordered snapshot.
+     */
+    public static List<Entry> query(Filter filter, Sort sort, boolean descending) throws SQLException {
+        Snapshot s = snapshot();
+        long t0 = System.nanoTime();
+        Filter f = filter != null ? filter : new Filter();
+
+        int start = 0;
+        if (f.from != null) {
+            int at = Arrays.binarySearch(s.startDates, 0, s.dated, f.from);
+            if (at < 0) {
+                start = -at - 1;
+            } else {
+                while (at > 0 && f.from.equals(s.startDates[at - 1])) at--; // first of equal dates
+                start = at;
+            }
+        }
+        List<Entry> out = new ArrayList<>();
+        int end = f.from != null || f.to != null ? s.dated : s.byStartDate.length;
+        for (int i = start; i < end; i++) {
+            Entry e = s.byStartDate[i];
+            if (f.to != null && e.cruise.getStartDate().isAfter(f.to)) break;
+            if (f.matches(e)) out.add(e);
+        }
+
+        Comparator<Entry> order = comparator(sort == null ? Sort.START_DATE : sort);
+        if (descending) order = order.reversed();
+        if ((sort != null && sort != Sort.START_DATE) || descending) out.sort(order);
+        QUERY.record(t0);
+        return Collections.unmodifiableList(out);
+    }
+
+    /** The cruise's schedule entry, or null if it is not in the snapshot. */
+    public static Entry get(int cruiseId) throws SQLException {
+        return snapshot().byId.get(cruiseId);
+    }
+
+    /** Rebuild the snapshot now and swap it in. */
+    public static void refresh(Connection conn) throws SQLException {
+        long t0 = System.nanoTime();
+        // read only: reloading the booking counters here would race bookings in flight
+        Map<Integer, int[]> available = CabinInventory.availability(conn);
+        List<Cruise> cruises = CruiseService.listCruises(conn);
+        Entry[] entries = new Entry[cruises.size()];
+        for (int i = 0; i < entries.length; i++) {
+            Cruise c = cruises.get(i);
+            entries[i] = new Entry(c, available.getOrDefault(c.getCruiseId(), UNLIMITED));
+        }
+        Arrays.sort(entries, BY_START);
+        LocalDate[] dates = new LocalDate[entries.length];
+        Map<Integer, Entry> byId = new HashMap<>(entries.length * 2);
+        int dated = 0;
+        for (int i = 0; i < entries.length; i++) {
+            dates[i] = entries[i].cruise.getStartDate();
+            if (dates[i] != null) dated = i + 1;
+            byId.put(entries[i].cruise.getCruiseId(), entries[i]);
+        }
+        current.set(new Snapshot(entries, dates, dated, Collections.unmodifiableMap(byId), System.currentTimeMillis()));
+        REFRESH.record(t0);
+    }
+
+    /** Rebuild every {@code periodMs} in the background; no-op if periodMs <= 0. */
+    public static synchronized void startRefresh(long periodMs) {
+        if (periodMs <= 0 || refresher != null) return;
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "schedule-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+        refresher.scheduleWithFixedDelay(() -> {
+            try (Connection conn = DBConnection.borrow()) {
+                refresh(conn);
+            } catch (Exception e) {
+                System.out.println("Could not refresh the schedule, keeping the previous snapshot: " + e.getMessage());
+            }
+        }, periodMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    public static synchronized void stopRefresh() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+    }
+
+    public static String stats() {
+        Snapshot s = current.get();
+        if (s == null) return "schedule[not loaded]";
+        return String.format("schedule[cruises=%d ageMs=%d]", s.byStartDate.length, System.currentTimeMillis() - s.builtAtMillis);
+    }
+
+    private static Snapshot snapshot() throws SQLException {
+        Snapshot s = current.get();
+        if (s != null && (refresher != null || System.currentTimeMillis() - s.builtAtMillis < REFRESH_MS)) return s;
+        synchronized (ScheduleService.class) {
+            s = current.get();
+            if (s == null || (refresher == null && System.currentTimeMillis() - s.builtAtMillis >= REFRESH_MS)) {
+                try (Connection conn = DBConnection.borrow()) {
+                    refresh(conn);
+                }
+                s = current.get();
+            }
+            return s;
+        }
+    }
+
+    private static Comparator<Entry> comparator(Sort sort) {
+        Comparator<Entry> byId = Comparator.comparingInt(e -> e.cruise.getCruiseId());
+        return switch (sort) {
+            case START_DATE -> BY_START;
+            case END_DATE -> Comparator.comparing((Entry e) -> e.cruise.getEndDate(), Comparator.nullsLast(Comparator.naturalOrder())).thenComparing(byId);
+            case SHIP -> Comparator.comparing((Entry e) -> e.cruise.getShipName(), Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER)).thenComparing(byId);
+            case DEPARTURE_PORT -> Comparator.comparing((Entry e) -> e.cruise.getStartPort(), Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER)).thenComparing(byId);
+            // unlimited (-1) counts as the most available
+            case AVAILABILITY -> Comparator.comparingLong((Entry e) -> e.totalRemaining < 0 ? Long.MAX_VALUE : e.totalRemaining).reversed().thenComparing(byId);
+            case CRUISE_ID -> byId;
+        };
+    }
+}
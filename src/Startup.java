@@ -0,0 +1,146 @@
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * How the process starts, and how long it took to become useful. Timings run from JVM
+ * start (not from main), so class loading and JIT warm-up are included.
+ *
+ * -Dstartup.tickets decides when the ticket stack (PDFBox, the template and fonts, ZXing,
+ * the signing key, the ticket store) is loaded:
+ *   lazy        on the first ticket; console default, most console runs never render one
+ *   background  on a daemon thread while the rest starts; server default
+ *   eager       before the menu or the API is available
+ * -Dstartup.caches does the same for the lookup caches (ports and ships, routes, ticket
+ * revocations, the passenger search index, the schedule): lazy (console default) loads
+ * each on its first use, eager (server default) before requests are taken.
+ * -Dstartup.headless (on by default in server mode) runs AWT headless, tickets are then
+ * saved without opening a PDF viewer.
+ */
+public class Startup {
+
+    public enum Init { LAZY, BACKGROUND, EAGER }
+
+    private static final long JVM_START_MS = ManagementFactory.getRuntimeMXBean().getStartTime();
+
+    private static final Metrics.Timer READY = Metrics.timer("startup.ready");
+    private static final Metrics.Timer FIRST_BOOKING = Metrics.timer("startup.firstBooking");
+    private static final Metrics.Timer FIRST_TICKET = Metrics.timer("startup.firstTicket");
+    private static final Metrics.Timer TICKET_WARMUP = Metrics.timer("startup.ticketWarmup");
+    private static final Metrics.Timer CACHE_WARMUP = Metrics.timer("startup.cacheWarmup");
+
+    private static final AtomicLong readyMs = new AtomicLong(-1);
+    private static final AtomicLong firstBookingMs = new AtomicLong(-1);
+    private static final AtomicLong firstTicketMs = new AtomicLong(-1);
+    private static volatile long ticketWarmupMs = -1;
+    private static volatile long cacheWarmupMs = -1;
+    private static Init ticketInit = Init.LAZY;
+    private static Init cacheInit = Init.LAZY;
+
+    /** Apply the startup settings. Call first in main, before anything touches AWT. */
+    public static void configure(boolean server) {
+        ticketInit = mode("startup.tickets", server ? Init.BACKGROUND : Init.LAZY);
+        cacheInit = mode("startup.caches", server ? Init.EAGER : Init.LAZY);
+        boolean headless = Boolean.parseBoolean(System.getProperty("startup.headless", String.valueOf(server)));
+        // an explicit -Djava.awt.headless wins
+        if (headless && System.getProperty("java.awt.headless") == null) System.setProperty("java.awt.headless", "true");
+    }
+
+    private static Init mode(String property, Init fallback) {
+        String mode = System.getProperty(property, fallback.name());
+        try {
+            return Init.valueOf(mode.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.out.println("Unknown -D" + property + "=" + mode + " (use lazy, background or eager), using "
+                    + fallback.name().toLowerCase());
+            return fallback;
+        }
+    }
+
+    /** Fill the lookup caches now, in the background, or leave them to their first use, as configured. */
+    public static void initCaches() {
+        switch (cacheInit) {
+            case LAZY -> {}
+            case BACKGROUND -> {
+                Thread t = new Thread(Startup::warmCaches, "cache-warmup");
+                t.setDaemon(true);
+                t.start();
+            }
+            case EAGER -> warmCaches();
+        }
+    }
+
+    private static void warmCaches() {
+        long t0 = System.nanoTime();
+        try (Connection conn = DBConnection.borrow()) {
+            ReferenceData.preload(conn);
+            ItineraryIndex.load(conn);
+            TicketVerifier.loadRevocations(conn);
+            PassengerIndex.load(conn);
+            ScheduleService.refresh(conn);
+            CACHE_WARMUP.record(t0);
+            cacheWarmupMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
+        } catch (SQLException e) {
+            // each cache loads itself on first use
+            System.out.println("Could not preload reference data: " + e.getMessage());
+        }
+    }
+
+    /** Load the ticket stack now, in the background, or not at all, as configured. */
+    public static void initTickets() {
+        switch (ticketInit) {
+            case LAZY -> {}
+            case BACKGROUND -> {
+                Thread t = new Thread(Startup::warmTickets, "ticket-warmup");
+                t.setDaemon(true);
+                t.start();
+            }
+            case EAGER -> warmTickets();
+        }
+    }
+
+    private static void warmTickets() {
+        long t0 = System.nanoTime();
+        try {
+            TicketGenerator.warmUp();
+            TICKET_WARMUP.record(t0);
+            ticketWarmupMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
+        } catch (Exception e) {
+            // the first real ticket tries again and reports the problem to its caller
+            System.out.println("Could not warm up the ticket renderer: " + e.getMessage());
+        }
+    }
+
+    /** The menu is shown or the API accepts requests. */
+    public static void ready() {
+        once(readyMs, READY);
+    }
+
+    /** A booking was committed (or journaled). Only the first call counts. */
+    public static void bookingDone() {
+        once(firstBookingMs, FIRST_BOOKING);
+    }
+
+    /** A ticket PDF was produced or served. Only the first call counts. */
+    public static void ticketDone() {
+        once(firstTicketMs, FIRST_TICKET);
+    }
+
+    private static void once(AtomicLong slot, Metrics.Timer timer) {
+        if (slot.get() >= 0) return;
+        long ms = System.currentTimeMillis() - JVM_START_MS;
+        if (slot.compareAndSet(-1, ms)) timer.recordNanos(TimeUnit.MILLISECONDS.toNanos(ms));
+    }
+
+    public static String stats() {
+        return String.format("startup[tickets=%s, caches=%s, headless=%s, ready=%s, firstBooking=%s, firstTicket=%s, ticketWarmup=%s, cacheWarmup=%s]",
+                ticketInit, cacheInit, System.getProperty("java.awt.headless", "false"), ms(readyMs.get()),
+                ms(firstBookingMs.get()), ms(firstTicketMs.get()), ms(ticketWarmupMs), ms(cacheWarmupMs));
+    }
+
+    private static String ms(long v) {
+        return v < 0 ? "-" : v + "ms";
+    }
+}
@@ -0,0 +1,125 @@
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rendered ticket PDFs keyed by a hash of everything printed on the ticket, so a repeat
+ * download of an unchanged booking is served from memory and any change to the booking
+ * (name, cabin, route, payment...) produces a new key and a fresh render.
+ *
+ * LRU bounded by total bytes (tickets.cacheMaxBytes, default 256 MB). Concurrent requests
+ * for the same uncached ticket share one render.
+ */
+public class TicketCache {
+
+    private static final long MAX_BYTES = Long.getLong("tickets.cacheMaxBytes", 256L << 20);
+
+    private static final Metrics.Counter HITS = Metrics.counter("ticket.cache.hits");
+    private static final Metrics.Counter MISSES = Metrics.counter("ticket.cache.misses");
+    private static final Metrics.Counter EVICTIONS = Metrics.counter("ticket.cache.evictions");
+
+    private static final Map<String, byte[]> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private static long bytes;
+    private static final ConcurrentHashMap<String, CompletableFuture<byte[]>> rendering = new ConcurrentHashMap<>();
+
+    interface Renderer {
+        byte[] render(TicketData t, String contentHash) throws Exception;
+    }
+
+    /** A rendered ticket and the content hash it is stored under (usable as an HTTP ETag). */
+    public static final class CachedTicket {
+        private final String hash;
+        private final byte[] pdf;
+
+        CachedTicket(String hash, byte[] pdf) {
+            this.hash = hash;
+            this.pdf = pdf;
+        }
+
+        public String getHash() { return hash; }
+        /** Shared with the cache, do not modify. */
+        public byte[] getPdf() { return pdf; }
+    }
+
+    static CachedTicket get(TicketData t, Renderer renderer) throws Exception {
+        String hash = contentHash(t);
+        byte[] pdf = lookup(hash);
+        if (pdf != null) {
+            HITS.increment();
+            return new CachedTicket(hash, pdf);
+        }
+
+        CompletableFuture<byte[]> mine = new CompletableFuture<>();
+        CompletableFuture<byte[]> running = rendering.putIfAbsent(hash, mine);
+        if (running != null) {
+            HITS.increment();
+            try {
+                return new CachedTicket(hash, running.join());
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof Exception ex ? ex : e;
+            }
+        }
+
+        MISSES.increment();
+        try {
+            pdf = renderer.render(t, hash);
+            store(hash, pdf);
+            mine.complete(pdf);
+            return new CachedTicket(hash, pdf);
+        } catch (Exception e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            rendering.remove(hash);
+        }
+    }
+
+    public static synchronized void invalidateAll() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public static synchronized String stats() {
+        return String.format("ticketCache[entries=%d bytes=%d hits=%d misses=%d evictions=%d]",
+                entries.size(), bytes, HITS.getCount(), MISSES.getCount(), EVICTIONS.getCount());
+    }
+
+    private static synchronized byte[] lookup(String hash) {
+        return entries.get(hash);
+    }
+
+    private static synchronized void store(String hash, byte[] pdf) {
+        if (pdf.length > MAX_BYTES) return;
+        byte[] old = entries.put(hash, pdf);
+        if (old != null) bytes -= old.length;
+        bytes += pdf.length;
+        var it = entries.entrySet().iterator();
+        while (bytes > MAX_BYTES && it.hasNext()) {
+            bytes -= it.next().getValue().length;
+            it.remove();
+            EVICTIONS.increment();
+        }
+    }
+
+    /** SHA-256 over every field printed on the ticket, plus the QR mode. */
+    static String contentHash(TicketData t) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        String fields = String.join("\u0001",
+                String.valueOf(t.getBookingId()), String.valueOf(t.getCruiseId()), t.getPassengerName(),
+                String.valueOf(t.getAge()), t.getGender(), t.getNationality(), t.getCabinClass(),
+                String.valueOf(t.getPrice()), t.getBookingDate(), t.getShipName(), t.getStartPort(),
+                t.getDestPort(), t.getDeparture(), t.getArrival(), t.getTxn(), TicketGenerator.QR_MODE.name());
+        return HexFormat.of().formatHex(md.digest(fields.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * Everything printed on one ticket, already resolved and formatted.
+ */
+public class TicketData {
+    private final int bookingId;
+    private final int cruiseId;
+    private final String passengerName;
+    private final int age;
+    private final String gender;
+    private final String nationality;
+    private final String cabinClass;
+    private final double price;
+    private final String bookingDate;
+    private final String shipName;
+    private final String startPort;
+    private final String destPort;
+    private final String departure;
+    private final String arrival;
+    private final String txn;
+
+    public TicketData(int bookingId, int cruiseId, String passengerName, int age, String gender, String nationality,
+                      String cabinClass, double price, String bookingDate, String shipName,
+                      String startPort, String destPort, String departure, String arrival, String txn) {
+        this.bookingId = bookingId;
+        this.cruiseId = cruiseId;
+        this.passengerName = passengerName;
+        this.age = age;
+        this.gender = gender;
+        this.nationality = nationality;
+        this.cabinClass = cabinClass;
+        this.price = price;
+        this.bookingDate = bookingDate;
+        this.shipName = shipName;
+        this.startPort = startPort;
+        this.destPort = destPort;
+        this.departure = departure;
+        this.arrival = arrival;
+        this.txn = txn;
+    }
+
+    public int getBookingId() { return bookingId; }
+    public int getCruiseId() { return cruiseId; }
+    public String getPassengerName() { return passengerName; }
+    public int getAge() { return age; }
+    public String getGender() { return gender; }
+    public String getNationality() { return nationality; }
+    public String getCabinClass() { return cabinClass; }
+    public double getPrice() { return price; }
+    public String getBookingDate() { return bookingDate; }
+    public String getShipName() { return shipName; }
+    public String getStartPort() { return startPort; }
+    public String getDestPort() { return destPort; }
+    public String getDeparture() { return departure; }
+    public String getArrival() { return arrival; }
+    public String getTxn() { return txn; }
+}
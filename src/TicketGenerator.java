@@ -1,17 +1,30 @@
 // TicketGenerator.java
 import java.awt.Desktop;
-import java.awt.image.BufferedImage;
+import java.awt.GraphicsEnvironment;
+import java.awt.Color;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import javax.imageio.ImageIO;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.pdfbox.pdmodel.*;
-import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.font.*;
 import org.apache.pdfbox.pdmodel.graphics.image.*;
 import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.util.Matrix;
 
 import com.google.zxing.*;
 import com.google.zxing.common.BitMatrix;
@@ -19,203 +32,469 @@ import com.google.zxing.client.j2se.MatrixToImageWriter;
 
 public class TicketGenerator {
 
-    private static final String[] ASSET_PATHS = {"assets/", "../assets/"};
-    private static final String LOGO_FILE = "logo.png";
-    private static final String WATERMARK_FILE = "watermark.png";
-    private static final String FONT_REGULAR = "Roboto-Regular.ttf";
-    private static final String FONT_BOLD = "Roboto-Black.ttf";
     private static final String OUTPUT_DIR = "tickets";
     private static final DateTimeFormatter DT_FMT = DateTimeFormatter.ofPattern("dd-MMM-yyyy HH:mm");
+    private static final int MAX_IDS_PER_QUERY = 1000;
+    // the template images make every ticket about 1.3 MB
+    private static final int INITIAL_PDF_BUFFER = 1_400_000;
+    private static final HexFormat HEX = HexFormat.of();
+
+    /**
+     * VECTOR draws the QR modules as filled rectangles in the content stream (small, sharp
+     * at any size, no image encoding). RASTER embeds a 300x300 image as before, for readers
+     * that were tuned to the old tickets.
+     */
+    enum QrMode { VECTOR, RASTER }
+
+    static final QrMode QR_MODE = QrMode.valueOf(System.getProperty("tickets.qrMode", "vector").toUpperCase());
+    private static final float QR_X = 80f;
+    private static final float QR_Y = 80f;
+    private static final float QR_SIZE = 160f;
+    private static final int QR_RASTER_PX = 300;
+
+    private static final Metrics.Timer SQL_SELECT = Metrics.timer("sql.ticket.select");
+    private static final Metrics.Timer QR = Metrics.timer("ticket.qr");
+    private static final Metrics.Timer FONT = Metrics.timer("ticket.font");
+    private static final Metrics.Timer LAYOUT = Metrics.timer("ticket.layout");
+    private static final Metrics.Timer SAVE = Metrics.timer("ticket.save");
+    private static final Metrics.Timer RENDER = Metrics.timer("ticket.render");
+    private static final Metrics.Timer RENDER_GROUP = Metrics.timer("ticket.renderGroup");
+    private static final Metrics.Counter RENDER_FAILED = Metrics.counter("ticket.renderFailed");
+
+    private static final int RENDER_THREADS = Integer.getInteger("tickets.renderThreads", Runtime.getRuntime().availableProcessors());
+    // one pool for every renderAll: concurrent batch requests share RENDER_THREADS workers
+    // instead of each starting its own, and idle workers retire after a minute
+    private static volatile ForkJoinPool renderPool;
+
+    private static final String TICKET_SELECT = """
+            SELECT b.booking_id, b.cruise_id, b.booking_date, b.cabin_class, b.price,
+                   p.name AS passenger_name, p.age, p.gender, p.nationality,
+                   c.ship_id,
+                   (SELECT pm.payment_id FROM payment pm WHERE pm.booking_id = b.booking_id
+                    ORDER BY pm.payment_date DESC LIMIT 1) AS txn_id
+            FROM booking b
+            JOIN passenger p ON b.passenger_id = p.passenger_id
+            JOIN cruise c ON b.cruise_id = c.cruise_id
+            """;
+
+    /**
+     * Make sure the ticket for one booking is in the {@link TicketStore}, re-rendering only
+     * if the booking changed since it was last rendered. Returns false if the booking does
+     * not exist.
+     */
+    public static boolean generateTicketPDF(int bookingId, Connection conn) throws Exception {
+        if (ticketBytes(bookingId, conn) == null) return false;
+        System.out.println("Ticket ready for booking " + bookingId);
+        return true;
+    }
 
-    private static File findAsset(String name) {
-        for (String base : ASSET_PATHS) {
-            File f = new File(base + name);
-            if (f.exists()) return f.getAbsoluteFile();
-        }
-        return new File("assets/" + name);
-    }
-
-    public static void generateTicketPDF(int bookingId, Connection conn) {
-        String sql = """
-                SELECT b.booking_id, b.booking_date, b.cabin_class, b.price,
-                       p.name AS passenger_name, p.age, p.gender, p.nationality,
-                       s.name AS ship_name,
-                       r1.port_id AS start_port_id, r1.departure AS departure_time,
-                       r2.port_id AS dest_port_id, r2.estimated_arrival AS est_arrival, r2.duration_hours
-                FROM booking b
-                JOIN passenger p ON b.passenger_id = p.passenger_id
-                JOIN cruise c ON b.cruise_id = c.cruise_id
-                JOIN ship s ON c.ship_id = s.ship_id
-                LEFT JOIN cruise_route r1 ON r1.cruise_id = c.cruise_id AND r1.stop_order = 1
-                LEFT JOIN cruise_route r2 ON r2.cruise_id = c.cruise_id
-                WHERE b.booking_id = ?;
-                """;
+    /** Same, reading through {@link #ticketBytes(int)}. */
+    public static boolean generateTicketPDF(int bookingId) throws Exception {
+        if (ticketBytes(bookingId) == null) return false;
+        System.out.println("Ticket ready for booking " + bookingId);
+        return true;
+    }
 
-        try (PreparedStatement pst = conn.prepareStatement(sql)) {
-            pst.setInt(1, bookingId);
+    /**
+     * {@link #ticketBytes(int, Connection)} on a read connection. A booking the replica has
+     * not caught up with yet (tickets are usually asked for right after booking) is read
+     * again from the primary.
+     */
+    public static TicketCache.CachedTicket ticketBytes(int bookingId) throws Exception {
+        try (Connection conn = DBConnection.borrowRead()) {
+            TicketCache.CachedTicket ticket = ticketBytes(bookingId, conn);
+            if (ticket != null || !DBConnection.hasReplica()) return ticket;
+        }
+        try (Connection conn = DBConnection.borrow()) {
+            return ticketBytes(bookingId, conn);
+        }
+    }
 
-            try (ResultSet rs = pst.executeQuery()) {
-                if (!rs.next()) {
-                    System.out.println("Booking not found: " + bookingId);
-                    return;
-                }
+    /**
+     * The ticket PDF for a booking, in memory, for serving directly. Unchanged bookings
+     * come from the cache or the ticket store without rendering. Returns null if the
+     * booking does not exist.
+     */
+    public static TicketCache.CachedTicket ticketBytes(int bookingId, Connection conn) throws Exception {
+        List<TicketData> rows = fetchTickets(conn, "b.booking_id = ?", List.of(bookingId));
+        if (rows.isEmpty()) return null;
+        TicketCache.CachedTicket ticket = TicketCache.get(rows.get(0), TicketGenerator::loadOrRender);
+        Startup.ticketDone();
+        return ticket;
+    }
 
-                String passengerName = rs.getString("passenger_name");
-                int age = rs.getInt("age");
-                String gender = rs.getString("gender");
-                String nationality = rs.getString("nationality");
-                String cabinClass = rs.getString("cabin_class");
-                double price = rs.getDouble("price");
+    /** Render one ticket as PDF to {@code out}. The stream is not closed. */
+    public static void renderTicket(TicketData t, OutputStream out) throws Exception {
+        long start = System.nanoTime();
+        BitMatrix qr = null;
+        try {
+            qr = encodeQR(qrPayload(t), QR_MODE);
+        } catch (WriterException ignored) {}
+        QR.record(start);
+
+        long t0 = System.nanoTime();
+        try (PDDocument doc = layoutTicket(t, qr, QR_MODE)) {
+            LAYOUT.record(t0);
+            t0 = System.nanoTime();
+            doc.save(out);
+            SAVE.record(t0);
+        }
+        RENDER.record(start);
+    }
 
-                Timestamp bookingTs = rs.getTimestamp("booking_date");
-                String bookingDateStr = bookingTs != null ? bookingTs.toLocalDateTime().format(DT_FMT) : "TBD";
+    /**
+     * Tickets for several bookings as one PDF, a page per booking in booking ID order.
+     * The pages share the template's static layer and one subset of the regular font,
+     * only the passenger text and the QR code are per page. Returns null if any of the
+     * bookings does not exist. Group tickets are not stored, the single tickets still are.
+     */
+    public static byte[] groupTicketBytes(List<Integer> bookingIds) throws Exception {
+        List<Integer> ids = bookingIds.stream().distinct().toList();
+        if (ids.isEmpty() || ids.size() > MAX_IDS_PER_QUERY) throw new IllegalArgumentException("1 to " + MAX_IDS_PER_QUERY + " bookings per group ticket");
+        String where = "b.booking_id IN (" + String.join(",", Collections.nCopies(ids.size(), "?")) + ")";
+        List<TicketData> tickets;
+        try (Connection conn = DBConnection.borrowRead()) {
+            tickets = fetchTickets(conn, where, ids);
+        }
+        // a group is usually printed right after it was booked
+        if (tickets.size() < ids.size() && DBConnection.hasReplica()) {
+            try (Connection conn = DBConnection.borrow()) {
+                tickets = fetchTickets(conn, where, ids);
+            }
+        }
+        if (tickets.size() < ids.size()) return null;
 
-                String shipName = rs.getString("ship_name");
+        ByteArrayOutputStream out = new ByteArrayOutputStream(INITIAL_PDF_BUFFER);
+        renderGroupTicket(tickets, out);
+        Startup.ticketDone();
+        return out.toByteArray();
+    }
 
-                Timestamp depTs = rs.getTimestamp("departure_time");
-                Integer durationHours = rs.getInt("duration_hours");
-                Timestamp estArrTs = rs.getTimestamp("est_arrival");
+    /** Render several tickets as pages of one PDF to {@code out}, see {@link #groupTicketBytes}. */
+    public static void renderGroupTicket(List<TicketData> tickets, OutputStream out) throws Exception {
+        long start = System.nanoTime();
+        TicketTemplate template = TicketTemplate.get();
+        try (PDDocument doc = template.newDocument()) {
+            long t0 = System.nanoTime();
+            PDFont fontRegular = template.regularFont(doc);
+            FONT.record(t0);
+            for (int i = 0; i < tickets.size(); i++) {
+                TicketData t = tickets.get(i);
+                BitMatrix qr = null;
+                try {
+                    qr = encodeQR(qrPayload(t), QR_MODE);
+                } catch (WriterException ignored) {}
+                PDPage page = i == 0 ? doc.getPage(0) : template.addPage(doc);
+                drawTicket(doc, page, fontRegular, t, qr, QR_MODE);
+            }
+            doc.save(out);
+        }
+        RENDER_GROUP.record(start);
+    }
 
-                LocalDateTime departure = (depTs != null) ? depTs.toLocalDateTime() : null;
-                LocalDateTime arrival = (estArrTs != null) ? estArrTs.toLocalDateTime()
-                        : (departure != null && durationHours > 0 ? departure.plusHours(durationHours) : null);
+    /**
+     * Copy a stored ticket out to tickets/Ticket_<id>.pdf and open it in the desktop PDF
+     * viewer. Only for interactive use; on a headless machine the path is printed instead.
+     */
+    public static void openTicket(int bookingId) {
+        File ticket = ticketFile(bookingId);
+        try {
+            if (!TicketStore.shared().exportPdf(bookingId, ticket.toPath())) {
+                System.out.println("No stored ticket for booking " + bookingId);
+                return;
+            }
+            open(ticket);
+        } catch (Exception e) {
+            System.out.println("Could not open ticket: " + e.getMessage());
+        }
+    }
 
-                String departureStr = (departure != null) ? departure.format(DT_FMT) : "TBD";
-                String arrivalStr = (arrival != null) ? arrival.format(DT_FMT) : "TBD";
+    /** Write a group ticket to tickets/Group_<first id>.pdf and open it, like {@link #openTicket}. */
+    public static void openGroupTicket(List<Integer> bookingIds) {
+        try {
+            byte[] pdf = groupTicketBytes(bookingIds);
+            if (pdf == null) {
+                System.out.println("Some of bookings " + bookingIds + " do not exist");
+                return;
+            }
+            File ticket = outputFile("Group_" + Collections.min(bookingIds) + ".pdf");
+            Files.write(ticket.toPath(), pdf);
+            open(ticket);
+        } catch (Exception e) {
+            System.out.println("Could not open group ticket: " + e.getMessage());
+        }
+    }
 
-                String startPort = getPortName(conn, rs.getInt("start_port_id"));
-                String destPort = getPortName(conn, rs.getInt("dest_port_id"));
-                String txn = fetchLatestTxn(conn, bookingId);
+    private static void open(File ticket) throws IOException {
+        if (!GraphicsEnvironment.isHeadless() && Desktop.isDesktopSupported()) {
+            Desktop.getDesktop().open(ticket);
+        } else {
+            System.out.println("Ticket saved at: " + ticket.getAbsolutePath());
+        }
+    }
 
-                File outdir = new File(OUTPUT_DIR);
-                if (!outdir.exists()) outdir.mkdirs();
-                String outFile = OUTPUT_DIR + File.separator + "Ticket_" + bookingId + ".pdf";
+    /**
+     * Reissue the tickets of every booking on a cruise. Returns the number of tickets written.
+     */
+    public static int generateTicketsForCruise(int cruiseId, Connection conn) throws SQLException {
+        List<TicketData> tickets = fetchTickets(conn, "b.cruise_id = ?", List.of(cruiseId));
+        return renderAll(tickets);
+    }
 
-                try (PDDocument doc = new PDDocument()) {
-                    File fReg = findAsset(FONT_REGULAR);
-                    File fBold = findAsset(FONT_BOLD);
-                    PDFont fontRegular = PDType0Font.load(doc, fReg);
-                    PDFont fontBold = PDType0Font.load(doc, fBold);
+    /**
+     * Reissue the tickets for the given bookings. Unknown booking IDs are skipped.
+     * Returns the number of tickets written.
+     */
+    public static int generateTickets(List<Integer> bookingIds, Connection conn) throws SQLException {
+        List<TicketData> tickets = new ArrayList<>(bookingIds.size());
+        for (int from = 0; from < bookingIds.size(); from += MAX_IDS_PER_QUERY) {
+            List<Integer> chunk = bookingIds.subList(from, Math.min(from + MAX_IDS_PER_QUERY, bookingIds.size()));
+            String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+            tickets.addAll(fetchTickets(conn, "b.booking_id IN (" + placeholders + ")", chunk));
+        }
+        return renderAll(tickets);
+    }
 
-                    PDPage page = new PDPage(PDRectangle.A4);
-                    doc.addPage(page);
+    /**
+     * One set-based query for all requested bookings, one row per booking.
+     * Route details come from the itinerary index, names from the reference data cache.
+     */
+    static List<TicketData> fetchTickets(Connection conn, String where, List<Integer> params) throws SQLException {
+        String sql = TICKET_SELECT + "WHERE " + where + " ORDER BY b.booking_id";
+        List<TicketData> tickets = new ArrayList<>();
 
-                    PDPageContentStream cs = new PDPageContentStream(doc, page);
-                    PDRectangle rect = page.getMediaBox();
+        try (PreparedStatement pst = conn.prepareStatement(sql)) {
+            for (int i = 0; i < params.size(); i++) pst.setInt(i + 1, params.get(i));
 
-                    drawRoundedBorder(cs, 20, 20, rect.getWidth() - 40, rect.getHeight() - 40, 12, 2f);
+            long t0 = System.nanoTime();
+            try (ResultSet rs = pst.executeQuery()) {
+                while (rs.next()) {
+                    int bookingId = rs.getInt("booking_id");
+                    int cruiseId = rs.getInt("cruise_id");
+
+                    Timestamp bookingTs = rs.getTimestamp("booking_date");
+                    String bookingDateStr = bookingTs != null ? bookingTs.toLocalDateTime().format(DT_FMT) : "TBD";
+
+                    ItineraryIndex.Itinerary route = ItineraryIndex.get(conn, cruiseId);
+                    LocalDateTime departure = route.getFirstDeparture();
+                    LocalDateTime arrival = route.getFinalArrival();
+
+                    String departureStr = (departure != null) ? departure.format(DT_FMT) : "TBD";
+                    String arrivalStr = (arrival != null) ? arrival.format(DT_FMT) : "TBD";
+
+                    String startPort = ReferenceData.portName(conn, route.getStartPortId());
+                    String destPort = ReferenceData.portName(conn, route.getDestPortId());
+
+                    int txnId = rs.getInt("txn_id");
+                    String txn = rs.wasNull() ? "N/A" : "TXN" + txnId;
+
+                    tickets.add(new TicketData(
+                            bookingId,
+                            cruiseId,
+                            rs.getString("passenger_name"),
+                            rs.getInt("age"),
+                            rs.getString("gender"),
+                            rs.getString("nationality"),
+                            rs.getString("cabin_class"),
+                            rs.getDouble("price"),
+                            bookingDateStr,
+                            ReferenceData.shipName(conn, rs.getInt("ship_id")),
+                            startPort,
+                            destPort,
+                            departureStr,
+                            arrivalStr,
+                            txn));
+                }
+            } finally {
+                SQL_SELECT.record(t0);
+            }
+        }
+        return tickets;
+    }
 
+    private static ForkJoinPool renderPool() {
+        ForkJoinPool pool = renderPool;
+        if (pool == null) {
+            synchronized (TicketGenerator.class) {
+                if (renderPool == null) {
+                    AtomicInteger n = new AtomicInteger();
+                    renderPool = new ForkJoinPool(Math.max(1, RENDER_THREADS), p -> {
+                        ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                        t.setName("ticket-render-" + n.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }, null, false, 0, Math.max(1, RENDER_THREADS), 1, null, 60, TimeUnit.SECONDS);
+                }
+                pool = renderPool;
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * Render on the shared work-stealing pool (tickets.renderThreads, one per core by
+     * default). Each task owns its own
+     * PDDocument, the template is shared read-only. Tickets already stored for the
+     * current booking details are skipped; the store is synced once at the end.
+     */
+    private static int renderAll(List<TicketData> tickets) {
+        if (tickets.isEmpty()) {
+            System.out.println("No bookings found for ticket generation.");
+            return 0;
+        }
+
+        TicketStore store = TicketStore.shared();
+        ForkJoinPool pool = renderPool();
+        int threads = pool.getParallelism();
+        AtomicInteger written = new AtomicInteger();
+        AtomicInteger unchanged = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        long start = System.nanoTime();
+
+        try {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>(tickets.size());
+            for (TicketData t : tickets) {
+                tasks.add(pool.submit(() -> {
                     try {
-                        File fWm = findAsset(WATERMARK_FILE);
-                        PDImageXObject wm = PDImageXObject.createFromFileByContent(fWm, doc);
-                        float wmWidth = rect.getWidth() * 0.7f;
-                        float scale = wmWidth / wm.getWidth();
-                        float wmHeight = wm.getHeight() * scale;
-                        cs.drawImage(wm, (rect.getWidth() - wmWidth) / 2f, (rect.getHeight() - wmHeight) / 2f, wmWidth, wmHeight);
-                    } catch (Exception ignored) {}
-
-                    // Enlarged logo by 33%
-                    try {
-                        File fLogo = findAsset(LOGO_FILE);
-                        PDImageXObject logo = PDImageXObject.createFromFileByContent(fLogo, doc);
-                        float logoW = 213f; // 160 * 1.33
-                        float logoH = (logo.getHeight() * logoW) / logo.getWidth();
-                        float logoX = (rect.getWidth() - logoW) / 2f;
-                        float logoY = rect.getHeight() - logoH - 60f;
-                        cs.drawImage(logo, logoX, logoY, logoW, logoH);
-                    } catch (Exception ignored) {}
-
-                    float left = 60f;
-                    float y = rect.getHeight() - 200f;
-                    float lead = 22f;
-
-                    cs.beginText();
-                    cs.setFont(fontBold, 14);
-                    cs.newLineAtOffset(left, y);
-                    cs.showText("PASSENGER DETAILS");
-                    cs.endText();
-
-                    y -= lead;
-                    writeLine(cs, fontRegular, 13, left, y, "Name: " + passengerName);
-                    y -= lead;
-                    writeLine(cs, fontRegular, 13, left, y, "Age: " + age + "    Gender: " + gender + "    Nationality: " + (nationality == null ? "N/A" : nationality));
-
-                    y -= lead * 1.3f;
-
-                    cs.beginText();
-                    cs.setFont(fontBold, 14);
-                    cs.newLineAtOffset(left, y);
-                    cs.showText("CRUISE DETAILS");
-                    cs.endText();
-
-                    y -= lead;
-                    writeLine(cs, fontRegular, 13, left, y, "Ship: " + shipName);
-                    y -= lead;
-                    writeLine(cs, fontRegular, 13, left, y, "Route: " + startPort + " -> " + destPort);
-                    y -= lead;
-                    writeLine(cs, fontRegular, 13, left, y, "Departure: " + departureStr);
-                    y -= lead;
-                    writeLine(cs, fontRegular, 13, left, y, "Estimated Arrival: " + arrivalStr);
-
-                    y -= lead * 1.3f;
-
-                    cs.beginText();
-                    cs.setFont(fontBold, 14);
-                    cs.newLineAtOffset(left, y);
-                    cs.showText("BOOKING & PAYMENT");
-                    cs.endText();
-
-                    y -= lead;
-                    writeLine(cs, fontRegular, 13, left, y, "Booking ID: " + bookingId);
-                    y -= lead;
-                    writeLine(cs, fontRegular, 13, left, y, String.format("Cabin: %s    Amount Paid: ₹ %.2f", cabinClass, price));
-                    y -= lead;
-                    writeLine(cs, fontRegular, 13, left, y, "Booking Date: " + bookingDateStr);
-                    y -= lead;
-                    writeLine(cs, fontRegular, 13, left, y, "Transaction: " + txn);
-
-                    // QR moved to bottom-left (not extreme)
-                    try {
-                        String qrText = String.format("BOOKING|%d|%s|%s->%s|%s|%.2f", bookingId, passengerName, startPort, destPort, cabinClass, price);
-                        qrText = qrText.replace("→", "->");
-                        BufferedImage qrImg = generateQR(qrText, 300, 300);
-                        if (qrImg != null) {
-                            PDImageXObject qr = LosslessFactory.createFromImage(doc, qrImg);
-                            float qrW = 160f;
-                            float qrH = 160f;
-                            float qrX = 80f;
-                            float qrY = 80f;
-                            cs.drawImage(qr, qrX, qrY, qrW, qrH);
-                            writeLine(cs, fontRegular, 12, qrX, qrY - 18f, "Scan to Verify Booking Details");
+                        byte[] hash = HEX.parseHex(TicketCache.contentHash(t));
+                        if (store.contains(t.getBookingId(), hash)) {
+                            unchanged.incrementAndGet();
+                            return;
                         }
-                    } catch (Exception ignored) {}
-
-                    cs.close();
-                    doc.save(outFile);
-                    System.out.println("Ticket created: " + outFile);
-                    Desktop.getDesktop().open(new File(outFile));
-                }
+                        store.put(t.getBookingId(), hash, renderBytes(t));
+                        written.incrementAndGet();
+                    } catch (Exception e) {
+                        failed.incrementAndGet();
+                        RENDER_FAILED.increment();
+                        System.out.println("Ticket " + t.getBookingId() + " failed: " + e.getMessage());
+                    }
+                }));
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+            for (ForkJoinTask<?> task : tasks) task.join();
+            store.sync();
+        } catch (IOException e) {
+            System.out.println("Could not sync ticket store: " + e.getMessage());
         }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        if (written.get() + unchanged.get() > 0) Startup.ticketDone();
+        System.out.printf("Generated %d tickets (%d unchanged, %d failed) in %.2f s on %d threads: %.1f tickets/s%n",
+                written.get(), unchanged.get(), failed.get(), seconds, threads, written.get() / Math.max(seconds, 1e-9));
+        return written.get() + unchanged.get();
     }
 
-    private static void drawRoundedBorder(PDPageContentStream cs, float x, float y, float w, float h, float r, float lineWidth) throws Exception {
-        final float K = 0.5522847498f;
-        float k = K * r;
+    private static File ticketFile(int bookingId) {
+        return outputFile("Ticket_" + bookingId + ".pdf");
+    }
+
+    private static File outputFile(String name) {
+        File outdir = new File(OUTPUT_DIR);
+        if (!outdir.exists()) outdir.mkdirs();
+        return new File(outdir, name);
+    }
 
-        cs.setLineWidth(lineWidth);
-        cs.moveTo(x + r, y);
-        cs.lineTo(x + w - r, y);
-        cs.curveTo(x + w - r + k, y, x + w, y + r - k, x + w, y + r);
-        cs.lineTo(x + w, y + h - r);
-        cs.curveTo(x + w, y + h - r + k, x + w - r + k, y + h, x + w - r, y + h);
-        cs.lineTo(x + r, y + h);
-        cs.curveTo(x + r - k, y + h, x, y + h - r + k, x, y + h - r);
-        cs.lineTo(x, y + r);
-        cs.curveTo(x, y + r - k, x + r - k, y, x + r, y);
-        cs.stroke();
+    /** The stored ticket if it was rendered from the same booking details, else render and store it. */
+    private static byte[] loadOrRender(TicketData t, String contentHash) throws Exception {
+        TicketStore store = TicketStore.shared();
+        byte[] hash = HEX.parseHex(contentHash);
+        byte[] pdf = store.get(t.getBookingId(), hash);
+        if (pdf != null) return pdf;
+        pdf = renderBytes(t);
+        store.put(t.getBookingId(), hash, pdf);
+        return pdf;
+    }
+
+    private static byte[] renderBytes(TicketData t) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(INITIAL_PDF_BUFFER);
+        renderTicket(t, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Load and exercise the whole ticket stack on a throwaway ticket (template, fonts, QR,
+     * signing key, PDF writer) and open the ticket store, so the first real ticket does not
+     * pay for it. Nothing is stored.
+     */
+    static void warmUp() throws Exception {
+        TicketData sample = new TicketData(0, 0, "Warm Up", 0, "-", "-", "STANDARD", 0, "-", "-", "-", "-", "-", "-", "N/A");
+        try (PDDocument doc = layoutTicket(sample, encodeQR(qrPayload(sample), QR_MODE), QR_MODE)) {
+            doc.save(OutputStream.nullOutputStream());
+        }
+        TicketStore.shared();
+    }
+
+    /** Signed code the gates verify offline, see {@link TicketToken}. */
+    static String qrPayload(TicketData t) {
+        return TicketToken.sign(t);
+    }
+
+    /**
+     * Lay out one ticket on a fresh copy of the template. The caller saves and closes
+     * the document. {@code qr} may be null, the ticket is then issued without a QR code.
+     */
+    static PDDocument layoutTicket(TicketData t, BitMatrix qr, QrMode mode) throws Exception {
+        TicketTemplate template = TicketTemplate.get();
+        PDDocument doc = template.newDocument();
+        try {
+            long t0 = System.nanoTime();
+            PDFont fontRegular = template.regularFont(doc);
+            FONT.record(t0);
+            drawTicket(doc, doc.getPage(0), fontRegular, t, qr, mode);
+            return doc;
+        } catch (Exception e) {
+            doc.close();
+            throw e;
+        }
+    }
+
+    /** The per-booking text and QR code, over the static layer already on {@code page}. */
+    private static void drawTicket(PDDocument doc, PDPage page, PDFont fontRegular, TicketData t, BitMatrix qr, QrMode mode) throws Exception {
+        try (PDPageContentStream cs = new PDPageContentStream(doc, page, PDPageContentStream.AppendMode.APPEND, true, true)) {
+
+            float left = TicketTemplate.LEFT;
+            float lead = TicketTemplate.LEAD;
+            float y = TicketTemplate.PASSENGER_Y;
+
+            y -= lead;
+            writeLine(cs, fontRegular, 13, left, y, "Name: " + t.getPassengerName());
+            y -= lead;
+            writeLine(cs, fontRegular, 13, left, y, "Age: " + t.getAge() + "    Gender: " + t.getGender() + "    Nationality: " + (t.getNationality() == null ? "N/A" : t.getNationality()));
+
+            y = TicketTemplate.CRUISE_Y;
+
+            y -= lead;
+            writeLine(cs, fontRegular, 13, left, y, "Ship: " + t.getShipName());
+            y -= lead;
+            writeLine(cs, fontRegular, 13, left, y, "Route: " + t.getStartPort() + " -> " + t.getDestPort());
+            y -= lead;
+            writeLine(cs, fontRegular, 13, left, y, "Departure: " + t.getDeparture());
+            y -= lead;
+            writeLine(cs, fontRegular, 13, left, y, "Estimated Arrival: " + t.getArrival());
+
+            y = TicketTemplate.BOOKING_Y;
+
+            y -= lead;
+            writeLine(cs, fontRegular, 13, left, y, "Booking ID: " + t.getBookingId());
+            y -= lead;
+            writeLine(cs, fontRegular, 13, left, y, String.format("Cabin: %s    Amount Paid: ₹ %.2f", t.getCabinClass(), t.getPrice()));
+            y -= lead;
+            writeLine(cs, fontRegular, 13, left, y, "Booking Date: " + t.getBookingDate());
+            y -= lead;
+            writeLine(cs, fontRegular, 13, left, y, "Transaction: " + t.getTxn());
+
+            // QR moved to bottom-left (not extreme)
+            if (qr != null) {
+                try {
+                    if (mode == QrMode.VECTOR) {
+                        drawQR(cs, qr, QR_X, QR_Y, QR_SIZE);
+                    } else {
+                        PDImageXObject img = LosslessFactory.createFromImage(doc, MatrixToImageWriter.toBufferedImage(qr));
+                        cs.drawImage(img, QR_X, QR_Y, QR_SIZE, QR_SIZE);
+                    }
+                    writeLine(cs, fontRegular, 12, QR_X, QR_Y - 18f, "Scan to Verify Booking Details");
+                } catch (Exception ignored) {}
+            }
+        }
     }
 
     private static void writeLine(PDPageContentStream cs, PDFont font, int size, float x, float y, String text) throws Exception {
@@ -226,29 +505,42 @@ public class TicketGenerator {
         cs.endText();
     }
 
-    private static String getPortName(Connection c, int portId) {
-        if (portId <= 0) return "Unknown";
-        try (PreparedStatement pst = c.prepareStatement("SELECT name FROM port WHERE port_id = ?")) {
-            pst.setInt(1, portId);
-            try (ResultSet rs = pst.executeQuery()) {
-                if (rs.next()) return rs.getString(1);
-            }
-        } catch (Exception ignored) {}
-        return "Unknown";
+    /**
+     * Encode the QR code. For VECTOR the matrix has one bit per module (plus the quiet
+     * zone), for RASTER it is scaled up to the 300x300 image size.
+     */
+    static BitMatrix encodeQR(String text, QrMode mode) throws WriterException {
+        int px = mode == QrMode.VECTOR ? 0 : QR_RASTER_PX;
+        return new MultiFormatWriter().encode(text, BarcodeFormat.QR_CODE, px, px);
     }
 
-    private static String fetchLatestTxn(Connection conn, int bookingId) {
-        try (PreparedStatement pst = conn.prepareStatement("SELECT payment_id FROM payment WHERE booking_id = ? ORDER BY payment_date DESC LIMIT 1")) {
-            pst.setInt(1, bookingId);
-            try (ResultSet rs = pst.executeQuery()) {
-                if (rs.next()) return "TXN" + rs.getInt(1);
+    /**
+     * Draw the matrix into a size x size square at (x, y). The coordinate system is scaled
+     * to one unit per module so every rectangle is written with small integers, each
+     * horizontal run of dark modules becomes one rectangle, and all of them are filled
+     * with a single fill operator.
+     */
+    static void drawQR(PDPageContentStream cs, BitMatrix m, float x, float y, float size) throws IOException {
+        int cols = m.getWidth();
+        int rows = m.getHeight();
+        float cell = size / Math.max(cols, rows);
+
+        cs.saveGraphicsState();
+        cs.transform(new Matrix(cell, 0, 0, cell, x, y));
+        cs.setNonStrokingColor(Color.BLACK);
+        for (int r = 0; r < rows; r++) {
+            int c = 0;
+            while (c < cols) {
+                if (!m.get(c, r)) {
+                    c++;
+                    continue;
+                }
+                int start = c;
+                while (c < cols && m.get(c, r)) c++;
+                cs.addRect(start, rows - r - 1, c - start, 1);
             }
-        } catch (Exception ignored) {}
-        return "N/A";
-    }
-
-    private static BufferedImage generateQR(String text, int width, int height) throws WriterException {
-        BitMatrix bm = new MultiFormatWriter().encode(text, BarcodeFormat.QR_CODE, width, height);
-        return MatrixToImageWriter.toBufferedImage(bm);
+        }
+        cs.fill();
+        cs.restoreGraphicsState();
     }
 }
@@ -0,0 +1,152 @@
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders tickets in the background so a booking can return as soon as it is committed.
+ * The queue is bounded: when it is full, submit() waits a little for space and then
+ * rejects the job instead of letting work pile up. Failed renders are retried.
+ */
+public class TicketJobQueue {
+
+    public enum Status { QUEUED, RUNNING, DONE, FAILED, REJECTED }
+
+    private static final int WORKERS = Integer.getInteger("tickets.workers", 2);
+    private static final int QUEUE_CAPACITY = Integer.getInteger("tickets.queueCapacity", 100);
+    private static final long SUBMIT_WAIT_MS = Long.getLong("tickets.submitWaitMs", 2_000);
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_BACKOFF_MS = 500;
+    private static final int MAX_TRACKED_JOBS = 10_000;
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    private static final Metrics.Timer QUEUE_WAIT = Metrics.timer("ticket.queueWait");
+    private static final Metrics.Timer JOB = Metrics.timer("ticket.job");
+    private static final Metrics.Counter RETRIES = Metrics.counter("ticket.retries");
+    private static final Metrics.Counter FAILED = Metrics.counter("ticket.failed");
+    private static final Metrics.Counter REJECTED = Metrics.counter("ticket.rejected");
+
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(
+            WORKERS, WORKERS, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+            r -> {
+                Thread t = new Thread(r, "ticket-worker-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            },
+            (r, executor) -> {
+                try {
+                    if (executor.isShutdown() || !executor.getQueue().offer(r, SUBMIT_WAIT_MS, TimeUnit.MILLISECONDS)) {
+                        throw new RejectedExecutionException("Ticket queue is full");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RejectedExecutionException("Interrupted while waiting for ticket queue space");
+                }
+            });
+
+    // most recent jobs only, so a long-running process does not keep every booking forever
+    private static final Map<Integer, Job> jobs = Collections.synchronizedMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Job> eldest) {
+            return size() > MAX_TRACKED_JOBS;
+        }
+    });
+
+    public static final class Job {
+        private final int bookingId;
+        private final CompletableFuture<Integer> result = new CompletableFuture<>();
+        private final long queuedAt = System.nanoTime();
+        private volatile Status status = Status.QUEUED;
+        private volatile int attempts;
+        private volatile String error;
+
+        private Job(int bookingId) {
+            this.bookingId = bookingId;
+        }
+
+        public int getBookingId() { return bookingId; }
+        public Status getStatus() { return status; }
+        public int getAttempts() { return attempts; }
+        public String getError() { return error; }
+        /** Completes with the booking ID once the ticket is stored, or exceptionally once all attempts failed. */
+        public CompletableFuture<Integer> getResult() { return result; }
+    }
+
+    /**
+     * Queue the ticket for a committed booking. Never throws: a rejected job is
+     * returned with status REJECTED and an exceptionally completed result.
+     */
+    public static Job submit(int bookingId) {
+        Job job = new Job(bookingId);
+        jobs.put(bookingId, job);
+        try {
+            EXECUTOR.execute(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            REJECTED.increment();
+            job.status = Status.REJECTED;
+            job.error = e.getMessage();
+            job.result.completeExceptionally(e);
+        }
+        return job;
+    }
+
+    /** Latest job for a booking, or null if none was submitted (or it has aged out). */
+    public static Job lookup(int bookingId) {
+        return jobs.get(bookingId);
+    }
+
+    private static void run(Job job) {
+        long start = System.nanoTime();
+        QUEUE_WAIT.recordNanos(start - job.queuedAt);
+        job.status = Status.RUNNING;
+        Exception last = null;
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            job.attempts = attempt;
+            try {
+                if (!TicketGenerator.generateTicketPDF(job.bookingId)) {
+                    throw new IllegalStateException("Booking not found: " + job.bookingId);
+                }
+                job.status = Status.DONE;
+                job.error = null;
+                job.result.complete(job.bookingId);
+                JOB.record(start);
+                return;
+            } catch (Exception e) {
+                last = e;
+                job.error = e.getMessage();
+                if (attempt < MAX_ATTEMPTS) {
+                    RETRIES.increment();
+                    try {
+                        Thread.sleep(RETRY_BACKOFF_MS * attempt);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+        }
+        job.status = Status.FAILED;
+        FAILED.increment();
+        System.out.println("Ticket generation failed for booking " + job.bookingId + ": " + job.error);
+        job.result.completeExceptionally(last);
+    }
+
+    /** Stop accepting jobs and give queued ones up to {@code timeoutMs} to finish. */
+    public static void shutdown(long timeoutMs) {
+        EXECUTOR.shutdown();
+        try {
+            if (!EXECUTOR.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS)) {
+                System.out.println("Ticket queue still had " + EXECUTOR.getQueue().size() + " pending job(s) at shutdown.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
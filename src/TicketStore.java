@@ -0,0 +1,439 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Archive of rendered tickets: append-only segment files instead of one file per booking.
+ *
+ * Each record is a 48-byte header (magic, booking ID, length, CRC32 of the PDF, SHA-256
+ * content hash) followed by the PDF. An in-memory index maps booking ID to the newest
+ * record, so a lookup is one map read plus a copy out of the memory-mapped segment. The
+ * index is rebuilt at startup by walking the record headers. Every read checks the CRC;
+ * a record that fails it is dropped from the index, so the ticket is rendered again.
+ *
+ * Writing a ticket again (changed booking) appends a new record and leaves the old one
+ * as garbage; {@link #compact()} rewrites segments that are mostly garbage. Appends are
+ * not fsynced one by one: the store is forced every tickets.store.syncMs, when a segment
+ * is sealed and on close. A ticket lost in a crash is simply rendered again on next use.
+ *
+ * Settings: tickets.store.dir (tickets/store), tickets.store.segmentBytes (256 MB),
+ * tickets.store.syncMs (1 s), tickets.store.compactBelow (0.5 live),
+ * tickets.store.compactIntervalMs (1 h).
+ */
+public class TicketStore {
+
+    private static final int MAGIC = 0x544B5431; // "TKT1"
+    private static final int HASH_BYTES = 32;
+    private static final int HEADER_BYTES = 4 + 4 + 4 + 4 + HASH_BYTES;
+
+    private static final Path DIR = Paths.get(System.getProperty("tickets.store.dir", "tickets/store"));
+    // segments are memory-mapped whole, so they stay below 2 GB
+    private static final long SEGMENT_BYTES = Math.min(Long.getLong("tickets.store.segmentBytes", 256L << 20), Integer.MAX_VALUE);
+    private static final long SYNC_MS = Long.getLong("tickets.store.syncMs", 1_000);
+    private static final double COMPACT_BELOW = Double.parseDouble(System.getProperty("tickets.store.compactBelow", "0.5"));
+    private static final long COMPACT_INTERVAL_MS = Long.getLong("tickets.store.compactIntervalMs", 3_600_000);
+
+    private static final Metrics.Timer READ = Metrics.timer("ticket.store.read");
+    private static final Metrics.Timer APPEND = Metrics.timer("ticket.store.append");
+    private static final Metrics.Timer SYNC = Metrics.timer("ticket.store.sync");
+
+    private static TicketStore shared;
+
+    private final Path dir;
+    private final long segmentBytes;
+    private final Map<Integer, Location> index = new ConcurrentHashMap<>();
+    private final Map<Integer, Segment> segments = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService housekeeper;
+    private Segment active;
+    private volatile boolean dirty;
+    private volatile boolean closed;
+
+    /** Where the newest record of a booking lives. */
+    private record Location(int segment, long offset, int length, int crc, byte[] hash) {
+        long end() {
+            return offset + HEADER_BYTES + length;
+        }
+    }
+
+    private static final class Segment {
+        final int id;
+        final Path path;
+        final AtomicLong liveBytes = new AtomicLong();
+        volatile FileChannel channel;
+        volatile long size;
+        private volatile boolean closed;
+        private MappedByteBuffer map;
+
+        Segment(int id, Path path) throws IOException {
+            this.id = id;
+            this.path = path;
+            this.channel = open(path);
+            this.size = channel.size();
+        }
+
+        private static FileChannel open(Path path) throws IOException {
+            return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        /**
+         * Run channel I/O without letting a thread interrupt close the shared channel:
+         * the interrupt flag is parked during the call and restored afterwards, and if the
+         * channel was closed under us anyway it is reopened and the call retried once.
+         */
+        <T> T io(IoAction<T> action) throws IOException {
+            boolean interrupted = Thread.interrupted();
+            try {
+                try {
+                    return action.run(channel);
+                } catch (ClosedChannelException e) {
+                    interrupted |= Thread.interrupted();
+                    return action.run(reopen());
+                }
+            } finally {
+                if (interrupted) Thread.currentThread().interrupt();
+            }
+        }
+
+        private synchronized FileChannel reopen() throws IOException {
+            if (closed) throw new ClosedChannelException();
+            if (!channel.isOpen()) channel = open(path);
+            return channel;
+        }
+
+        /** Read-only view of the segment covering at least [0, end), remapped as the segment grows. */
+        synchronized ByteBuffer view(long end) throws IOException {
+            if (map == null || map.capacity() < end) map = io(ch -> ch.map(FileChannel.MapMode.READ_ONLY, 0, size));
+            return map.duplicate();
+        }
+
+        synchronized void close() throws IOException {
+            closed = true;
+            channel.close();
+        }
+    }
+
+    private interface IoAction<T> {
+        T run(FileChannel channel) throws IOException;
+    }
+
+    /** The store under tickets.store.dir, opened on first use. */
+    public static synchronized TicketStore shared() {
+        if (shared == null) {
+            try {
+                shared = new TicketStore(DIR, SEGMENT_BYTES);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not open ticket store " + DIR.toAbsolutePath(), e);
+            }
+        }
+        return shared;
+    }
+
+    /** Close the shared store if it was opened. */
+    public static synchronized void closeShared() {
+        if (shared != null) {
+            shared.close();
+            shared = null;
+        }
+    }
+
+    TicketStore(Path dir, long segmentBytes) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(dir);
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "segment-*.dat")) {
+            for (Path p : ds) files.add(p);
+        }
+        Collections.sort(files);
+        for (Path p : files) {
+            Segment s = new Segment(segmentId(p), p);
+            segments.put(s.id, s);
+            recover(s);
+            active = s;
+        }
+        if (active == null || active.size >= segmentBytes) active = newSegment();
+
+        housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ticket-store");
+            t.setDaemon(true);
+            return t;
+        });
+        housekeeper.scheduleWithFixedDelay(this::syncQuietly, SYNC_MS, SYNC_MS, TimeUnit.MILLISECONDS);
+        housekeeper.scheduleWithFixedDelay(this::compactQuietly, COMPACT_INTERVAL_MS, COMPACT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Walk one segment's records into the index, checking each one's CRC. A record that
+     * fails it in the middle of the segment (a bad sector, a stray write) is skipped; a
+     * broken header, or a bad record at the end (crash during an append), cuts the
+     * segment off there.
+     */
+    private void recover(Segment s) throws IOException {
+        ByteBuffer buf = s.view(s.size);
+        long pos = 0;
+        while (pos + HEADER_BYTES <= s.size) {
+            buf.position((int) pos);
+            int magic = buf.getInt();
+            int bookingId = buf.getInt();
+            int length = buf.getInt();
+            int crc = buf.getInt();
+            byte[] hash = new byte[HASH_BYTES];
+            buf.get(hash);
+            long end = pos + HEADER_BYTES + length;
+            if (magic != MAGIC || length < 0 || end > s.size) break;
+            if (crc != crc(buf, (int) (pos + HEADER_BYTES), length)) {
+                if (end == s.size) break;
+                System.out.println("Ticket store: skipping corrupt record of booking " + bookingId + " in " + s.path.getFileName());
+            } else {
+                index(bookingId, new Location(s.id, pos, length, crc, hash));
+            }
+            pos = end;
+        }
+        if (pos < s.size) {
+            System.out.println("Ticket store: truncating " + s.path.getFileName() + " at " + pos + " (incomplete record)");
+            long end = pos;
+            s.io(ch -> ch.truncate(end));
+            s.size = pos;
+        }
+    }
+
+    private void index(int bookingId, Location loc) {
+        segments.get(loc.segment).liveBytes.addAndGet(HEADER_BYTES + loc.length);
+        Location old = index.put(bookingId, loc);
+        if (old != null) release(old);
+    }
+
+    private void release(Location loc) {
+        Segment s = segments.get(loc.segment);
+        if (s != null) s.liveBytes.addAndGet(-(HEADER_BYTES + loc.length));
+    }
+
+    /** Store a rendered ticket, superseding any earlier version of the booking. */
+    public void put(int bookingId, byte[] contentHash, byte[] pdf) throws IOException {
+        put(bookingId, contentHash, ByteBuffer.wrap(pdf), null);
+    }
+
+    /**
+     * Append a record. With {@code expected} set (compaction) the index is only updated if
+     * it still points at that location, so a newer put is never overwritten.
+     */
+    private synchronized void put(int bookingId, byte[] contentHash, ByteBuffer pdf, Location expected) throws IOException {
+        if (closed) throw new IOException("Ticket store is closed");
+        long t0 = System.nanoTime();
+        int length = pdf.remaining();
+        if (active.size > 0 && active.size + HEADER_BYTES + length > segmentBytes) {
+            active.io(ch -> { ch.force(false); return null; });
+            active = newSegment();
+        }
+
+        int crc = crc(pdf, pdf.position(), length);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(bookingId).putInt(length).putInt(crc).put(contentHash, 0, HASH_BYTES);
+        header.flip();
+
+        long offset = active.size;
+        long end = active.io(ch -> {
+            // positional writes from the start of the record, so a retry rewrites it whole
+            ByteBuffer h = header.duplicate();
+            ByteBuffer body = pdf.duplicate();
+            long pos = offset;
+            while (h.hasRemaining()) pos += ch.write(h, pos);
+            while (body.hasRemaining()) pos += ch.write(body, pos);
+            return pos;
+        });
+        active.size = end;
+        dirty = true;
+
+        Location loc = new Location(active.id, offset, length, crc, contentHash.clone());
+        active.liveBytes.addAndGet(HEADER_BYTES + length);
+        if (expected == null) {
+            Location old = index.put(bookingId, loc);
+            if (old != null) release(old);
+        } else if (index.replace(bookingId, expected, loc)) {
+            release(expected);
+        } else {
+            release(loc); // superseded while we were copying it
+        }
+        APPEND.record(t0);
+    }
+
+    /** The stored PDF, or null if the booking has none. */
+    public byte[] get(int bookingId) throws IOException {
+        return read(bookingId, null);
+    }
+
+    /** The stored PDF if its content hash matches (the booking is unchanged), else null. */
+    public byte[] get(int bookingId, byte[] contentHash) throws IOException {
+        return read(bookingId, contentHash);
+    }
+
+    public boolean contains(int bookingId, byte[] contentHash) {
+        Location loc = index.get(bookingId);
+        return loc != null && Arrays.equals(loc.hash, contentHash);
+    }
+
+    private byte[] read(int bookingId, byte[] contentHash) throws IOException {
+        long t0 = System.nanoTime();
+        try {
+            // retry if compaction moves the record between the index read and the segment read
+            for (int attempt = 0; attempt < 3; attempt++) {
+                Location loc = index.get(bookingId);
+                if (loc == null || (contentHash != null && !Arrays.equals(loc.hash, contentHash))) return null;
+                Segment s = segments.get(loc.segment);
+                if (s == null) continue;
+                ByteBuffer buf = s.view(loc.end());
+                if (!intact(bookingId, loc, buf)) return null;
+                byte[] pdf = new byte[loc.length];
+                buf.position((int) (loc.offset + HEADER_BYTES));
+                buf.get(pdf);
+                return pdf;
+            }
+            return null;
+        } finally {
+            READ.record(t0);
+        }
+    }
+
+    /** Write one booking's ticket out as a standalone PDF file. Returns false if it is not stored. */
+    public boolean exportPdf(int bookingId, Path out) throws IOException {
+        byte[] pdf = get(bookingId);
+        if (pdf == null) return false;
+        Path parent = out.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        Files.write(out, pdf);
+        return true;
+    }
+
+    /** Force appended records to disk. */
+    public void sync() throws IOException {
+        if (!dirty) return;
+        long t0 = System.nanoTime();
+        Segment s;
+        synchronized (this) {
+            dirty = false;
+            s = active;
+        }
+        s.io(ch -> { ch.force(false); return null; });
+        SYNC.record(t0);
+    }
+
+    /**
+     * Rewrite every sealed segment whose live data is below tickets.store.compactBelow of
+     * its size: live records are appended to the active segment and the old file deleted.
+     * Returns the number of bytes reclaimed.
+     */
+    public long compact() throws IOException {
+        long reclaimed = 0;
+        List<Segment> candidates = new ArrayList<>();
+        synchronized (this) {
+            for (Segment s : segments.values()) {
+                if (s != active && s.liveBytes.get() < s.size * COMPACT_BELOW) candidates.add(s);
+            }
+        }
+        for (Segment s : candidates) {
+            for (Map.Entry<Integer, Location> e : index.entrySet()) {
+                Location loc = e.getValue();
+                if (loc.segment != s.id) continue;
+                ByteBuffer buf = s.view(loc.end());
+                if (!intact(e.getKey(), loc, buf)) continue; // the put would give it a fresh, valid CRC
+                buf.position((int) (loc.offset + HEADER_BYTES));
+                buf.limit((int) loc.end());
+                put(e.getKey(), loc.hash, buf.slice(), loc);
+            }
+            sync();
+            synchronized (this) {
+                segments.remove(s.id);
+            }
+            reclaimed += s.size;
+            s.close();
+            Files.deleteIfExists(s.path);
+        }
+        return reclaimed;
+    }
+
+    public String stats() {
+        long size = 0, live = 0;
+        for (Segment s : segments.values()) {
+            size += s.size;
+            live += s.liveBytes.get();
+        }
+        return String.format("ticketStore[tickets=%d segments=%d bytes=%d live=%d]", index.size(), segments.size(), size, live);
+    }
+
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        housekeeper.shutdownNow();
+        try {
+            active.io(ch -> { ch.force(false); return null; });
+            for (Segment s : segments.values()) s.close();
+        } catch (IOException e) {
+            System.out.println("Ticket store: error while closing: " + e.getMessage());
+        }
+    }
+
+    private Segment newSegment() throws IOException {
+        int id = segments.keySet().stream().mapToInt(Integer::intValue).max().orElse(0) + 1;
+        Segment s = new Segment(id, dir.resolve(String.format("segment-%06d.dat", id)));
+        segments.put(id, s);
+        return s;
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException e) {
+            System.out.println("Ticket store: sync failed: " + e.getMessage());
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            long reclaimed = compact();
+            if (reclaimed > 0) System.out.println("Ticket store: compaction reclaimed " + reclaimed + " bytes");
+        } catch (IOException e) {
+            System.out.println("Ticket store: compaction failed: " + e.getMessage());
+        }
+    }
+
+    private static int segmentId(Path p) {
+        String name = p.getFileName().toString();
+        return Integer.parseInt(name.substring("segment-".length(), name.length() - ".dat".length()));
+    }
+
+    /** Check a record's CRC; a record that fails it is dropped from the index. */
+    private boolean intact(int bookingId, Location loc, ByteBuffer buf) {
+        if (crc(buf, (int) (loc.offset + HEADER_BYTES), loc.length) == loc.crc) return true;
+        System.out.println("Ticket store: dropping corrupt record of booking " + bookingId + ", it will be rendered again");
+        if (index.remove(bookingId, loc)) release(loc);
+        return false;
+    }
+
+    private static int crc(ByteBuffer buf, int offset, int length) {
+        CRC32 crc = new CRC32();
+        ByteBuffer slice = buf.duplicate();
+        slice.limit(offset + length).position(offset);
+        crc.update(slice);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,251 @@
+// TicketTemplate.java
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import org.apache.fontbox.ttf.TTFParser;
+import org.apache.fontbox.ttf.TrueTypeFont;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.*;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.*;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+/**
+ * The part of a ticket that is the same for every booking: border, watermark, logo
+ * and section headings. It is drawn once into a form XObject, saved to an in-memory
+ * PDF, and every ticket starts from a copy of that PDF. The images stay encoded
+ * (no PNG decode per ticket) and the regular font is parsed once per thread.
+ *
+ * Building takes seconds (PNG decode and recompression), so the built PDF is also kept
+ * in {@code tickets.templateCacheDir}, named after the asset files it was built from; the
+ * next process loads it instead. An empty directory name turns this off.
+ */
+public class TicketTemplate {
+
+    private static final String[] ASSET_PATHS = {"assets/", "../assets/"};
+    private static final String LOGO_FILE = "logo.png";
+    private static final String WATERMARK_FILE = "watermark.png";
+    static final String FONT_REGULAR = "Roboto-Regular.ttf";
+    static final String FONT_BOLD = "Roboto-Black.ttf";
+
+    // bump when buildTemplatePdf draws something different, so cached templates are rebuilt
+    private static final int LAYOUT_VERSION = 1;
+    private static final String CACHE_DIR = System.getProperty("tickets.templateCacheDir", "tickets");
+
+    static final COSName STATIC_LAYER = COSName.getPDFName("TicketStatic");
+
+    // layout shared by the static headings and the per-ticket lines under them
+    static final PDRectangle PAGE_SIZE = PDRectangle.A4;
+    static final float LEFT = 60f;
+    static final float LEAD = 22f;
+    static final float PASSENGER_Y = PAGE_SIZE.getHeight() - 200f;
+    static final float CRUISE_Y = PASSENGER_Y - LEAD * 2 - LEAD * 1.3f;
+    static final float BOOKING_Y = CRUISE_Y - LEAD * 4 - LEAD * 1.3f;
+
+    private static TicketTemplate instance;
+
+    private final byte[] templatePdf;
+    private final byte[] regularFontData;
+    private final ThreadLocal<TrueTypeFont> regularFont;
+
+    private TicketTemplate(byte[] templatePdf, byte[] regularFontData) {
+        this.templatePdf = templatePdf;
+        this.regularFontData = regularFontData;
+        this.regularFont = ThreadLocal.withInitial(this::parseRegularFont);
+    }
+
+    /**
+     * Template built on first use. If building fails (missing asset) the next call tries again.
+     */
+    public static synchronized TicketTemplate get() throws IOException {
+        if (instance == null) {
+            byte[] regular = Files.readAllBytes(findAsset(FONT_REGULAR).toPath());
+            instance = new TicketTemplate(cachedTemplatePdf(), regular);
+        }
+        return instance;
+    }
+
+    static File findAsset(String name) {
+        for (String base : ASSET_PATHS) {
+            File f = new File(base + name);
+            if (f.exists()) return f.getAbsoluteFile();
+        }
+        return new File("assets/" + name);
+    }
+
+    /**
+     * A one-page document whose page already shows the static layer.
+     * Callers append their own content stream and own the returned document.
+     */
+    public PDDocument newDocument() throws IOException {
+        return PDDocument.load(templatePdf);
+    }
+
+    /**
+     * Append a page to a document from {@link #newDocument()}. The page shares the first
+     * page's resources, so the static layer, its images and fonts, and any font the caller
+     * adds are stored once however many pages there are.
+     */
+    public PDPage addPage(PDDocument doc) throws IOException {
+        PDResources shared = doc.getPage(0).getResources();
+        PDPage page = new PDPage(PAGE_SIZE);
+        page.setResources(shared);
+        doc.addPage(page);
+        try (PDPageContentStream cs = new PDPageContentStream(doc, page)) {
+            cs.drawForm((PDFormXObject) shared.getXObject(STATIC_LAYER));
+        }
+        return page;
+    }
+
+    /**
+     * Regular font for the variable text, subset-embedded into {@code doc} on save.
+     * The parsed font is cached per thread because font subsetting is not thread-safe.
+     */
+    public PDFont regularFont(PDDocument doc) throws IOException {
+        return PDType0Font.load(doc, regularFont.get(), true);
+    }
+
+    private TrueTypeFont parseRegularFont() {
+        try {
+            return new TTFParser().parse(new ByteArrayInputStream(regularFontData));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot parse " + FONT_REGULAR, e);
+        }
+    }
+
+    private static byte[] cachedTemplatePdf() throws IOException {
+        if (CACHE_DIR.isEmpty()) return buildTemplatePdf();
+        Path cached = Paths.get(CACHE_DIR, "template-" + assetFingerprint() + ".pdf");
+        if (Files.isRegularFile(cached)) {
+            try {
+                byte[] pdf = Files.readAllBytes(cached);
+                if (usable(pdf)) return pdf;
+                System.out.println("Cached ticket template " + cached.getFileName() + " is damaged, rebuilding");
+            } catch (IOException e) {
+                System.out.println("Could not read cached ticket template, rebuilding: " + e.getMessage());
+            }
+        }
+        byte[] pdf = buildTemplatePdf();
+        try {
+            Files.createDirectories(cached.getParent());
+            Path tmp = Files.createTempFile(cached.getParent(), "template-", ".part");
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                ByteBuffer buf = ByteBuffer.wrap(pdf);
+                while (buf.hasRemaining()) ch.write(buf);
+                ch.force(true); // the rename must not publish a file whose contents are still in flight
+            }
+            Files.move(tmp, cached, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.out.println("Could not cache ticket template: " + e.getMessage());
+        }
+        return pdf;
+    }
+
+    /** Whether cached bytes parse as the template: one page carrying the static layer. */
+    private static boolean usable(byte[] pdf) {
+        try (PDDocument doc = PDDocument.load(pdf)) {
+            return doc.getNumberOfPages() == 1 && doc.getPage(0).getResources().getXObject(STATIC_LAYER) instanceof PDFormXObject;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    /** Changes when any asset the template draws is replaced, or the layout version is bumped. */
+    private static String assetFingerprint() {
+        CRC32 crc = new CRC32();
+        StringBuilder key = new StringBuilder().append(LAYOUT_VERSION);
+        for (String name : new String[]{FONT_BOLD, LOGO_FILE, WATERMARK_FILE}) {
+            File f = findAsset(name);
+            key.append('|').append(f.getPath()).append(':').append(f.length()).append(':').append(f.lastModified());
+        }
+        crc.update(key.toString().getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue());
+    }
+
+    private static byte[] buildTemplatePdf() throws IOException {
+        try (PDDocument doc = new PDDocument()) {
+            PDPage page = new PDPage(PAGE_SIZE);
+            doc.addPage(page);
+            PDRectangle rect = page.getMediaBox();
+
+            PDFont fontBold = PDType0Font.load(doc, findAsset(FONT_BOLD));
+
+            PDFormXObject form = new PDFormXObject(doc);
+            form.setBBox(rect);
+            form.setResources(new PDResources());
+            try (PDPageContentStream cs = new PDPageContentStream(doc, form, form.getStream().createOutputStream(COSName.FLATE_DECODE))) {
+                drawRoundedBorder(cs, 20, 20, rect.getWidth() - 40, rect.getHeight() - 40, 12, 2f);
+
+                try {
+                    PDImageXObject wm = PDImageXObject.createFromFileByContent(findAsset(WATERMARK_FILE), doc);
+                    float wmWidth = rect.getWidth() * 0.7f;
+                    float scale = wmWidth / wm.getWidth();
+                    float wmHeight = wm.getHeight() * scale;
+                    cs.drawImage(wm, (rect.getWidth() - wmWidth) / 2f, (rect.getHeight() - wmHeight) / 2f, wmWidth, wmHeight);
+                } catch (Exception ignored) {}
+
+                // Enlarged logo by 33%
+                try {
+                    PDImageXObject logo = PDImageXObject.createFromFileByContent(findAsset(LOGO_FILE), doc);
+                    float logoW = 213f; // 160 * 1.33
+                    float logoH = (logo.getHeight() * logoW) / logo.getWidth();
+                    float logoX = (rect.getWidth() - logoW) / 2f;
+                    float logoY = rect.getHeight() - logoH - 60f;
+                    cs.drawImage(logo, logoX, logoY, logoW, logoH);
+                } catch (Exception ignored) {}
+
+                writeHeading(cs, fontBold, PASSENGER_Y, "PASSENGER DETAILS");
+                writeHeading(cs, fontBold, CRUISE_Y, "CRUISE DETAILS");
+                writeHeading(cs, fontBold, BOOKING_Y, "BOOKING & PAYMENT");
+            }
+            PDResources resources = new PDResources();
+            resources.put(STATIC_LAYER, form);
+            page.setResources(resources);
+
+            try (PDPageContentStream cs = new PDPageContentStream(doc, page)) {
+                cs.drawForm(form);
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            doc.save(out);
+            return out.toByteArray();
+        }
+    }
+
+    private static void writeHeading(PDPageContentStream cs, PDFont font, float y, String text) throws IOException {
+        cs.beginText();
+        cs.setFont(font, 14);
+        cs.newLineAtOffset(LEFT, y);
+        cs.showText(text);
+        cs.endText();
+    }
+
+    private static void drawRoundedBorder(PDPageContentStream cs, float x, float y, float w, float h, float r, float lineWidth) throws IOException {
+        final float K = 0.5522847498f;
+        float k = K * r;
+
+        cs.setLineWidth(lineWidth);
+        cs.moveTo(x + r, y);
+        cs.lineTo(x + w - r, y);
+        cs.curveTo(x + w - r + k, y, x + w, y + r - k, x + w, y + r);
+        cs.lineTo(x + w, y + h - r);
+        cs.curveTo(x + w, y + h - r + k, x + w - r + k, y + h, x + w - r, y + h);
+        cs.lineTo(x + r, y + h);
+        cs.curveTo(x + r - k, y + h, x, y + h - r + k, x, y + h - r);
+        cs.lineTo(x, y + r);
+        cs.curveTo(x, y + r - k, x + r - k, y, x + r, y);
+        cs.stroke();
+    }
+}
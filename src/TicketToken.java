@@ -0,0 +1,186 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Compact signed ticket code printed in the QR: a small binary record, an HMAC-SHA256
+ * tag truncated to 128 bits, Base64url encoded. A gate holding the key can check a scan
+ * without the database (see {@link TicketVerifier}).
+ *
+ * Layout (big endian):
+ *   version(1) keyId(1) bookingId(4) cruiseId(4) cabinClass(1) issuedAt epoch s(4)
+ *   nameLength(1) name UTF-8(<= 40) mac(16)
+ *
+ * The key is read from tickets.signingKeyFile (default ticket-signing.key), which is
+ * created with 32 random bytes on first use. Copy the same file to the gate machines.
+ */
+public class TicketToken {
+
+    static final byte VERSION = 1;
+    private static final int MAC_BYTES = 16;
+    private static final int MAX_NAME_BYTES = 40;
+    private static final int FIXED_BYTES = 1 + 1 + 4 + 4 + 1 + 4 + 1;
+    private static final int KEY_BYTES = 32;
+
+    private static final Path KEY_FILE = Paths.get(System.getProperty("tickets.signingKeyFile", "ticket-signing.key"));
+    private static final Base64.Encoder B64 = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder B64_DECODE = Base64.getUrlDecoder();
+
+    public enum Status { VALID, MALFORMED, UNKNOWN_KEY, BAD_SIGNATURE, REVOKED, WRONG_CRUISE }
+
+    /** What a ticket code says, once its signature checked out. */
+    public static final class Claims {
+        private final int bookingId;
+        private final int cruiseId;
+        private final String cabinClass;
+        private final long issuedAt;
+        private final String passengerName;
+
+        Claims(int bookingId, int cruiseId, String cabinClass, long issuedAt, String passengerName) {
+            this.bookingId = bookingId;
+            this.cruiseId = cruiseId;
+            this.cabinClass = cabinClass;
+            this.issuedAt = issuedAt;
+            this.passengerName = passengerName;
+        }
+
+        public int getBookingId() { return bookingId; }
+        public int getCruiseId() { return cruiseId; }
+        public String getCabinClass() { return cabinClass; }
+        /** Epoch seconds when the ticket was signed. */
+        public long getIssuedAt() { return issuedAt; }
+        public String getPassengerName() { return passengerName; }
+    }
+
+    private static volatile SecretKeySpec key;
+    private static volatile byte keyId;
+
+    private static final ThreadLocal<Mac> MAC = ThreadLocal.withInitial(() -> {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key());
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    });
+
+    /** Signed code for a ticket. */
+    public static String sign(TicketData t) {
+        return sign(t.getBookingId(), t.getCruiseId(), t.getCabinClass(), System.currentTimeMillis() / 1000, t.getPassengerName());
+    }
+
+    static String sign(int bookingId, int cruiseId, String cabinClass, long issuedAt, String passengerName) {
+        byte[] name = truncateUtf8(passengerName == null ? "" : passengerName, MAX_NAME_BYTES);
+        key();
+        ByteBuffer buf = ByteBuffer.allocate(FIXED_BYTES + name.length + MAC_BYTES);
+        buf.put(VERSION)
+                .put(keyId)
+                .putInt(bookingId)
+                .putInt(cruiseId)
+                .put((byte) CabinInventory.classIndex(cabinClass))
+                .putInt((int) issuedAt)
+                .put((byte) name.length)
+                .put(name);
+
+        Mac mac = MAC.get();
+        mac.update(buf.array(), 0, buf.position());
+        buf.put(mac.doFinal(), 0, MAC_BYTES);
+        return B64.encodeToString(buf.array());
+    }
+
+    /**
+     * Check the signature and decode. {@code out[0]} receives the claims when the result
+     * is VALID; no exception is thrown for bad input, a scanner sees plenty of it.
+     */
+    static Status verify(String code, Claims[] out) {
+        byte[] raw;
+        try {
+            raw = B64_DECODE.decode(code);
+        } catch (IllegalArgumentException e) {
+            return Status.MALFORMED;
+        }
+        if (raw.length < FIXED_BYTES + MAC_BYTES || raw[0] != VERSION) return Status.MALFORMED;
+        int nameLen = raw[FIXED_BYTES - 1] & 0xFF;
+        int signedLen = FIXED_BYTES + nameLen;
+        if (nameLen > MAX_NAME_BYTES || raw.length != signedLen + MAC_BYTES) return Status.MALFORMED;
+        key();
+        if (raw[1] != keyId) return Status.UNKNOWN_KEY;
+
+        Mac mac = MAC.get();
+        mac.update(raw, 0, signedLen);
+        byte[] expected = mac.doFinal();
+        // constant-time compare of the truncated tag
+        int diff = 0;
+        for (int i = 0; i < MAC_BYTES; i++) diff |= expected[i] ^ raw[signedLen + i];
+        if (diff != 0) return Status.BAD_SIGNATURE;
+
+        ByteBuffer buf = ByteBuffer.wrap(raw, 2, signedLen - 2);
+        int bookingId = buf.getInt();
+        int cruiseId = buf.getInt();
+        int cls = buf.get();
+        long issuedAt = buf.getInt() & 0xFFFFFFFFL;
+        String cabinClass = cls >= 0 && cls < CabinInventory.CABIN_CLASSES.length ? CabinInventory.CABIN_CLASSES[cls] : "UNKNOWN";
+        out[0] = new Claims(bookingId, cruiseId, cabinClass, issuedAt, new String(raw, FIXED_BYTES, nameLen, StandardCharsets.UTF_8));
+        return Status.VALID;
+    }
+
+    private static SecretKeySpec key() {
+        SecretKeySpec k = key;
+        if (k != null) return k;
+        synchronized (TicketToken.class) {
+            if (key == null) {
+                byte[] bytes = loadOrCreateKey();
+                try {
+                    keyId = MessageDigest.getInstance("SHA-256").digest(bytes)[0];
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException(e);
+                }
+                key = new SecretKeySpec(bytes, "HmacSHA256");
+            }
+            return key;
+        }
+    }
+
+    private static byte[] loadOrCreateKey() {
+        try {
+            if (Files.exists(KEY_FILE)) {
+                byte[] bytes = Files.readAllBytes(KEY_FILE);
+                if (bytes.length < KEY_BYTES) throw new IllegalStateException("Signing key " + KEY_FILE + " is shorter than " + KEY_BYTES + " bytes");
+                return bytes;
+            }
+            byte[] bytes = new byte[KEY_BYTES];
+            new SecureRandom().nextBytes(bytes);
+            Files.write(KEY_FILE, bytes);
+            try {
+                Files.setPosixFilePermissions(KEY_FILE, PosixFilePermissions.fromString("rw-------"));
+            } catch (UnsupportedOperationException ignored) {}
+            System.out.println("Created ticket signing key " + KEY_FILE.toAbsolutePath() + " (copy it to the gate machines)");
+            return bytes;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read or create ticket signing key " + KEY_FILE, e);
+        }
+    }
+
+    private static byte[] truncateUtf8(String s, int maxBytes) {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        if (b.length <= maxBytes) return b;
+        // cut on a character boundary
+        int end = maxBytes;
+        while (end > 0 && (b[end] & 0xC0) == 0x80) end--;
+        return Arrays.copyOf(b, end);
+    }
+}
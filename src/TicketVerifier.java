@@ -0,0 +1,123 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.BitSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gate-side check of a scanned ticket code: signature, then the local revocation set,
+ * then (optionally) that the ticket is for the cruise being boarded. No database access
+ * per scan; the revocation set of cancelled bookings is loaded up front and refreshed in
+ * the background, and each refresh swaps in a new BitSet so scans never wait on it.
+ *
+ * A cancellation reaches the gate on the next refresh, so tickets.revocationRefreshMs
+ * (30 s) is the revocation latency: a ticket cancelled just after a refresh still scans
+ * as valid until the one after it.
+ */
+public class TicketVerifier {
+
+    private static final Metrics.Timer VERIFY = Metrics.timer("ticket.verify");
+    private static final Metrics.Counter[] OUTCOMES = new Metrics.Counter[TicketToken.Status.values().length];
+
+    static {
+        for (TicketToken.Status s : TicketToken.Status.values()) {
+            OUTCOMES[s.ordinal()] = Metrics.counter("ticket.verify." + s.name().toLowerCase());
+        }
+    }
+
+    private static volatile BitSet revoked = new BitSet();
+    private static volatile boolean revocationsLoaded;
+    private static volatile ScheduledExecutorService refresher;
+
+    public static final class Result {
+        private final TicketToken.Status status;
+        private final TicketToken.Claims claims;
+
+        Result(TicketToken.Status status, TicketToken.Claims claims) {
+            this.status = status;
+            this.claims = claims;
+        }
+
+        public TicketToken.Status getStatus() { return status; }
+        public boolean isValid() { return status == TicketToken.Status.VALID; }
+        /** Decoded ticket, or null if the signature did not check out. */
+        public TicketToken.Claims getClaims() { return claims; }
+    }
+
+    /** Verify a scan for any cruise. */
+    public static Result verify(String code) {
+        return verify(code, 0);
+    }
+
+    /** Verify a scan at the gate of {@code cruiseId} (0 to accept any cruise). */
+    public static Result verify(String code, int cruiseId) {
+        long t0 = System.nanoTime();
+        TicketToken.Claims[] out = new TicketToken.Claims[1];
+        TicketToken.Status status = code == null ? TicketToken.Status.MALFORMED : TicketToken.verify(code.trim(), out);
+        TicketToken.Claims claims = out[0];
+        if (status == TicketToken.Status.VALID) {
+            if (!revocationsLoaded) loadRevocationsOnce();
+            if (revoked.get(claims.getBookingId())) status = TicketToken.Status.REVOKED;
+            else if (cruiseId > 0 && claims.getCruiseId() != cruiseId) status = TicketToken.Status.WRONG_CRUISE;
+        }
+        OUTCOMES[status.ordinal()].increment();
+        VERIFY.record(t0);
+        return new Result(status, claims);
+    }
+
+    /** Replace the revocation set with every cancelled booking. */
+    public static void loadRevocations(Connection conn) throws SQLException {
+        BitSet fresh = new BitSet();
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT booking_id FROM booking WHERE status = 'CANCELLED'")) {
+            while (rs.next()) fresh.set(rs.getInt(1));
+        }
+        synchronized (TicketVerifier.class) {
+            revoked = fresh;
+            revocationsLoaded = true;
+        }
+    }
+
+    /** First verify without a preload (startup.caches=lazy): read the revocations now. */
+    private static void loadRevocationsOnce() {
+        try (Connection conn = DBConnection.borrow()) {
+            synchronized (TicketVerifier.class) {
+                if (revocationsLoaded) return;
+            }
+            loadRevocations(conn);
+        } catch (SQLException e) {
+            System.out.println("Could not load revoked tickets, none apply until the next refresh: " + e.getMessage());
+        }
+    }
+
+    public static int revokedCount() {
+        return revoked.cardinality();
+    }
+
+    /** Reload the revocation set every {@code periodMs} in the background; no-op if periodMs <= 0. */
+    public static synchronized void startRevocationRefresh(long periodMs) {
+        if (periodMs <= 0 || refresher != null) return;
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "revocation-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+        refresher.scheduleWithFixedDelay(() -> {
+            try (Connection conn = DBConnection.borrow()) {
+                loadRevocations(conn);
+            } catch (Exception e) {
+                System.out.println("Could not refresh revoked tickets, keeping the previous set: " + e.getMessage());
+            }
+        }, periodMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    public static synchronized void stopRevocationRefresh() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+    }
+}
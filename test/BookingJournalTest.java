@@ -0,0 +1,137 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Replay after a crash. The tests run without a database (see db.url in the pom), so the
+ * drainer only retries and every journaled booking stays pending across reopens.
+ */
+class BookingJournalTest {
+
+    private static final int CAPACITY = 64 << 10;
+    private static final int FILE_HEADER_BYTES = 32;
+    private static final int RECORD_HEADER_BYTES = 16;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replaysEveryDurableRecord() throws Exception {
+        BookingJournal j = new BookingJournal(dir, CAPACITY);
+        append(j, "k1");
+        append(j, "k2");
+        j.close();
+
+        j = new BookingJournal(dir, CAPACITY);
+        try {
+            assertPending(j, "k1");
+            assertPending(j, "k2");
+        } finally {
+            j.close();
+        }
+    }
+
+    @Test
+    void stopsAtATornRecordAndForgetsWhatFollows() throws Exception {
+        BookingJournal j = new BookingJournal(dir, CAPACITY);
+        append(j, "k1");
+        append(j, "k2");
+        append(j, "k3");
+        j.close();
+
+        // a crash in the middle of writing k2: its payload is only partly on disk
+        int second = FILE_HEADER_BYTES + RECORD_HEADER_BYTES + readInt(FILE_HEADER_BYTES);
+        flipByte(second + RECORD_HEADER_BYTES + 3);
+
+        j = new BookingJournal(dir, CAPACITY);
+        try {
+            assertPending(j, "k1");
+            assertNull(j.lookup("k2"));
+            assertNull(j.lookup("k3"));
+            append(j, "k4");
+        } finally {
+            j.close();
+        }
+
+        // k3 was never acknowledged: it must not line up behind k4 and come back now
+        j = new BookingJournal(dir, CAPACITY);
+        try {
+            assertPending(j, "k1");
+            assertPending(j, "k4");
+            assertNull(j.lookup("k2"));
+            assertNull(j.lookup("k3"));
+        } finally {
+            j.close();
+        }
+    }
+
+    @Test
+    void recordWithATruncatedLengthIsNotReplayed() throws Exception {
+        BookingJournal j = new BookingJournal(dir, CAPACITY);
+        append(j, "k1");
+        j.close();
+
+        // only the length of a second record made it to disk
+        int end = FILE_HEADER_BYTES + RECORD_HEADER_BYTES + readInt(FILE_HEADER_BYTES);
+        writeInt(end, 40);
+
+        j = new BookingJournal(dir, CAPACITY);
+        try {
+            assertPending(j, "k1");
+            append(j, "k2");
+        } finally {
+            j.close();
+        }
+        j = new BookingJournal(dir, CAPACITY);
+        try {
+            assertPending(j, "k1");
+            assertPending(j, "k2");
+        } finally {
+            j.close();
+        }
+    }
+
+    private static void append(BookingJournal j, String key) throws IOException {
+        j.append(new Booking(7, 3, "STANDARD", 25000), "UPI", key);
+    }
+
+    private static void assertPending(BookingJournal j, String key) {
+        BookingJournal.Pending p = j.lookup(key);
+        assertNotNull(p, key + " was not replayed");
+        assertEquals(BookingJournal.Status.PENDING, p.getStatus());
+        assertEquals(3, p.getBooking().getCruiseId());
+        assertEquals("UPI", p.getPaymentMode());
+    }
+
+    private int readInt(int pos) throws IOException {
+        try (FileChannel ch = FileChannel.open(dir.resolve("bookings.journal"), StandardOpenOption.READ)) {
+            ByteBuffer b = ByteBuffer.allocate(4);
+            ch.read(b, pos);
+            return b.flip().getInt();
+        }
+    }
+
+    private void writeInt(int pos, int value) throws IOException {
+        try (FileChannel ch = FileChannel.open(dir.resolve("bookings.journal"), StandardOpenOption.WRITE)) {
+            ch.write(ByteBuffer.allocate(4).putInt(0, value), pos);
+        }
+    }
+
+    private void flipByte(int pos) throws IOException {
+        try (FileChannel ch = FileChannel.open(dir.resolve("bookings.journal"), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            ch.read(b, pos);
+            b.put(0, (byte) ~b.get(0));
+            ch.write(b.rewind(), pos);
+        }
+    }
+}
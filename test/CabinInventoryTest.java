@@ -0,0 +1,181 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The oversell guard: the in-memory counters never admit more than the capacity, and the
+ * conditional UPDATE turns a booking down when another instance sold the cabins first.
+ * Counters are static, so every test uses its own cruise ID.
+ */
+class CabinInventoryTest {
+
+    @Test
+    void admitsUpToCapacityAndNoMore() throws Exception {
+        InventoryRow row = new InventoryRow(2, 0);
+        Connection conn = row.connection();
+
+        assertTrue(CabinInventory.tryReserve(conn, 101, "LUXURY", 1));
+        assertTrue(CabinInventory.tryReserve(conn, 101, "LUXURY", 1));
+        assertFalse(CabinInventory.tryReserve(conn, 101, "LUXURY", 1));
+        assertEquals(0, CabinInventory.remaining(conn, 101, "LUXURY"));
+
+        CabinInventory.release(101, "LUXURY", 1);
+        assertEquals(1, CabinInventory.remaining(conn, 101, "LUXURY"));
+        assertTrue(CabinInventory.tryReserve(conn, 101, "LUXURY", 1));
+    }
+
+    @Test
+    void groupThatDoesNotFitIsTurnedDownWhole() throws Exception {
+        InventoryRow row = new InventoryRow(5, 3);
+        Connection conn = row.connection();
+
+        assertFalse(CabinInventory.tryReserve(conn, 102, "LUXURY", 3));
+        assertEquals(2, CabinInventory.remaining(conn, 102, "LUXURY"));
+        assertTrue(CabinInventory.tryReserve(conn, 102, "LUXURY", 2));
+    }
+
+    @Test
+    void concurrentReservationsNeverExceedCapacity() throws Exception {
+        InventoryRow row = new InventoryRow(50, 0);
+        Connection conn = row.connection();
+        CabinInventory.remaining(conn, 103, "LUXURY"); // load before the race
+
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger admitted = new AtomicInteger();
+        for (int t = 0; t < threads; t++) {
+            pool.execute(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < 100; i++) {
+                        if (CabinInventory.tryReserve(null, 103, "LUXURY", 1)) admitted.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(50, admitted.get());
+        assertEquals(0, CabinInventory.remaining(conn, 103, "LUXURY"));
+    }
+
+    @Test
+    void databaseRejectsCabinsSoldByAnotherInstance() throws Exception {
+        InventoryRow row = new InventoryRow(3, 0);
+        Connection conn = row.connection();
+        assertTrue(CabinInventory.tryReserve(conn, 104, "LUXURY", 1));
+
+        // another instance sells the last cabins after this one loaded its counters
+        row.booked = 3;
+        row.version++;
+
+        assertFalse(CabinInventory.commitReservation(conn, 104, "LUXURY", 1));
+        assertEquals(3, row.booked);
+        assertEquals(0, CabinInventory.remaining(conn, 104, "LUXURY"));
+        assertFalse(CabinInventory.tryReserve(conn, 104, "LUXURY", 1));
+    }
+
+    @Test
+    void committedReservationCountsAsBooked() throws Exception {
+        InventoryRow row = new InventoryRow(2, 0);
+        Connection conn = row.connection();
+
+        assertTrue(CabinInventory.tryReserve(conn, 105, "LUXURY", 1));
+        assertTrue(CabinInventory.commitReservation(conn, 105, "LUXURY", 1));
+        CabinInventory.confirmReservation(105, "LUXURY", 1);
+        assertEquals(1, row.booked);
+
+        // a reload of the row this process wrote keeps the count
+        CabinInventory.reload(conn, 105);
+        assertEquals(1, CabinInventory.remaining(conn, 105, "LUXURY"));
+    }
+
+    /**
+     * One LUXURY row of cabin_inventory behind a fake connection that answers the two
+     * statements CabinInventory issues: the per-cruise SELECT and the conditional UPDATE.
+     */
+    private static final class InventoryRow {
+        final int capacity;
+        volatile int booked;
+        volatile long version;
+
+        InventoryRow(int capacity, int booked) {
+            this.capacity = capacity;
+            this.booked = booked;
+        }
+
+        Connection connection() {
+            return proxy(Connection.class, (method, args) -> switch (method) {
+                case "prepareStatement" -> statement((String) args[0]);
+                case "close" -> null;
+                default -> throw new UnsupportedOperationException("Connection." + method);
+            });
+        }
+
+        private PreparedStatement statement(String sql) {
+            Map<Integer, Object> params = new HashMap<>();
+            return proxy(PreparedStatement.class, (method, args) -> switch (method) {
+                case "setInt", "setString" -> {
+                    params.put((Integer) args[0], args[1]);
+                    yield null;
+                }
+                case "executeQuery" -> rows();
+                case "executeUpdate" -> update(params);
+                case "close" -> null;
+                default -> throw new UnsupportedOperationException("PreparedStatement." + method + " for " + sql);
+            });
+        }
+
+        private synchronized int update(Map<Integer, Object> params) {
+            int n = (Integer) params.get(1);
+            if (!"LUXURY".equals(params.get(3)) || booked + n > capacity) return 0;
+            booked += n;
+            version++;
+            return 1;
+        }
+
+        private ResultSet rows() {
+            boolean[] read = {false};
+            return proxy(ResultSet.class, (method, args) -> switch (method) {
+                case "next" -> {
+                    boolean more = !read[0];
+                    read[0] = true;
+                    yield more;
+                }
+                case "getString" -> "LUXURY";
+                case "getInt" -> "capacity".equals(args[0]) ? capacity : booked;
+                case "getLong" -> version;
+                case "close" -> null;
+                default -> throw new UnsupportedOperationException("ResultSet." + method);
+            });
+        }
+    }
+
+    private interface Handler {
+        Object call(String method, Object[] args) throws Exception;
+    }
+
+    private static <T> T proxy(Class<T> type, Handler h) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (p, m, args) -> h.call(m.getName(), args)));
+    }
+}
@@ -0,0 +1,71 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.Base64;
+
+import org.junit.jupiter.api.Test;
+
+/** Signed ticket codes: a valid one decodes, any change to it is rejected. */
+class TicketTokenTest {
+
+    private static final long ISSUED_AT = 1_760_000_000L;
+
+    @Test
+    void validCodeDecodes() {
+        TicketToken.Claims[] out = new TicketToken.Claims[1];
+        assertEquals(TicketToken.Status.VALID, TicketToken.verify(sign(), out));
+        assertEquals(4711, out[0].getBookingId());
+        assertEquals(42, out[0].getCruiseId());
+        assertEquals("LUXURY", out[0].getCabinClass());
+        assertEquals(ISSUED_AT, out[0].getIssuedAt());
+        assertEquals("Priya Sharma", out[0].getPassengerName());
+    }
+
+    @Test
+    void everyTamperedByteIsRejected() {
+        byte[] raw = Base64.getUrlDecoder().decode(sign());
+        // from the booking ID on: version and key ID have their own statuses
+        for (int i = 2; i < raw.length; i++) {
+            byte[] tampered = raw.clone();
+            tampered[i] ^= 0x01;
+            TicketToken.Claims[] out = new TicketToken.Claims[1];
+            TicketToken.Status status = TicketToken.verify(encode(tampered), out);
+            if (i == 15) {
+                // the name length: the code no longer parses
+                assertEquals(TicketToken.Status.MALFORMED, status, "byte " + i);
+            } else {
+                assertEquals(TicketToken.Status.BAD_SIGNATURE, status, "byte " + i);
+            }
+            assertNull(out[0], "byte " + i);
+        }
+    }
+
+    @Test
+    void reissuedForAnotherBookingWithTheOldTagIsRejected() {
+        byte[] original = Base64.getUrlDecoder().decode(sign());
+        byte[] other = Base64.getUrlDecoder().decode(TicketToken.sign(4712, 42, "LUXURY", ISSUED_AT, "Priya Sharma"));
+        // the other booking's claims under this booking's tag
+        System.arraycopy(original, original.length - 16, other, other.length - 16, 16);
+        assertEquals(TicketToken.Status.BAD_SIGNATURE, TicketToken.verify(encode(other), new TicketToken.Claims[1]));
+    }
+
+    @Test
+    void foreignKeyAndGarbageAreNotValid() {
+        byte[] raw = Base64.getUrlDecoder().decode(sign());
+        raw[1] ^= 0x01;
+        assertEquals(TicketToken.Status.UNKNOWN_KEY, TicketToken.verify(encode(raw), new TicketToken.Claims[1]));
+
+        String code = sign();
+        assertEquals(TicketToken.Status.MALFORMED, TicketToken.verify(code.substring(0, code.length() - 4), new TicketToken.Claims[1]));
+        assertEquals(TicketToken.Status.MALFORMED, TicketToken.verify("not a ticket!", new TicketToken.Claims[1]));
+        assertEquals(TicketToken.Status.MALFORMED, TicketToken.verify("", new TicketToken.Claims[1]));
+    }
+
+    private static String sign() {
+        return TicketToken.sign(4711, 42, "LUXURY", ISSUED_AT, "Priya Sharma");
+    }
+
+    private static String encode(byte[] raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw);
+    }
+}